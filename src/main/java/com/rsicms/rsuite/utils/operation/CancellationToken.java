@@ -0,0 +1,91 @@
+package com.rsicms.rsuite.utils.operation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests an operation to stop, either explicitly or once a deadline passes. Operations check
+ * the token between units of work, typically through
+ * <code>OperationResult.abortIfCancellationRequested</code>, and stop cooperatively.
+ * <p>
+ * Checking is cheap: a volatile read and, when there's a deadline, a call to
+ * <code>System.nanoTime()</code>. Thread-safe.
+ */
+public class CancellationToken {
+
+  private volatile boolean cancellationRequested;
+
+  private volatile String reason;
+
+  private volatile boolean hasDeadline;
+
+  private volatile long deadlineNanos;
+
+  public CancellationToken() {}
+
+  /**
+   * @param timeout
+   * @param unit
+   * @return a token that requests cancellation once the timeout elapses.
+   */
+  public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+    CancellationToken token = new CancellationToken();
+    token.setTimeout(timeout, unit);
+    return token;
+  }
+
+  /**
+   * Request cancellation once the timeout elapses, replacing any previous deadline.
+   * 
+   * @param timeout
+   * @param unit
+   */
+  public void setTimeout(long timeout, TimeUnit unit) {
+    this.deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+    this.hasDeadline = true;
+  }
+
+  /**
+   * Request cancellation.
+   * 
+   * @param reason Why; may be null.
+   */
+  public void cancel(String reason) {
+    if (!cancellationRequested) {
+      this.reason = reason;
+      this.cancellationRequested = true;
+    }
+  }
+
+  /**
+   * @return True if cancellation was requested or the deadline passed.
+   */
+  public boolean isCancellationRequested() {
+    if (cancellationRequested) {
+      return true;
+    }
+    if (hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+      cancel(OperationMessageProperties.get("cancellation.reason.deadline.exceeded"));
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return Why cancellation was requested, or null.
+   */
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * @return Milliseconds until the deadline; zero when passed, and negative when there's no
+   *         deadline.
+   */
+  public long getRemainingMillis() {
+    if (!hasDeadline) {
+      return -1;
+    }
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+  }
+
+}
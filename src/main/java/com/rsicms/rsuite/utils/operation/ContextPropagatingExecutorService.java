@@ -0,0 +1,52 @@
+package com.rsicms.rsuite.utils.operation;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each task with the <code>OperationContext</code> bound to the submitting thread.
+ * 
+ * @see OperationContext#propagating(ExecutorService)
+ */
+class ContextPropagatingExecutorService extends AbstractExecutorService {
+
+  private final ExecutorService delegate;
+
+  ContextPropagatingExecutorService(ExecutorService delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    // submit(), invokeAll() and invokeAny() all come through here.
+    delegate.execute(OperationContext.wrapCurrent(command));
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+}
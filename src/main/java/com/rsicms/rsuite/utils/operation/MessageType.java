@@ -1,24 +1,56 @@
 package com.rsicms.rsuite.utils.operation;
 
+import com.rsicms.rsuite.helpers.messages.ProcessDebugMessage;
+import com.rsicms.rsuite.helpers.messages.ProcessFailureMessage;
+import com.rsicms.rsuite.helpers.messages.ProcessInfoMessage;
 import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.helpers.messages.ProcessWarningMessage;
+import com.rsicms.rsuite.helpers.messages.impl.GenericProcessDebugMessage;
 import com.rsicms.rsuite.helpers.messages.impl.GenericProcessFailureMessage;
 import com.rsicms.rsuite.helpers.messages.impl.GenericProcessInfoMessage;
 import com.rsicms.rsuite.helpers.messages.impl.GenericProcessWarningMessage;
 
 /**
- * Helper enum to OperationResult and its underlying ProcessMessageContainer.
+ * Helper enum to OperationResult and its underlying MessageStore.
  */
 public enum MessageType {
-  INFO("info", GenericProcessInfoMessage.class), WARNING("warn",
-      GenericProcessWarningMessage.class), FAILURE("error",
-          GenericProcessFailureMessage.class), OTHER("other", ProcessMessage.class);
+  INFO("info", GenericProcessInfoMessage.class, ProcessInfoMessage.class), WARNING("warn",
+      GenericProcessWarningMessage.class, ProcessWarningMessage.class), FAILURE("error",
+          GenericProcessFailureMessage.class, ProcessFailureMessage.class), DEBUG("debug",
+              GenericProcessDebugMessage.class, ProcessDebugMessage.class), OTHER("other",
+                  ProcessMessage.class, ProcessMessage.class);
+
+  /**
+   * The type of each message class, computed once per class.
+   */
+  private static final ClassValue<MessageType> TYPES_BY_CLASS = new ClassValue<MessageType>() {
+    @Override
+    protected MessageType computeValue(Class<?> klass) {
+      for (MessageType type : MessageType.values()) {
+        if (type.klass.equals(klass)) {
+          return type;
+        }
+      }
+      // Subclasses and other implementations are classified by the message interface they
+      // implement; failure takes precedence over warning, and so on.
+      for (MessageType type : new MessageType[] {FAILURE, WARNING, INFO, DEBUG}) {
+        if (type.messageInterface.isAssignableFrom(klass)) {
+          return type;
+        }
+      }
+      return OTHER;
+    }
+  };
 
   private String label;
   private Class<? extends ProcessMessage> klass;
+  private Class<? extends ProcessMessage> messageInterface;
 
-  private MessageType(String label, Class<? extends ProcessMessage> klass) {
+  private MessageType(String label, Class<? extends ProcessMessage> klass,
+      Class<? extends ProcessMessage> messageInterface) {
     this.label = label;
     this.klass = klass;
+    this.messageInterface = messageInterface;
   }
 
   public String getLabel() {
@@ -26,11 +58,16 @@ public enum MessageType {
   }
 
   public static MessageType get(Class<? extends ProcessMessage> klass) {
-    for (MessageType type : MessageType.values()) {
-      if (type.klass.equals(klass)) {
-        return type;
-      }
+    if (klass == null) {
+      return OTHER;
+    }
+    return TYPES_BY_CLASS.get(klass);
+  }
+
+  public static MessageType get(ProcessMessage message) {
+    if (message == null) {
+      return OTHER;
     }
-    return OTHER;
+    return TYPES_BY_CLASS.get(message.getClass());
   }
 }
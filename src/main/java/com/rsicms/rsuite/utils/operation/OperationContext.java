@@ -0,0 +1,216 @@
+package com.rsicms.rsuite.utils.operation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.logging.Log;
+
+import com.rsicms.rsuite.utils.operation.log.OperationLogger;
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * The operation a thread is working on: its ID, its result and a logger that tags lines with the
+ * operation ID.
+ * <p>
+ * A context is bound to the current thread with {@link #bind()}, and carried across thread hops
+ * by {@link #wrap(Runnable)}, {@link #wrap(Callable)} or an executor from
+ * {@link #propagating(ExecutorService)}. Work running in another thread may then obtain the
+ * logger once, from {@link #current()}, rather than looking up the operation per message.
+ * <p>
+ * Note that <code>BaseOperationResult</code> is not thread-safe. Threads reaching the owning
+ * result through a context should either synchronize on it or record into their own result, to be
+ * added with {@link OperationResult#addSubResult(BaseOperationResult)} by the owning thread.
+ */
+public final class OperationContext {
+
+  private static final ThreadLocal<OperationContext> CURRENT = new ThreadLocal<OperationContext>();
+
+  private final String operationId;
+
+  private final OperationResult result;
+
+  private final OperationLogger logger;
+
+  private OperationContext(String operationId, OperationResult result, OperationLogger logger) {
+    this.operationId = operationId;
+    this.result = result;
+    this.logger = logger;
+  }
+
+  /**
+   * Create a context for the given result. The context shares the result's logger when the result
+   * is a <code>BaseOperationResult</code>.
+   * 
+   * @param result
+   * @return a new, unbound context
+   */
+  public static OperationContext of(OperationResult result) {
+    OperationLogger logger;
+    if (result instanceof BaseOperationResult) {
+      logger = ((BaseOperationResult) result).getOperationLogger();
+    } else {
+      logger = new OperationLogger(result.getLog(), result.getOperationId());
+    }
+    return new OperationContext(result.getOperationId(), result, logger);
+  }
+
+  /**
+   * Create a context for an operation without a result.
+   * 
+   * @param operationId
+   * @param log
+   * @return a new, unbound context
+   */
+  public static OperationContext of(String operationId, Log log) {
+    return new OperationContext(operationId, null, new OperationLogger(log, operationId));
+  }
+
+  /**
+   * @return the context bound to the current thread, or null when there isn't one.
+   */
+  public static OperationContext current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Get the logger of the current thread's context, falling back to a logger without an operation
+   * ID. Call once per task, not per message.
+   * 
+   * @param fallbackLog Used when no context is bound.
+   * @return a logger
+   */
+  public static OperationLogger currentLogger(Log fallbackLog) {
+    OperationContext context = CURRENT.get();
+    return context == null ? new OperationLogger(fallbackLog) : context.logger;
+  }
+
+  /**
+   * @return the operation ID
+   */
+  public String getOperationId() {
+    return operationId;
+  }
+
+  /**
+   * @return the operation's result, or null when the context was created without one.
+   */
+  public OperationResult getResult() {
+    return result;
+  }
+
+  /**
+   * @return the logger, which tags each line with the operation ID.
+   */
+  public OperationLogger getLogger() {
+    return logger;
+  }
+
+  /**
+   * Bind this context to the current thread until the returned scope is closed, at which point the
+   * previously bound context, if any, is restored.
+   * 
+   * @return the scope to close; use with try-with-resources.
+   */
+  public Scope bind() {
+    OperationContext previous = CURRENT.get();
+    CURRENT.set(this);
+    return new Scope(previous);
+  }
+
+  /**
+   * @param task
+   * @return a runnable that runs the given task with this context bound.
+   */
+  public Runnable wrap(final Runnable task) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        Scope scope = bind();
+        try {
+          task.run();
+        } finally {
+          scope.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * @param task
+   * @return a callable that calls the given task with this context bound.
+   */
+  public <T> Callable<T> wrap(final Callable<T> task) {
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        Scope scope = bind();
+        try {
+          return task.call();
+        } finally {
+          scope.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * @param task
+   * @return the task wrapped with the current thread's context, or the task itself when no context
+   *         is bound.
+   */
+  public static Runnable wrapCurrent(Runnable task) {
+    OperationContext context = CURRENT.get();
+    return context == null ? task : context.wrap(task);
+  }
+
+  /**
+   * @param task
+   * @return the task wrapped with the current thread's context, or the task itself when no context
+   *         is bound.
+   */
+  public static <T> Callable<T> wrapCurrent(Callable<T> task) {
+    OperationContext context = CURRENT.get();
+    return context == null ? task : context.wrap(task);
+  }
+
+  /**
+   * Get an executor service that runs each task with the context that was bound to the submitting
+   * thread.
+   * 
+   * @param delegate The executor service that runs the tasks.
+   * @return a context-propagating executor service
+   */
+  public static ExecutorService propagating(ExecutorService delegate) {
+    return new ContextPropagatingExecutorService(delegate);
+  }
+
+  /**
+   * Restores the previously bound context when closed.
+   */
+  public static final class Scope implements AutoCloseable {
+
+    private final OperationContext previous;
+
+    private boolean closed;
+
+    private Scope(OperationContext previous) {
+      this.previous = previous;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+
+  }
+
+}
@@ -1,5 +1,6 @@
 package com.rsicms.rsuite.utils.operation;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -46,6 +47,11 @@ public class Transaction extends Sandbox {
    */
   private Map<String, String> props = new HashMap<String, String>();
 
+  /**
+   * Incremented whenever the transaction is changed through its methods.
+   */
+  private int modificationCount;
+
   /**
    * The one and only constructor.
    */
@@ -61,6 +67,7 @@ public class Transaction extends Sandbox {
    * @param assetName
    */
   public void addAsset(String moId, String assetName) {
+    modificationCount++;
     getAssetsLoaded().put(moId, assetName);
   }
 
@@ -71,6 +78,7 @@ public class Transaction extends Sandbox {
    * @param assetName
    */
   public void addUpdatedAsset(String moId, String assetName) {
+    modificationCount++;
     getUpdatedAssets().put(moId, assetName);
   }
 
@@ -119,6 +127,7 @@ public class Transaction extends Sandbox {
    * @param value
    */
   public void setProperty(String name, String value) {
+    modificationCount++;
     props.put(name, value);
   }
 
@@ -132,6 +141,26 @@ public class Transaction extends Sandbox {
     return props.get(name);
   }
 
+  /**
+   * Get a count of the changes made through this transaction's methods, such as to find out whether
+   * it changed since it was last seen. Changes made directly to the maps it returns aren't counted.
+   * 
+   * @return the number of changes so far.
+   */
+  public int getModificationCount() {
+    return modificationCount;
+  }
+
+  /**
+   * Get all properties set on the transaction.
+   * 
+   * @return An unmodifiable view of the transaction's properties, where the map key is the prop
+   *         name, and the map value is the prop value.
+   */
+  public Map<String, String> getProperties() {
+    return Collections.unmodifiableMap(props);
+  }
+
   /**
    * Rollback everything known to this transaction.
    * <p>
@@ -140,6 +169,9 @@ public class Transaction extends Sandbox {
    * Updated MOs will be rolled back to the previous version.
    * <p>
    * Versioned LMD is not yet supported.
+   * <p>
+   * Should the operation have been asked to stop, it's marked aborted first. The rollback runs to
+   * completion regardless, so as not to leave the repository partly rolled back.
    * 
    * @param context
    * @param user
@@ -148,6 +180,10 @@ public class Transaction extends Sandbox {
   public void rollback(ExecutionContext context, User user, OperationResult result) {
 
     this.rollbackRequested = true;
+    modificationCount++;
+
+    // Cancellation doesn't stop a rollback: it undoes the operation's work.
+    result.abortIfCancellationRequested(context, user, false);
 
     // Rollback this transaction's new assets (destroy)
     rollbackNewAssets(context, user, result, getAssetsLoaded(), newAssetsRolledBack);
@@ -155,6 +191,9 @@ public class Transaction extends Sandbox {
     // Rollback this transaction's updated assets (rollback to previous version)
     rollbackUpdatedAssets(context, user, result, getUpdatedAssets(), updatedAssetsRolledBack);
 
+    // The assets rolled back were recorded.
+    modificationCount++;
+
   }
 
   /**
@@ -283,4 +322,5 @@ public class Transaction extends Sandbox {
       }
     }
   }
+
 }
@@ -0,0 +1,150 @@
+package com.rsicms.rsuite.utils.operation.aggregate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.rsicms.rsuite.utils.operation.MessageType;
+
+/**
+ * Groups messages by type, label and template as they are added, keeping a count, the first and
+ * last occurrence, and a few sample arguments per group. Intended to render a readable summary of
+ * operations with many repetitive messages.
+ * <p>
+ * The number of groups is bounded; once reached, messages that don't belong to an existing group
+ * are counted in one overflow group per message type.
+ * <p>
+ * Not thread-safe, in keeping with <code>BaseOperationResult</code>.
+ */
+public class MessageAggregator {
+
+  public static final int DEFAULT_MAX_GROUPS = 10000;
+
+  public static final int DEFAULT_MAX_SAMPLES_PER_GROUP = 3;
+
+  /**
+   * Template of the overflow groups.
+   */
+  public static final String OVERFLOW_TEMPLATE = "(other messages)";
+
+  private static final Comparator<MessageGroup> COUNT_DESCENDING = new Comparator<MessageGroup>() {
+    @Override
+    public int compare(MessageGroup g1, MessageGroup g2) {
+      return g1.getCount() > g2.getCount() ? -1 : (g1.getCount() == g2.getCount() ? 0 : 1);
+    }
+  };
+
+  private final int maxGroups;
+
+  private final int maxSamplesPerGroup;
+
+  /**
+   * Groups in order of first occurrence.
+   */
+  private final Map<String, MessageGroup> groups = new LinkedHashMap<String, MessageGroup>();
+
+  private int messageCount;
+
+  public MessageAggregator() {
+    this(DEFAULT_MAX_GROUPS, DEFAULT_MAX_SAMPLES_PER_GROUP);
+  }
+
+  /**
+   * @param maxGroups The maximum number of groups, excluding overflow groups.
+   * @param maxSamplesPerGroup The maximum number of sample arguments to retain per group.
+   */
+  public MessageAggregator(int maxGroups, int maxSamplesPerGroup) {
+    this.maxGroups = maxGroups;
+    this.maxSamplesPerGroup = maxSamplesPerGroup;
+  }
+
+  /**
+   * Add a message.
+   * 
+   * @param messageType
+   * @param label
+   * @param messageText
+   * @param timestamp May be null.
+   */
+  public void add(MessageType messageType, String label, String messageText, Date timestamp) {
+    MessageTemplate template = MessageTemplate.parse(messageText);
+    MessageGroup group = getOrCreateGroup(messageType, label, template.getTemplate());
+    group.add(timestamp == null ? 0 : timestamp.getTime(), messageCount++,
+        template.getArguments(), maxSamplesPerGroup);
+  }
+
+  /**
+   * Add all of another aggregator's groups, as though its messages were added after this one's.
+   * 
+   * @param other
+   */
+  public void addAll(MessageAggregator other) {
+    if (other == null || other == this) {
+      return;
+    }
+    for (MessageGroup otherGroup : other.groups.values()) {
+      getOrCreateGroup(otherGroup.getMessageType(), otherGroup.getLabel(),
+          otherGroup.getTemplate()).addAll(otherGroup, messageCount, maxSamplesPerGroup);
+    }
+    messageCount += other.messageCount;
+  }
+
+  /**
+   * @return the number of messages added
+   */
+  public int getMessageCount() {
+    return messageCount;
+  }
+
+  /**
+   * @return the number of groups
+   */
+  public int getGroupCount() {
+    return groups.size();
+  }
+
+  /**
+   * @return the groups, in order of first occurrence
+   */
+  public List<MessageGroup> getGroups() {
+    return Collections.unmodifiableList(new ArrayList<MessageGroup>(groups.values()));
+  }
+
+  /**
+   * @return the groups, largest first; groups of equal size retain order of first occurrence.
+   */
+  public List<MessageGroup> getGroupsByCount() {
+    List<MessageGroup> sorted = new ArrayList<MessageGroup>(groups.values());
+    Collections.sort(sorted, COUNT_DESCENDING);
+    return sorted;
+  }
+
+  private MessageGroup getOrCreateGroup(MessageType messageType, String label, String template) {
+    String key = buildKey(messageType, label, template);
+    MessageGroup group = groups.get(key);
+    if (group == null) {
+      if (groups.size() >= maxGroups) {
+        key = buildKey(messageType, null, OVERFLOW_TEMPLATE);
+        group = groups.get(key);
+        if (group == null) {
+          group = new MessageGroup(messageType, null, OVERFLOW_TEMPLATE);
+          groups.put(key, group);
+        }
+        return group;
+      }
+      group = new MessageGroup(messageType, label, template);
+      groups.put(key, group);
+    }
+    return group;
+  }
+
+  private static String buildKey(MessageType messageType, String label, String template) {
+    return new StringBuilder(template.length() + 32).append(messageType.ordinal()).append('\u0000')
+        .append(label).append('\u0000').append(template).toString();
+  }
+
+}
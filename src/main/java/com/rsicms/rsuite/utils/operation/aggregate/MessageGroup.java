@@ -0,0 +1,135 @@
+package com.rsicms.rsuite.utils.operation.aggregate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.rsicms.rsuite.utils.operation.MessageType;
+
+/**
+ * Messages of the same type, label and template, as maintained by {@link MessageAggregator}.
+ */
+public class MessageGroup {
+
+  private final MessageType messageType;
+
+  private final String label;
+
+  private final String template;
+
+  private int count;
+
+  private long firstTimestamp;
+
+  private long lastTimestamp;
+
+  private int firstSequence;
+
+  private int lastSequence;
+
+  private final List<List<String>> sampleArguments = new ArrayList<List<String>>(1);
+
+  MessageGroup(MessageType messageType, String label, String template) {
+    this.messageType = messageType;
+    this.label = label;
+    this.template = template;
+  }
+
+  void add(long timestamp, int sequence, List<String> arguments, int maxSamples) {
+    if (count == 0) {
+      firstTimestamp = timestamp;
+      firstSequence = sequence;
+    }
+    count++;
+    lastTimestamp = timestamp;
+    lastSequence = sequence;
+    if (sampleArguments.size() < maxSamples && !arguments.isEmpty()) {
+      sampleArguments.add(arguments);
+    }
+  }
+
+  void addAll(MessageGroup other, int sequenceOffset, int maxSamples) {
+    if (other.count == 0) {
+      return;
+    }
+    if (count == 0) {
+      firstTimestamp = other.firstTimestamp;
+      firstSequence = other.firstSequence + sequenceOffset;
+    }
+    count += other.count;
+    lastTimestamp = other.lastTimestamp;
+    lastSequence = other.lastSequence + sequenceOffset;
+    for (List<String> arguments : other.sampleArguments) {
+      if (sampleArguments.size() >= maxSamples) {
+        break;
+      }
+      sampleArguments.add(arguments);
+    }
+  }
+
+  /**
+   * @return the type shared by the group's messages
+   */
+  public MessageType getMessageType() {
+    return messageType;
+  }
+
+  /**
+   * @return the label shared by the group's messages
+   */
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * @return the template shared by the group's messages
+   * @see MessageTemplate
+   */
+  public String getTemplate() {
+    return template;
+  }
+
+  /**
+   * @return the number of messages in the group
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return the timestamp of the group's first message, or null when unknown
+   */
+  public Date getFirstOccurrence() {
+    return firstTimestamp == 0 ? null : new Date(firstTimestamp);
+  }
+
+  /**
+   * @return the timestamp of the group's last message, or null when unknown
+   */
+  public Date getLastOccurrence() {
+    return lastTimestamp == 0 ? null : new Date(lastTimestamp);
+  }
+
+  /**
+   * @return the zero-based position of the group's first message among all messages
+   */
+  public int getFirstSequence() {
+    return firstSequence;
+  }
+
+  /**
+   * @return the zero-based position of the group's last message among all messages
+   */
+  public int getLastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * @return the arguments of the first few messages in the group that had arguments
+   */
+  public List<List<String>> getSampleArguments() {
+    return Collections.unmodifiableList(sampleArguments);
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.rsicms.rsuite.utils.operation.aggregate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message text with its variable parts normalized out. Quoted text and words containing digits
+ * (IDs, counts, file names with versions, timestamps) are replaced by {@link #PLACEHOLDER}, and
+ * the replaced values are kept as the arguments.
+ * <p>
+ * For example, <code>Processing asset 'Chapter 1' (ID: 12345)</code> becomes
+ * <code>Processing asset '{}' (ID: {})</code> with the arguments <code>Chapter 1</code> and
+ * <code>12345</code>.
+ */
+public class MessageTemplate {
+
+  public static final String PLACEHOLDER = "{}";
+
+  private final String template;
+
+  private final List<String> arguments;
+
+  private MessageTemplate(String template, List<String> arguments) {
+    this.template = template;
+    this.arguments = arguments;
+  }
+
+  /**
+   * @return the message text with its arguments replaced by placeholders.
+   */
+  public String getTemplate() {
+    return template;
+  }
+
+  /**
+   * @return the values replaced by placeholders, in order.
+   */
+  public List<String> getArguments() {
+    return arguments;
+  }
+
+  /**
+   * Normalize the given message text.
+   * 
+   * @param text
+   * @return the message template; never null.
+   */
+  public static MessageTemplate parse(String text) {
+    if (text == null || text.isEmpty()) {
+      return new MessageTemplate(text == null ? "" : text, Collections.<String>emptyList());
+    }
+    StringBuilder template = null;
+    List<String> arguments = null;
+    int copiedTo = 0;
+    int len = text.length();
+    int i = 0;
+    while (i < len) {
+      char c = text.charAt(i);
+      int end = -1;
+      int argStart = i;
+      int argEnd = -1;
+      if ((c == '\'' || c == '"') && (i == 0 || !isWordChar(text.charAt(i - 1)))) {
+        int close = text.indexOf(c, i + 1);
+        if (close > i) {
+          // Keep the quotes; replace what's inside.
+          argStart = i + 1;
+          argEnd = close;
+          end = close + 1;
+        }
+      } else if (isWordChar(c) && (i == 0 || !isWordChar(text.charAt(i - 1)))) {
+        int j = i;
+        boolean hasDigit = false;
+        while (j < len && (isWordChar(text.charAt(j))
+            || (text.charAt(j) == '.' && j + 1 < len && isWordChar(text.charAt(j + 1))))) {
+          hasDigit |= Character.isDigit(text.charAt(j));
+          j++;
+        }
+        if (hasDigit) {
+          argEnd = j;
+          end = j;
+        } else {
+          i = j;
+          continue;
+        }
+      }
+      if (end < 0) {
+        i++;
+        continue;
+      }
+      if (template == null) {
+        template = new StringBuilder(len);
+        arguments = new ArrayList<String>(2);
+      }
+      template.append(text, copiedTo, argStart).append(PLACEHOLDER);
+      arguments.add(text.substring(argStart, argEnd));
+      copiedTo = argEnd;
+      i = end;
+    }
+    if (template == null) {
+      return new MessageTemplate(text, Collections.<String>emptyList());
+    }
+    template.append(text, copiedTo, len);
+    return new MessageTemplate(template.toString(), arguments);
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == ':' || c == '/';
+  }
+
+}
@@ -0,0 +1,110 @@
+package com.rsicms.rsuite.utils.operation.codec;
+
+import java.io.IOException;
+
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+
+/**
+ * Reads values written by <code>BinaryWriter</code> from a byte array.
+ */
+class BinaryReader {
+
+  private final byte[] buf;
+
+  private int pos;
+
+  private final int limit;
+
+  BinaryReader(byte[] buf, int offset, int length) {
+    this.buf = buf;
+    this.pos = offset;
+    this.limit = offset + length;
+  }
+
+  int getPosition() {
+    return pos;
+  }
+
+  void skip(int len) throws IOException {
+    ensureAvailable(len);
+    pos += len;
+  }
+
+  int readByte() throws IOException {
+    ensureAvailable(1);
+    return buf[pos++] & 0xFF;
+  }
+
+  int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw corrupt();
+  }
+
+  /**
+   * Read a count of items that are each encoded in at least one byte.
+   * 
+   * @throws IOException Thrown if the count is negative or exceeds the bytes remaining.
+   */
+  int readCount() throws IOException {
+    int cnt = readVarInt();
+    checkCount(cnt);
+    return cnt;
+  }
+
+  /**
+   * @throws IOException Thrown if the count of items, each encoded in at least one byte, is
+   *         negative or exceeds the bytes remaining.
+   */
+  void checkCount(int cnt) throws IOException {
+    if (cnt < 0 || cnt > limit - pos) {
+      throw corrupt();
+    }
+  }
+
+  long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw corrupt();
+  }
+
+  long readSignedVarLong() throws IOException {
+    long raw = readVarLong();
+    return (raw >>> 1) ^ -(raw & 1);
+  }
+
+  String readString() throws IOException {
+    int len = readVarInt();
+    if (len == 0) {
+      return null;
+    }
+    len--;
+    ensureAvailable(len);
+    String value = new String(buf, pos, len, BinaryWriter.UTF8);
+    pos += len;
+    return value;
+  }
+
+  private void ensureAvailable(int len) throws IOException {
+    if (len < 0 || limit - pos < len) {
+      throw corrupt();
+    }
+  }
+
+  private static IOException corrupt() {
+    return new IOException(OperationMessageProperties.get("codec.error.corrupt.data"));
+  }
+
+}
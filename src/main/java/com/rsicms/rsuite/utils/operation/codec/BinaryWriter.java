@@ -0,0 +1,78 @@
+package com.rsicms.rsuite.utils.operation.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes variable-length integers and length-prefixed strings to an output stream. Counterpart of
+ * <code>BinaryReader</code>.
+ */
+class BinaryWriter {
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final OutputStream out;
+
+  BinaryWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  void writeByte(int b) throws IOException {
+    out.write(b);
+  }
+
+  void writeBytes(byte[] bytes, int off, int len) throws IOException {
+    out.write(bytes, off, len);
+  }
+
+  /**
+   * Write an unsigned variable-length int; 7 bits per byte, high bit set while more bytes follow.
+   * 
+   * @param value
+   * @throws IOException
+   */
+  void writeVarInt(int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  /**
+   * Write a signed long, zig-zag encoded such that small negative values stay small.
+   * 
+   * @param value
+   * @throws IOException
+   */
+  void writeSignedVarLong(long value) throws IOException {
+    writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  /**
+   * Write a nullable string as its UTF-8 byte length plus one (zero for null), followed by the
+   * bytes.
+   * 
+   * @param value
+   * @throws IOException
+   */
+  void writeString(String value) throws IOException {
+    if (value == null) {
+      writeVarInt(0);
+      return;
+    }
+    byte[] bytes = value.getBytes(UTF8);
+    writeVarInt(bytes.length + 1);
+    out.write(bytes);
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.rsicms.rsuite.utils.operation.codec;
+
+import java.util.Date;
+
+import com.rsicms.rsuite.utils.operation.MessageType;
+
+/**
+ * A decoded operation result message.
+ */
+public class MessageSnapshot {
+
+  private final MessageType messageType;
+
+  private final String label;
+
+  private final String messageText;
+
+  private final long timestamp;
+
+  MessageSnapshot(MessageType messageType, String label, String messageText, long timestamp) {
+    this.messageType = messageType;
+    this.label = label;
+    this.messageText = messageText;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * @return the message type
+   */
+  public MessageType getMessageType() {
+    return messageType;
+  }
+
+  /**
+   * @return the label, which is shared by all messages decoded with the same label.
+   */
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * @return the message text
+   */
+  public String getMessageText() {
+    return messageText;
+  }
+
+  /**
+   * @return the timestamp or null when the message didn't have one.
+   */
+  public Date getTimestamp() {
+    return timestamp == OperationResultCodec.NO_TIMESTAMP ? null : new Date(timestamp);
+  }
+
+}
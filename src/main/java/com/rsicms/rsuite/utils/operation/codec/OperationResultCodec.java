@@ -0,0 +1,358 @@
+package com.rsicms.rsuite.utils.operation.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Compact, versioned binary encoding of an operation result's state, for storage and for handing
+ * results between nodes. Java serialization isn't an option, as results reference a
+ * <code>Log</code> and RSuite API objects.
+ * <p>
+ * The encoding covers the operation ID, default label, start and end, counters, timers, the asset
+ * registries of each transaction, and the messages. Integers are variable-length; message
+ * timestamps are stored as deltas; message labels are interned into a table. The message section
+ * is length-prefixed such that it may be skipped and decoded lazily.
+ * <p>
+ * Layout of version 1:
+ * 
+ * <pre>
+ * magic (4 bytes) | version (1 byte)
+ * opId | defaultLabel | start | end
+ * counters: count, (name, value)*
+ * timers: count, (name, start)*
+ * transactions: count, (flags, newAssets, updatedAssets, newRolledBack, updatedRolledBack, props)*
+ * messages: count, byte length, label table, (type, label index, timestamp delta, text)*
+ * </pre>
+ */
+public class OperationResultCodec {
+
+  /**
+   * The version written by this implementation.
+   */
+  public static final int FORMAT_VERSION = 1;
+
+  /**
+   * "OPRS"
+   */
+  private static final byte[] MAGIC = new byte[] {'O', 'P', 'R', 'S'};
+
+  static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  private static final int TYPE_OTHER = 0;
+  private static final int TYPE_FAILURE = 1;
+  private static final int TYPE_WARNING = 2;
+  private static final int TYPE_INFO = 3;
+  private static final int TYPE_DEBUG = 4;
+
+  /**
+   * Set on a message's type byte when the message has no timestamp.
+   */
+  private static final int FLAG_NO_TIMESTAMP = 0x10;
+
+  private static final int FLAG_ROLLBACK_REQUESTED = 0x01;
+
+  /**
+   * Encode the given operation result.
+   * 
+   * @param opResult
+   * @return the encoded operation result
+   * @throws IOException
+   */
+  public byte[] encode(OperationResult opResult) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    encode(opResult, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Encode the given operation result to a stream. The stream is not closed.
+   * 
+   * @param opResult
+   * @param out
+   * @throws IOException
+   */
+  public void encode(OperationResult opResult, OutputStream out) throws IOException {
+    BinaryWriter writer = new BinaryWriter(out);
+    writer.writeBytes(MAGIC, 0, MAGIC.length);
+    writer.writeByte(FORMAT_VERSION);
+
+    writer.writeString(opResult.getOperationId());
+    writer.writeString(opResult.getDefaultLabel());
+    writeDate(writer, opResult.getStartOfOperation());
+    writeDate(writer, opResult.getEndOfOperation());
+
+    List<String> counterNames = opResult.getCounterNames();
+    writer.writeVarInt(counterNames.size());
+    for (String name : counterNames) {
+      writer.writeString(name);
+      writer.writeSignedVarLong(opResult.getCount(name));
+    }
+
+    List<String> timerNames = opResult.getTimerNames();
+    writer.writeVarInt(timerNames.size());
+    for (String name : timerNames) {
+      writer.writeString(name);
+      writeDate(writer, opResult.getTimerStart(name));
+    }
+
+    List<Transaction> transactions = opResult.getTransactions();
+    writer.writeVarInt(transactions.size());
+    for (Transaction t : transactions) {
+      writer.writeByte(t.wasRollbackRequested() ? FLAG_ROLLBACK_REQUESTED : 0);
+      writeMap(writer, t.getAssetsLoaded());
+      writeMap(writer, t.getUpdatedAssets());
+      writeMap(writer, t.getNewAssetsRolledBack());
+      writeMap(writer, t.getUpdatedAssetsRolledBack());
+      writeMap(writer, t.getProperties());
+    }
+
+    List<ProcessMessage> messages = opResult.getAllMessages();
+    ByteArrayOutputStream section = new ByteArrayOutputStream(64 + messages.size() * 32);
+    encodeMessages(new BinaryWriter(section), messages, opResult.getStartOfOperation());
+    writer.writeVarInt(messages.size());
+    writer.writeVarInt(section.size());
+    section.writeTo(out);
+  }
+
+  /**
+   * Decode an operation result, decoding its messages immediately.
+   * 
+   * @param bytes
+   * @return the decoded operation result
+   * @throws IOException Thrown if the bytes are not an encoded operation result, or were encoded
+   *         by an unsupported version.
+   */
+  public OperationResultSnapshot decode(byte[] bytes) throws IOException {
+    return decode(bytes, false);
+  }
+
+  /**
+   * Decode an operation result from a stream. The stream is read to its end but not closed.
+   * 
+   * @param in
+   * @param lazyMessages When true, the message section is not decoded until requested.
+   * @return the decoded operation result
+   * @throws IOException
+   */
+  public OperationResultSnapshot decode(InputStream in, boolean lazyMessages) throws IOException {
+    return decode(IOUtils.toByteArray(in), lazyMessages);
+  }
+
+  /**
+   * Decode an operation result.
+   * 
+   * @param bytes
+   * @param lazyMessages When true, the message section is not decoded until requested. The
+   *        snapshot then retains the given array until then.
+   * @return the decoded operation result
+   * @throws IOException Thrown if the bytes are not an encoded operation result, or were encoded
+   *         by an unsupported version.
+   */
+  public OperationResultSnapshot decode(byte[] bytes, boolean lazyMessages) throws IOException {
+    BinaryReader reader = new BinaryReader(bytes, 0, bytes.length);
+    for (byte b : MAGIC) {
+      if (reader.readByte() != b) {
+        throw new IOException(
+            OperationMessageProperties.get("codec.error.not.an.operation.result"));
+      }
+    }
+    int version = reader.readByte();
+    if (version != FORMAT_VERSION) {
+      throw new IOException(
+          OperationMessageProperties.get("codec.error.unsupported.version", version));
+    }
+
+    String opId = reader.readString();
+    String defaultLabel = reader.readString();
+    Date start = readDate(reader);
+    Date end = readDate(reader);
+
+    int cnt = reader.readCount();
+    Map<String, Integer> counters = new LinkedHashMap<String, Integer>(capacity(cnt));
+    for (int i = 0; i < cnt; i++) {
+      String name = reader.readString();
+      counters.put(name, (int) reader.readSignedVarLong());
+    }
+
+    cnt = reader.readCount();
+    Map<String, Date> timers = new LinkedHashMap<String, Date>(capacity(cnt));
+    for (int i = 0; i < cnt; i++) {
+      String name = reader.readString();
+      timers.put(name, readDate(reader));
+    }
+
+    cnt = reader.readCount();
+    List<TransactionSnapshot> transactions = new ArrayList<TransactionSnapshot>(cnt);
+    for (int i = 0; i < cnt; i++) {
+      int flags = reader.readByte();
+      transactions.add(new TransactionSnapshot((flags & FLAG_ROLLBACK_REQUESTED) != 0,
+          readMap(reader), readMap(reader), readMap(reader), readMap(reader), readMap(reader)));
+    }
+
+    int messageCount = reader.readCount();
+    int sectionLength = reader.readVarInt();
+    int sectionOffset = reader.getPosition();
+    reader.skip(sectionLength);
+    if (messageCount > sectionLength) {
+      throw new IOException(OperationMessageProperties.get("codec.error.corrupt.data"));
+    }
+
+    OperationResultSnapshot snapshot = new OperationResultSnapshot(version, opId, defaultLabel,
+        start, end, counters, timers, transactions, messageCount, bytes, sectionOffset,
+        sectionLength);
+    if (!lazyMessages) {
+      snapshot.getMessages();
+    }
+    return snapshot;
+  }
+
+  private static void encodeMessages(BinaryWriter writer, List<ProcessMessage> messages,
+      Date start) throws IOException {
+    // Intern the labels.
+    Map<String, Integer> labelIndexes = new HashMap<String, Integer>();
+    List<String> labels = new ArrayList<String>();
+    int[] messageLabelIndexes = new int[messages.size()];
+    int i = 0;
+    for (ProcessMessage message : messages) {
+      String label = message.getTargetObjectLabel();
+      Integer idx = labelIndexes.get(label);
+      if (idx == null) {
+        idx = labels.size();
+        labelIndexes.put(label, idx);
+        labels.add(label);
+      }
+      messageLabelIndexes[i++] = idx;
+    }
+    writer.writeVarInt(labels.size());
+    for (String label : labels) {
+      writer.writeString(label);
+    }
+
+    long previous = start == null ? 0 : start.getTime();
+    i = 0;
+    for (ProcessMessage message : messages) {
+      Date timestamp = message.getTimestamp();
+      writer.writeByte(getTypeCode(message) | (timestamp == null ? FLAG_NO_TIMESTAMP : 0));
+      writer.writeVarInt(messageLabelIndexes[i++]);
+      if (timestamp != null) {
+        writer.writeSignedVarLong(timestamp.getTime() - previous);
+        previous = timestamp.getTime();
+      }
+      writer.writeString(message.getMessageText());
+    }
+  }
+
+  static List<MessageSnapshot> decodeMessages(BinaryReader reader, int messageCount, Date start)
+      throws IOException {
+    reader.checkCount(messageCount);
+    String[] labels = new String[reader.readCount()];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = reader.readString();
+    }
+
+    List<MessageSnapshot> messages = new ArrayList<MessageSnapshot>(messageCount);
+    long previous = start == null ? 0 : start.getTime();
+    for (int i = 0; i < messageCount; i++) {
+      int type = reader.readByte();
+      int labelIndex = reader.readVarInt();
+      if (labelIndex < 0 || labelIndex >= labels.length) {
+        throw new IOException(OperationMessageProperties.get("codec.error.corrupt.data"));
+      }
+      long timestamp = NO_TIMESTAMP;
+      if ((type & FLAG_NO_TIMESTAMP) == 0) {
+        timestamp = previous + reader.readSignedVarLong();
+        previous = timestamp;
+      }
+      messages.add(new MessageSnapshot(getMessageType(type & ~FLAG_NO_TIMESTAMP),
+          labels[labelIndex], reader.readString(), timestamp));
+    }
+    return messages;
+  }
+
+  private static int getTypeCode(ProcessMessage message) {
+    switch (MessageType.get(message)) {
+      case FAILURE:
+        return TYPE_FAILURE;
+      case WARNING:
+        return TYPE_WARNING;
+      case INFO:
+        return TYPE_INFO;
+      case DEBUG:
+        return TYPE_DEBUG;
+      default:
+        return TYPE_OTHER;
+    }
+  }
+
+  private static MessageType getMessageType(int typeCode) {
+    switch (typeCode) {
+      case TYPE_FAILURE:
+        return MessageType.FAILURE;
+      case TYPE_WARNING:
+        return MessageType.WARNING;
+      case TYPE_INFO:
+        return MessageType.INFO;
+      case TYPE_DEBUG:
+        return MessageType.DEBUG;
+      default:
+        return MessageType.OTHER;
+    }
+  }
+
+  private static void writeDate(BinaryWriter writer, Date date) throws IOException {
+    // Zero is reserved for null.
+    writer.writeVarLong(date == null ? 0 : (date.getTime() << 1 ^ date.getTime() >> 63) + 1);
+  }
+
+  private static Date readDate(BinaryReader reader) throws IOException {
+    long raw = reader.readVarLong();
+    if (raw == 0) {
+      return null;
+    }
+    raw--;
+    return new Date((raw >>> 1) ^ -(raw & 1));
+  }
+
+  private static void writeMap(BinaryWriter writer, Map<String, String> map) throws IOException {
+    if (map == null) {
+      writer.writeVarInt(0);
+      return;
+    }
+    writer.writeVarInt(map.size());
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      writer.writeString(entry.getKey());
+      writer.writeString(entry.getValue());
+    }
+  }
+
+  private static Map<String, String> readMap(BinaryReader reader) throws IOException {
+    int cnt = reader.readCount();
+    Map<String, String> map = new LinkedHashMap<String, String>(capacity(cnt));
+    for (int i = 0; i < cnt; i++) {
+      String key = reader.readString();
+      map.put(key, reader.readString());
+    }
+    return map;
+  }
+
+  private static int capacity(int cnt) {
+    return Math.max(4, (int) (cnt / 0.75f) + 1);
+  }
+
+}
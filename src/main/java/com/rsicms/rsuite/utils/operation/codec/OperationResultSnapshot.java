@@ -0,0 +1,153 @@
+package com.rsicms.rsuite.utils.operation.codec;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A decoded, read-only copy of an operation result's state. Produced by
+ * {@link OperationResultCodec}.
+ * <p>
+ * When decoded lazily, the message section is kept as bytes and only decoded the first time
+ * {@link #getMessages()} is called.
+ */
+public class OperationResultSnapshot {
+
+  private final int formatVersion;
+
+  private final String operationId;
+
+  private final String defaultLabel;
+
+  private final Date startOfOperation;
+
+  private final Date endOfOperation;
+
+  private final Map<String, Integer> counters;
+
+  private final Map<String, Date> timers;
+
+  private final List<TransactionSnapshot> transactions;
+
+  /**
+   * Encoded message section; released once decoded.
+   */
+  private byte[] messageBytes;
+
+  private int messageOffset;
+
+  private int messageLength;
+
+  private final int messageCount;
+
+  private List<MessageSnapshot> messages;
+
+  OperationResultSnapshot(int formatVersion, String operationId, String defaultLabel,
+      Date startOfOperation, Date endOfOperation, Map<String, Integer> counters,
+      Map<String, Date> timers, List<TransactionSnapshot> transactions, int messageCount,
+      byte[] messageBytes, int messageOffset, int messageLength) {
+    this.formatVersion = formatVersion;
+    this.operationId = operationId;
+    this.defaultLabel = defaultLabel;
+    this.startOfOperation = startOfOperation;
+    this.endOfOperation = endOfOperation;
+    this.counters = Collections.unmodifiableMap(counters);
+    this.timers = Collections.unmodifiableMap(timers);
+    this.transactions = Collections.unmodifiableList(transactions);
+    this.messageCount = messageCount;
+    this.messageBytes = messageBytes;
+    this.messageOffset = messageOffset;
+    this.messageLength = messageLength;
+  }
+
+  /**
+   * @return the version of the binary format the snapshot was decoded from
+   */
+  public int getFormatVersion() {
+    return formatVersion;
+  }
+
+  /**
+   * @return the operation ID
+   */
+  public String getOperationId() {
+    return operationId;
+  }
+
+  /**
+   * @return the default label
+   */
+  public String getDefaultLabel() {
+    return defaultLabel;
+  }
+
+  /**
+   * @return the start of the operation, or null when unknown
+   */
+  public Date getStartOfOperation() {
+    return startOfOperation;
+  }
+
+  /**
+   * @return the end of the operation, or null when unknown
+   */
+  public Date getEndOfOperation() {
+    return endOfOperation;
+  }
+
+  /**
+   * @return the counters, keyed by counter name
+   */
+  public Map<String, Integer> getCounters() {
+    return counters;
+  }
+
+  /**
+   * @return the moment each timer was started, keyed by timer name
+   */
+  public Map<String, Date> getTimers() {
+    return timers;
+  }
+
+  /**
+   * @return the transactions, in the order they were started
+   */
+  public List<TransactionSnapshot> getTransactions() {
+    return transactions;
+  }
+
+  /**
+   * Get the number of messages without decoding them.
+   * 
+   * @return the number of messages
+   */
+  public int getMessageCount() {
+    return messageCount;
+  }
+
+  /**
+   * @return True if the message section has been decoded.
+   */
+  public synchronized boolean isMessagesDecoded() {
+    return messages != null;
+  }
+
+  /**
+   * Get the messages, decoding them first if need be.
+   * 
+   * @return the messages, in the order they were added to the operation result
+   * @throws IOException Thrown if the message section is corrupt.
+   */
+  public synchronized List<MessageSnapshot> getMessages() throws IOException {
+    if (messages == null) {
+      messages = Collections.unmodifiableList(OperationResultCodec.decodeMessages(
+          new BinaryReader(messageBytes, messageOffset, messageLength), messageCount,
+          startOfOperation));
+      messageBytes = null;
+    }
+    return messages;
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.rsicms.rsuite.utils.operation.codec;
+
+import java.util.Map;
+
+/**
+ * The decoded asset registries of a <code>Transaction</code>. All maps are keyed by MO ID and
+ * valued by the label used for the MO, except for the properties.
+ */
+public class TransactionSnapshot {
+
+  private final boolean rollbackRequested;
+
+  private final Map<String, String> newAssets;
+
+  private final Map<String, String> updatedAssets;
+
+  private final Map<String, String> newAssetsRolledBack;
+
+  private final Map<String, String> updatedAssetsRolledBack;
+
+  private final Map<String, String> properties;
+
+  TransactionSnapshot(boolean rollbackRequested, Map<String, String> newAssets,
+      Map<String, String> updatedAssets, Map<String, String> newAssetsRolledBack,
+      Map<String, String> updatedAssetsRolledBack, Map<String, String> properties) {
+    this.rollbackRequested = rollbackRequested;
+    this.newAssets = newAssets;
+    this.updatedAssets = updatedAssets;
+    this.newAssetsRolledBack = newAssetsRolledBack;
+    this.updatedAssetsRolledBack = updatedAssetsRolledBack;
+    this.properties = properties;
+  }
+
+  /**
+   * @return True if rollback was requested for the transaction.
+   */
+  public boolean wasRollbackRequested() {
+    return rollbackRequested;
+  }
+
+  /**
+   * @return the new assets
+   */
+  public Map<String, String> getNewAssets() {
+    return newAssets;
+  }
+
+  /**
+   * @return the updated assets
+   */
+  public Map<String, String> getUpdatedAssets() {
+    return updatedAssets;
+  }
+
+  /**
+   * @return the new assets destroyed by rollback
+   */
+  public Map<String, String> getNewAssetsRolledBack() {
+    return newAssetsRolledBack;
+  }
+
+  /**
+   * @return the updated assets reverted by rollback
+   */
+  public Map<String, String> getUpdatedAssetsRolledBack() {
+    return updatedAssetsRolledBack;
+  }
+
+  /**
+   * @return the transaction's properties
+   */
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+}
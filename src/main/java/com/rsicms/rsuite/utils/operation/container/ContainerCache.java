@@ -0,0 +1,198 @@
+package com.rsicms.rsuite.utils.operation.container;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.reallysi.rsuite.api.ContentAssemblyNodeContainer;
+import com.reallysi.rsuite.api.RSuiteException;
+import com.reallysi.rsuite.api.User;
+import com.reallysi.rsuite.api.extensions.ExecutionContext;
+
+/**
+ * A bounded cache of containers by user and ID, so that results referring to a container by ID
+ * needn't hold it, nor each retrieve it.
+ * <p>
+ * A container is only served to the user it was retrieved as, as what a user may see is subject
+ * to the repository's access controls. Users are told apart with <code>equals</code>; a user
+ * represented by another, unequal instance misses the cache rather than risk being served another
+ * user's container. Results don't share a cache unless given one.
+ * <p>
+ * The least recently used containers are dropped once the cache holds its maximum. Callers that
+ * change a container are to {@link #invalidate(String) invalidate} it, so that it is retrieved
+ * anew. A container retrieved while being invalidated is returned but not cached.
+ * <p>
+ * Thread-safe. Retrieval happens outside the lock, so concurrent misses on the same ID may each
+ * retrieve the container.
+ */
+public class ContainerCache {
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  private static final ContainerCache DEFAULT = new ContainerCache(DEFAULT_MAX_SIZE);
+
+  private final int maxSize;
+
+  /**
+   * Containers by user and ID, least recently used first.
+   */
+  private final LinkedHashMap<Key, ContentAssemblyNodeContainer> containers;
+
+  /**
+   * Incremented by each invalidation, so that a retrieval overlapping one isn't cached.
+   */
+  private long invalidations;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * @param maxSize The most containers to keep.
+   */
+  public ContainerCache(final int maxSize) {
+    this.maxSize = maxSize;
+    this.containers = new LinkedHashMap<Key, ContentAssemblyNodeContainer>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, ContentAssemblyNodeContainer> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return The process-wide cache, for results to share when given it.
+   */
+  public static ContainerCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Get a container, retrieving and caching it on a miss.
+   * 
+   * @param context
+   * @param user The user to retrieve the container as; only served containers retrieved as them.
+   * @param id
+   * @return The container, or null if there's none with the ID.
+   * @throws RSuiteException Thrown if the container can't be retrieved.
+   */
+  public ContentAssemblyNodeContainer get(ExecutionContext context, User user, String id)
+      throws RSuiteException {
+    Key key = new Key(user, id);
+    long observed;
+    synchronized (this) {
+      ContentAssemblyNodeContainer container = containers.get(key);
+      if (container != null) {
+        hitCount.incrementAndGet();
+        return container;
+      }
+      observed = invalidations;
+    }
+    missCount.incrementAndGet();
+    ContentAssemblyNodeContainer container =
+        context.getContentAssemblyService().getContentAssemblyNodeContainer(user, id);
+    if (container != null) {
+      synchronized (this) {
+        if (invalidations == observed) {
+          containers.put(key, container);
+        }
+      }
+    }
+    return container;
+  }
+
+  /**
+   * @param user
+   * @param id
+   * @return The container cached for the user, or null if not cached. Hits and misses aren't
+   *         counted.
+   */
+  public synchronized ContentAssemblyNodeContainer getIfPresent(User user, String id) {
+    return containers.get(new Key(user, id));
+  }
+
+  /**
+   * Cache a container already retrieved.
+   * 
+   * @param user The user the container was retrieved as.
+   * @param container
+   */
+  public synchronized void put(User user, ContentAssemblyNodeContainer container) {
+    containers.put(new Key(user, container.getId()), container);
+  }
+
+  /**
+   * Drop a container, for all users, such as once it's changed.
+   * 
+   * @param id
+   */
+  public synchronized void invalidate(String id) {
+    invalidations++;
+    for (Iterator<Key> it = containers.keySet().iterator(); it.hasNext();) {
+      if (it.next().id.equals(id)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Drop all containers.
+   */
+  public synchronized void invalidateAll() {
+    invalidations++;
+    containers.clear();
+  }
+
+  /**
+   * @return The number of containers cached.
+   */
+  public synchronized int size() {
+    return containers.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * A user and container ID.
+   */
+  private static class Key {
+
+    final User user;
+
+    final String id;
+
+    Key(User user, String id) {
+      this.user = user;
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return id.equals(other.id) && (user == null ? other.user == null : user.equals(other.user));
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * id.hashCode() + (user == null ? 0 : user.hashCode());
+    }
+
+  }
+
+}
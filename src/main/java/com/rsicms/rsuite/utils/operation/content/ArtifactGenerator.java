@@ -0,0 +1,23 @@
+package com.rsicms.rsuite.utils.operation.content;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.reallysi.rsuite.api.RSuiteException;
+
+/**
+ * Generates a download artifact, such as an export, when it isn't in a
+ * <code>DownloadArtifactCache</code>.
+ */
+public interface ArtifactGenerator {
+
+  /**
+   * Write the artifact to the given file.
+   * 
+   * @param file An empty file, in the cache's directory.
+   * @throws IOException
+   * @throws RSuiteException
+   */
+  void generate(File file) throws IOException, RSuiteException;
+
+}
@@ -0,0 +1,123 @@
+package com.rsicms.rsuite.utils.operation.content;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Content held in a byte array, which is used as is rather than copied.
+ */
+public class ByteArrayContent implements DownloadableContent {
+
+  private final byte[] bytes;
+
+  /**
+   * @param bytes The content; not copied, so not to be modified afterwards.
+   */
+  public ByteArrayContent(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#getLength()
+   */
+  @Override
+  public long getLength() {
+    return bytes.length;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#openStream()
+   */
+  @Override
+  public InputStream openStream() {
+    return new ByteArrayInputStream(bytes);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.rsicms.rsuite.utils.operation.content.DownloadableContent#writeTo(java.io.OutputStream)
+   */
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#transferTo(java.nio.channels.
+   * WritableByteChannel)
+   */
+  @Override
+  public void transferTo(WritableByteChannel target) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#transferTo(long, long,
+   * java.nio.channels.WritableByteChannel)
+   */
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    return transfer(bytes, bytes.length, position, count, target);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#toByteArray()
+   */
+  @Override
+  public byte[] toByteArray() {
+    return bytes;
+  }
+
+  /**
+   * Nothing to release.
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() {}
+
+  /**
+   * Write part of a byte array to a channel.
+   * 
+   * @param bytes
+   * @param length The length of the content in the array.
+   * @param position
+   * @param count
+   * @param target Left open.
+   * @return The number of bytes written.
+   * @throws IOException
+   */
+  static long transfer(byte[] bytes, int length, long position, long count,
+      WritableByteChannel target) throws IOException {
+    if (position >= length || count <= 0) {
+      return 0;
+    }
+    int n = (int) Math.min(count, length - position);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, (int) position, n);
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
+    }
+    return n;
+  }
+
+}
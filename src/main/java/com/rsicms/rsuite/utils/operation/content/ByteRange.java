@@ -0,0 +1,180 @@
+package com.rsicms.rsuite.utils.operation.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes of content, as requested by an HTTP <code>Range</code> header, with the
+ * positions of its first and last bytes, inclusive.
+ */
+public final class ByteRange {
+
+  private static final String BYTES_UNIT = "bytes=";
+
+  /**
+   * Headers with more ranges are ignored, as they're more likely abuse than a download manager.
+   */
+  private static final int MAX_RANGES = 16;
+
+  private final long first;
+
+  private final long last;
+
+  /**
+   * @param first The position of the first byte.
+   * @param last The position of the last byte.
+   */
+  public ByteRange(long first, long last) {
+    if (first < 0 || last < first) {
+      throw new IllegalArgumentException(first + "-" + last);
+    }
+    this.first = first;
+    this.last = last;
+  }
+
+  /**
+   * Parse a <code>Range</code> header for content of the given length. Ranges that overlap or are
+   * adjacent are merged.
+   * 
+   * @param header The header's value; may be null.
+   * @param length The content's length.
+   * @return The satisfiable ranges, in order, which is empty when there are none; null when the
+   *         header is absent or invalid, and is to be ignored.
+   */
+  public static List<ByteRange> parse(String header, long length) {
+    if (header == null || length < 0) {
+      return null;
+    }
+    header = header.trim();
+    if (!header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+      return null;
+    }
+    String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+    if (specs.length > MAX_RANGES) {
+      return null;
+    }
+    List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+    for (String spec : specs) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash < 0) {
+        return null;
+      }
+      long first;
+      long last;
+      try {
+        if (dash == 0) {
+          // A suffix: the last so many bytes.
+          long suffix = Long.parseLong(spec.substring(1));
+          if (suffix < 0) {
+            return null;
+          }
+          first = Math.max(0, length - suffix);
+          last = length - 1;
+          if (suffix == 0) {
+            continue;
+          }
+        } else {
+          first = Long.parseLong(spec.substring(0, dash));
+          last = dash == spec.length() - 1 ? Long.MAX_VALUE
+              : Long.parseLong(spec.substring(dash + 1));
+          if (first < 0 || last < first) {
+            return null;
+          }
+          last = Math.min(last, length - 1);
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (first < length && first <= last) {
+        ranges.add(new ByteRange(first, last));
+      }
+    }
+    return merge(ranges);
+  }
+
+  private static List<ByteRange> merge(List<ByteRange> ranges) {
+    if (ranges.size() < 2) {
+      return ranges;
+    }
+    Collections.sort(ranges, new Comparator<ByteRange>() {
+      @Override
+      public int compare(ByteRange r1, ByteRange r2) {
+        return r1.first < r2.first ? -1 : (r1.first == r2.first ? 0 : 1);
+      }
+    });
+    List<ByteRange> merged = new ArrayList<ByteRange>(ranges.size());
+    ByteRange current = ranges.get(0);
+    for (int i = 1; i < ranges.size(); i++) {
+      ByteRange next = ranges.get(i);
+      if (next.first <= current.last + 1) {
+        current = new ByteRange(current.first, Math.max(current.last, next.last));
+      } else {
+        merged.add(current);
+        current = next;
+      }
+    }
+    merged.add(current);
+    return merged;
+  }
+
+  public long getFirst() {
+    return first;
+  }
+
+  public long getLast() {
+    return last;
+  }
+
+  /**
+   * @return The number of bytes in the range.
+   */
+  public long getLength() {
+    return last - first + 1;
+  }
+
+  /**
+   * @param contentLength
+   * @return The value of a <code>Content-Range</code> header for this range.
+   */
+  public String toContentRange(long contentLength) {
+    return "bytes " + first + "-" + last + "/" + contentLength;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof ByteRange)) {
+      return false;
+    }
+    ByteRange other = (ByteRange) obj;
+    return first == other.first && last == other.last;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    return (int) (first ^ (first >>> 32)) * 31 + (int) (last ^ (last >>> 32));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return first + "-" + last;
+  }
+
+}
@@ -0,0 +1,404 @@
+package com.rsicms.rsuite.utils.operation.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.reallysi.rsuite.api.RSuiteException;
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+
+/**
+ * A local disk cache of generated download artifacts, such as exports, so that requests for the
+ * same content are served from the file generated for the first.
+ * <p>
+ * Artifacts are keyed by a caller-supplied content key, which is to identify everything the
+ * artifact depends on: MO IDs, version specifiers, options. Each artifact is a file in the cache
+ * directory named for the SHA-256 digest of its key. Once the artifacts exceed the maximum size,
+ * the least recently used are deleted; the order survives restarts through the files' modification
+ * times. An artifact being delivered is not deleted until its content is closed.
+ * <p>
+ * Thread-safe. Concurrent misses on the same key each generate the artifact; the first one cached
+ * is kept.
+ */
+public class DownloadArtifactCache {
+
+  public static final String COUNTER_NAME_CACHE_HITS = "downloadCacheHits";
+
+  public static final String COUNTER_NAME_CACHE_MISSES = "downloadCacheMisses";
+
+  private static final String ARTIFACT_SUFFIX = ".artifact";
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Path directory;
+
+  private final long maxBytes;
+
+  /**
+   * Artifacts by key digest, least recently used first.
+   */
+  private final LinkedHashMap<String, Artifact> artifacts =
+      new LinkedHashMap<String, Artifact>(16, 0.75f, true);
+
+  private long totalBytes;
+
+  /**
+   * Distinguishes the files of successive artifacts with the same key.
+   */
+  private long generation;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Open the cache, creating the directory if need be, and index the artifacts already in it.
+   * 
+   * @param directory
+   * @param maxBytes The most bytes of artifacts to keep.
+   * @throws IOException
+   */
+  public DownloadArtifactCache(File directory, long maxBytes) throws IOException {
+    this.directory = directory.toPath();
+    this.maxBytes = maxBytes;
+    Files.createDirectories(this.directory);
+    load();
+  }
+
+  /**
+   * Get an artifact, generating and caching it on a miss. The hit or miss is counted on the given
+   * result.
+   * 
+   * @param contentKey Identifies the artifact's content.
+   * @param generator Generates the artifact on a miss.
+   * @param opResult The result to count the hit or miss on; may be null.
+   * @return The artifact, which stays in the cache at least until closed.
+   * @throws IOException
+   * @throws RSuiteException Thrown by the generator.
+   */
+  public FileContent get(String contentKey, ArtifactGenerator generator,
+      BaseOperationResult opResult) throws IOException, RSuiteException {
+    FileContent content = get(contentKey);
+    if (content != null) {
+      hitCount.incrementAndGet();
+      if (opResult != null) {
+        opResult.incrementCount(COUNTER_NAME_CACHE_HITS);
+      }
+      return content;
+    }
+    missCount.incrementAndGet();
+    if (opResult != null) {
+      opResult.incrementCount(COUNTER_NAME_CACHE_MISSES);
+    }
+    String digest = digest(contentKey);
+    Path tmp = Files.createTempFile(directory, digest, TEMP_SUFFIX);
+    try {
+      generator.generate(tmp.toFile());
+      return add(digest, tmp);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * @param contentKey
+   * @return The artifact, which stays in the cache at least until closed; null if not cached.
+   *         Hits and misses aren't counted.
+   */
+  public FileContent get(String contentKey) {
+    String digest = digest(contentKey);
+    Artifact artifact;
+    synchronized (this) {
+      artifact = artifacts.get(digest);
+      if (artifact == null) {
+        return null;
+      }
+      artifact.pins++;
+    }
+    try {
+      Files.setLastModifiedTime(artifact.path, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // Only the order of eviction after a restart is affected.
+    }
+    return new CachedContent(artifact);
+  }
+
+  /**
+   * Remove an artifact, such as when content it was generated from changed. The file is deleted
+   * once no longer being delivered.
+   * 
+   * @param contentKey
+   */
+  public void invalidate(String contentKey) {
+    Artifact artifact;
+    synchronized (this) {
+      artifact = artifacts.remove(digest(contentKey));
+      if (artifact == null) {
+        return;
+      }
+      totalBytes -= artifact.size;
+      artifact.removed = true;
+      if (artifact.pins > 0) {
+        return;
+      }
+    }
+    delete(artifact);
+  }
+
+  /**
+   * Remove all artifacts.
+   */
+  public void clear() {
+    List<Artifact> deletable = new ArrayList<Artifact>();
+    synchronized (this) {
+      for (Artifact artifact : artifacts.values()) {
+        artifact.removed = true;
+        if (artifact.pins == 0) {
+          deletable.add(artifact);
+        }
+      }
+      artifacts.clear();
+      totalBytes = 0;
+    }
+    for (Artifact artifact : deletable) {
+      delete(artifact);
+    }
+  }
+
+  /**
+   * @return The number of artifacts cached.
+   */
+  public synchronized int size() {
+    return artifacts.size();
+  }
+
+  /**
+   * @return The total size of the artifacts cached, in bytes.
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Move a generated artifact into the cache, unless another was cached meanwhile.
+   */
+  private FileContent add(String digest, Path generated) throws IOException {
+    Artifact artifact;
+    List<Artifact> evicted;
+    synchronized (this) {
+      artifact = artifacts.get(digest);
+      if (artifact == null) {
+        Path path = directory.resolve(digest + "-" + (++generation) + ARTIFACT_SUFFIX);
+        Files.move(generated, path, StandardCopyOption.ATOMIC_MOVE);
+        artifact = new Artifact(path, Files.size(path));
+        artifacts.put(digest, artifact);
+        totalBytes += artifact.size;
+      }
+      artifact.pins++;
+      evicted = evict();
+    }
+    for (Artifact a : evicted) {
+      delete(a);
+    }
+    return new CachedContent(artifact);
+  }
+
+  private void release(Artifact artifact) {
+    List<Artifact> deletable;
+    synchronized (this) {
+      if (--artifact.pins > 0) {
+        return;
+      }
+      deletable = artifact.removed ? Collections.singletonList(artifact) : evict();
+    }
+    for (Artifact a : deletable) {
+      delete(a);
+    }
+  }
+
+  /**
+   * Remove the least recently used artifacts not being delivered, until within the maximum size.
+   * 
+   * @return the artifacts removed, whose files are to be deleted outside the lock.
+   */
+  private List<Artifact> evict() {
+    List<Artifact> evicted = new ArrayList<Artifact>();
+    Iterator<Artifact> it = artifacts.values().iterator();
+    while (totalBytes > maxBytes && it.hasNext()) {
+      Artifact artifact = it.next();
+      if (artifact.pins == 0) {
+        it.remove();
+        totalBytes -= artifact.size;
+        artifact.removed = true;
+        evicted.add(artifact);
+        evictionCount.incrementAndGet();
+      }
+    }
+    return evicted;
+  }
+
+  private void delete(Artifact artifact) {
+    try {
+      Files.deleteIfExists(artifact.path);
+    } catch (IOException e) {
+      // Left behind; it's deleted when the cache is next opened.
+    }
+  }
+
+  /**
+   * Index the artifacts in the directory, oldest first, and delete leftover temporary files and
+   * superseded artifacts.
+   */
+  private void load() throws IOException {
+    final Map<Path, Long> modified = new LinkedHashMap<Path, Long>();
+    List<Path> paths = new ArrayList<Path>();
+    DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+    try {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        if (name.endsWith(TEMP_SUFFIX)) {
+          Files.deleteIfExists(path);
+        } else if (name.endsWith(ARTIFACT_SUFFIX) && name.indexOf('-') > 0) {
+          modified.put(path, Files.getLastModifiedTime(path).toMillis());
+          paths.add(path);
+        }
+      }
+    } finally {
+      stream.close();
+    }
+    Collections.sort(paths, new Comparator<Path>() {
+      @Override
+      public int compare(Path p1, Path p2) {
+        return modified.get(p1).compareTo(modified.get(p2));
+      }
+    });
+    for (Path path : paths) {
+      String name = path.getFileName().toString();
+      int dash = name.indexOf('-');
+      String digest = name.substring(0, dash);
+      try {
+        generation = Math.max(generation,
+            Long.parseLong(name.substring(dash + 1, name.length() - ARTIFACT_SUFFIX.length())));
+      } catch (NumberFormatException e) {
+        // Not named by this cache, but harmless.
+      }
+      Artifact artifact = new Artifact(path, Files.size(path));
+      Artifact superseded = artifacts.put(digest, artifact);
+      if (superseded != null) {
+        totalBytes -= superseded.size;
+        delete(superseded);
+      }
+      totalBytes += artifact.size;
+    }
+    for (Artifact artifact : evict()) {
+      delete(artifact);
+    }
+  }
+
+  private static String digest(String contentKey) {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256.
+      throw new IllegalStateException(e);
+    }
+    byte[] bytes = md.digest(contentKey.getBytes(UTF_8));
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A cached artifact. Guarded by the cache.
+   */
+  private static class Artifact {
+
+    final Path path;
+
+    final long size;
+
+    /**
+     * The number of contents being delivered.
+     */
+    int pins;
+
+    /**
+     * True once removed from the cache; the file is deleted when no longer pinned.
+     */
+    boolean removed;
+
+    Artifact(Path path, long size) {
+      this.path = path;
+      this.size = size;
+    }
+
+  }
+
+  /**
+   * An artifact's content, which unpins the artifact when closed.
+   */
+  private class CachedContent extends FileContent {
+
+    private final Artifact artifact;
+
+    private boolean closed;
+
+    CachedContent(Artifact artifact) {
+      super(artifact.path);
+      this.artifact = artifact;
+    }
+
+    /**
+     * Allow the artifact to be evicted.
+     * 
+     * @see com.rsicms.rsuite.utils.operation.content.FileContent#close()
+     */
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        release(artifact);
+      }
+    }
+
+  }
+
+}
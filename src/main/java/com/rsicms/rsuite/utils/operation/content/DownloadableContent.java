@@ -0,0 +1,66 @@
+package com.rsicms.rsuite.utils.operation.content;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Content to be downloaded, which may be held in memory or on disk. Closing it releases any
+ * resources, such as temporary files; it may not be read afterwards.
+ */
+public interface DownloadableContent extends Closeable {
+
+  /**
+   * @return The content's length, in bytes.
+   */
+  long getLength();
+
+  /**
+   * @return A new stream of the content, to be closed by the caller.
+   * @throws IOException
+   */
+  InputStream openStream() throws IOException;
+
+  /**
+   * Write the content to the given stream, which is left open.
+   * 
+   * @param out
+   * @throws IOException
+   */
+  void writeTo(OutputStream out) throws IOException;
+
+  /**
+   * Write the content to the given channel, which is left open. Content held in a file is
+   * transferred without passing through the heap where the platform allows; when the target is a
+   * socket or file channel, prefer this to {@link #writeTo(OutputStream)}.
+   * 
+   * @param target
+   * @throws IOException
+   */
+  void transferTo(WritableByteChannel target) throws IOException;
+
+  /**
+   * Write part of the content to the given channel, which is left open, as
+   * {@link #transferTo(WritableByteChannel)} does. Serves byte-range requests, such as those of
+   * clients resuming an interrupted download.
+   * 
+   * @param position The offset of the first byte to write.
+   * @param count The number of bytes to write.
+   * @param target
+   * @return The number of bytes written; fewer than requested when the content ends first.
+   * @throws IOException
+   */
+  long transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+  /**
+   * Get the content as a byte array. Avoid for large content, which has to fit in the heap; prefer
+   * {@link #writeTo(OutputStream)} or {@link #openStream()}.
+   * 
+   * @return The content. Callers may not modify it.
+   * @throws IOException
+   */
+  byte[] toByteArray() throws IOException;
+
+}
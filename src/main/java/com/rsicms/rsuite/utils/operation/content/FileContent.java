@@ -0,0 +1,184 @@
+package com.rsicms.rsuite.utils.operation.content;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+
+/**
+ * Content that already exists as a file. The file is never read into the heap, except by
+ * {@link #toByteArray()}; it is delivered with <code>FileChannel.transferTo</code>, which lets the
+ * operating system copy straight from the file to the target where it can.
+ */
+public class FileContent implements DownloadableContent {
+
+  private final Path path;
+
+  private final boolean deleteOnClose;
+
+  /**
+   * @param path The file, which is left in place when closed.
+   */
+  public FileContent(Path path) {
+    this(path, false);
+  }
+
+  /**
+   * @param path The file.
+   * @param deleteOnClose True to delete the file when closed, such as when it's a temporary file.
+   */
+  public FileContent(Path path, boolean deleteOnClose) {
+    this.path = path;
+    this.deleteOnClose = deleteOnClose;
+  }
+
+  /**
+   * @return the file.
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#getLength()
+   */
+  @Override
+  public long getLength() {
+    try {
+      return Files.size(path);
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#openStream()
+   */
+  @Override
+  public InputStream openStream() throws IOException {
+    return Files.newInputStream(path);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.rsicms.rsuite.utils.operation.content.DownloadableContent#writeTo(java.io.OutputStream)
+   */
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    transferTo(toChannel(out));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#transferTo(java.nio.channels.
+   * WritableByteChannel)
+   */
+  @Override
+  public void transferTo(WritableByteChannel target) throws IOException {
+    transfer(path, target);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#transferTo(long, long,
+   * java.nio.channels.WritableByteChannel)
+   */
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    return transfer(path, position, count, target);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#toByteArray()
+   */
+  @Override
+  public byte[] toByteArray() throws IOException {
+    return Files.readAllBytes(path);
+  }
+
+  /**
+   * Delete the file, if requested at construction.
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (deleteOnClose) {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * @param out
+   * @return A channel writing to the given stream: the stream's own channel when it's a file
+   *         stream, so transfers between files need not pass through user space.
+   */
+  static WritableByteChannel toChannel(OutputStream out) {
+    if (out instanceof FileOutputStream) {
+      return ((FileOutputStream) out).getChannel();
+    }
+    return Channels.newChannel(out);
+  }
+
+  /**
+   * Copy a file to a channel with <code>FileChannel.transferTo</code>.
+   * 
+   * @param path
+   * @param target Left open.
+   * @throws IOException
+   */
+  static void transfer(Path path, WritableByteChannel target) throws IOException {
+    transfer(path, 0, Long.MAX_VALUE, target);
+  }
+
+  /**
+   * Copy part of a file to a channel with <code>FileChannel.transferTo</code>.
+   * 
+   * @param path
+   * @param position
+   * @param count
+   * @param target Left open.
+   * @return The number of bytes copied.
+   * @throws IOException
+   */
+  static long transfer(Path path, long position, long count, WritableByteChannel target)
+      throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long end = position + Math.min(count, Math.max(0, channel.size() - position));
+      long current = position;
+      while (current < end) {
+        long transferred = channel.transferTo(current, end - current, target);
+        if (transferred <= 0) {
+          // The file was truncated while being delivered.
+          throw new IOException(
+              OperationMessageProperties.get("content.error.truncated", end - current));
+        }
+        current += transferred;
+      }
+      return current - position;
+    } finally {
+      channel.close();
+    }
+  }
+
+}
@@ -0,0 +1,300 @@
+package com.rsicms.rsuite.utils.operation.content;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.commons.io.IOUtils;
+
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+
+/**
+ * Content written through {@link #getOutputStream()} that's kept in memory while small, and moved
+ * to a temporary file once it exceeds a threshold. Large content therefore doesn't occupy the
+ * heap.
+ * <p>
+ * The content may be read once the output stream is closed. Closing this instance deletes the
+ * temporary file, so callers must close it. Not thread-safe.
+ */
+public class SpillingContent implements DownloadableContent {
+
+  /**
+   * Content up to this many bytes is kept in memory by default.
+   */
+  public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+  private static final String TEMP_FILE_PREFIX = "operation-content-";
+
+  private final int threshold;
+
+  private final File tempDir;
+
+  private ByteArrayOutputStream memory;
+
+  private File file;
+
+  private OutputStream fileOut;
+
+  private long length;
+
+  private final OutputStream out = new ContentOutputStream();
+
+  private boolean writing = true;
+
+  private boolean closed;
+
+  public SpillingContent() {
+    this(DEFAULT_THRESHOLD, null);
+  }
+
+  /**
+   * @param threshold Content larger than this many bytes is moved to a temporary file.
+   * @param tempDir The directory to create the temporary file in; null for the system default.
+   */
+  public SpillingContent(int threshold, File tempDir) {
+    this.threshold = threshold;
+    this.tempDir = tempDir;
+    this.memory = new ByteArrayOutputStream(Math.min(threshold, 8192));
+  }
+
+  /**
+   * Copy a stream into new content. The stream is not closed.
+   * 
+   * @param in
+   * @param threshold
+   * @param tempDir
+   * @return the content, ready to read.
+   * @throws IOException
+   */
+  public static SpillingContent copyOf(InputStream in, int threshold, File tempDir)
+      throws IOException {
+    SpillingContent content = new SpillingContent(threshold, tempDir);
+    boolean copied = false;
+    try {
+      OutputStream out = content.getOutputStream();
+      IOUtils.copyLarge(in, out);
+      out.close();
+      copied = true;
+    } finally {
+      if (!copied) {
+        content.close();
+      }
+    }
+    return content;
+  }
+
+  /**
+   * Get the stream to write the content to. Closing it completes the content.
+   * 
+   * @return the stream; the same one on each call.
+   */
+  public OutputStream getOutputStream() {
+    return out;
+  }
+
+  /**
+   * @return True if the content was moved to a temporary file.
+   */
+  public boolean isInFile() {
+    return file != null;
+  }
+
+  /**
+   * @return The temporary file holding the content, or null while in memory.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#getLength()
+   */
+  @Override
+  public long getLength() {
+    return length;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#openStream()
+   */
+  @Override
+  public InputStream openStream() throws IOException {
+    checkReadable();
+    if (file != null) {
+      return new FileInputStream(file);
+    }
+    return new ByteArrayInputStream(memory.toByteArray());
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.rsicms.rsuite.utils.operation.content.DownloadableContent#writeTo(java.io.OutputStream)
+   */
+  @Override
+  public void writeTo(OutputStream target) throws IOException {
+    checkReadable();
+    if (file != null) {
+      FileContent.transfer(file.toPath(), FileContent.toChannel(target));
+    } else {
+      memory.writeTo(target);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#transferTo(java.nio.channels.
+   * WritableByteChannel)
+   */
+  @Override
+  public void transferTo(WritableByteChannel target) throws IOException {
+    checkReadable();
+    if (file != null) {
+      FileContent.transfer(file.toPath(), target);
+    } else {
+      memory.writeTo(Channels.newOutputStream(target));
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#transferTo(long, long,
+   * java.nio.channels.WritableByteChannel)
+   */
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    checkReadable();
+    if (file != null) {
+      return FileContent.transfer(file.toPath(), position, count, target);
+    }
+    // Held in memory, so under the threshold; copying it is cheap.
+    byte[] bytes = memory.toByteArray();
+    return ByteArrayContent.transfer(bytes, bytes.length, position, count, target);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.content.DownloadableContent#toByteArray()
+   */
+  @Override
+  public byte[] toByteArray() throws IOException {
+    checkReadable();
+    if (file != null) {
+      InputStream in = new FileInputStream(file);
+      try {
+        return IOUtils.toByteArray(in);
+      } finally {
+        in.close();
+      }
+    }
+    return memory.toByteArray();
+  }
+
+  /**
+   * Release the content, deleting the temporary file if any.
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    memory = null;
+    try {
+      if (fileOut != null) {
+        fileOut.close();
+      }
+    } finally {
+      fileOut = null;
+      if (file != null && !file.delete() && file.exists()) {
+        throw new IOException(
+            OperationMessageProperties.get("content.error.unable.to.delete", file));
+      }
+    }
+  }
+
+  private void checkReadable() throws IOException {
+    if (closed) {
+      throw new IOException(OperationMessageProperties.get("content.error.released"));
+    }
+    if (writing) {
+      throw new IOException(OperationMessageProperties.get("content.error.still.being.written"));
+    }
+  }
+
+  /**
+   * Move the content written so far to a temporary file, where the rest will be written.
+   */
+  private void spill() throws IOException {
+    file = File.createTempFile(TEMP_FILE_PREFIX, ".tmp", tempDir);
+    fileOut = new BufferedOutputStream(new FileOutputStream(file), 65536);
+    memory.writeTo(fileOut);
+    memory = null;
+  }
+
+  /**
+   * Writes to memory until the threshold is exceeded, then to the temporary file.
+   */
+  private class ContentOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (!writing || closed) {
+        throw new IOException(OperationMessageProperties.get("content.error.already.written"));
+      }
+      if (fileOut == null && length + len > threshold) {
+        spill();
+      }
+      if (fileOut != null) {
+        fileOut.write(b, off, len);
+      } else {
+        memory.write(b, off, len);
+      }
+      length += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (fileOut != null) {
+        fileOut.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (writing) {
+        writing = false;
+        if (fileOut != null) {
+          fileOut.close();
+          fileOut = null;
+        }
+      }
+    }
+
+  }
+
+}
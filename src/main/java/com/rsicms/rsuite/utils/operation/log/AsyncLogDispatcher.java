@@ -0,0 +1,322 @@
+package com.rsicms.rsuite.utils.operation.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Writes log messages on a background thread, such that threads logging through
+ * <code>OperationLogger</code> don't wait on the underlying log's I/O or appender locks.
+ * <p>
+ * Messages are held in a bounded ring buffer, which the background thread drains in batches.
+ * What happens when the buffer is full is determined by the {@link OverflowPolicy}. Messages
+ * logged by one thread are written in the order they were logged.
+ * <p>
+ * One dispatcher may, and generally should, be shared by many loggers.
+ */
+public class AsyncLogDispatcher {
+
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  private static AsyncLogDispatcher defaultDispatcher;
+
+  private final LogEvent[] ring;
+
+  private final int batchSize;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notEmpty = lock.newCondition();
+
+  private final Condition notFull = lock.newCondition();
+
+  private final Condition processed = lock.newCondition();
+
+  /**
+   * Index of the oldest buffered event.
+   */
+  private int head;
+
+  /**
+   * Number of buffered events.
+   */
+  private int size;
+
+  /**
+   * Sequence number of the last event accepted into the buffer. The buffer holds events in the
+   * order of their sequence numbers.
+   */
+  private long acceptedSequence;
+
+  /**
+   * Sequence number of the last event written.
+   */
+  private long writtenSequence;
+
+  /**
+   * Sequence number of the first event of the batch being written; zero when none is.
+   */
+  private long writingSequence;
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  private volatile boolean shutdown;
+
+  private final Thread drainer;
+
+  /**
+   * Get the process-wide dispatcher, creating it on first use with the default capacity and
+   * {@link OverflowPolicy#DROP_DEBUG_FIRST}.
+   * 
+   * @return the default dispatcher
+   */
+  public static synchronized AsyncLogDispatcher getDefault() {
+    if (defaultDispatcher == null) {
+      defaultDispatcher = new AsyncLogDispatcher(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE,
+          OverflowPolicy.DROP_DEBUG_FIRST);
+    }
+    return defaultDispatcher;
+  }
+
+  /**
+   * Construct a dispatcher and start its background thread, which is a daemon.
+   * 
+   * @param capacity The number of messages the buffer holds.
+   * @param batchSize The maximum number of messages written per drain.
+   * @param overflowPolicy
+   */
+  public AsyncLogDispatcher(int capacity, int batchSize, OverflowPolicy overflowPolicy) {
+    if (capacity < 1 || batchSize < 1 || overflowPolicy == null) {
+      throw new IllegalArgumentException();
+    }
+    this.ring = new LogEvent[capacity];
+    this.batchSize = batchSize;
+    this.overflowPolicy = overflowPolicy;
+    this.drainer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "OperationLogger-async");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  /**
+   * @return the overflow policy
+   */
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * @return the number of messages discarded because the buffer was full
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * @return the number of messages waiting to be written
+   */
+  public int getPendingCount() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Queue a message to be written.
+   * 
+   * @param event
+   * @return True if the message was accepted; false if it was discarded.
+   */
+  boolean dispatch(LogEvent event) {
+    lock.lock();
+    try {
+      if (shutdown) {
+        // The drainer has stopped; write synchronously.
+        event.write();
+        return true;
+      }
+      while (size == ring.length) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+          notFull.awaitUninterruptibly();
+          continue;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP_DEBUG_FIRST && event.level > LogEvent.DEBUG
+            && evictOldestDebug()) {
+          break;
+        }
+        droppedCount.incrementAndGet();
+        return false;
+      }
+      event.sequence = ++acceptedSequence;
+      ring[(head + size) % ring.length] = event;
+      size++;
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until all messages accepted before this call have been written or discarded.
+   * 
+   * @param timeout
+   * @param unit
+   * @return True if flushed; false if the timeout elapsed first.
+   * @throws InterruptedException
+   */
+  public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    lock.lock();
+    try {
+      long target = acceptedSequence;
+      while (!isFlushed(target)) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        processed.awaitNanos(remaining);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Write the remaining messages and stop the background thread. Subsequent messages are written
+   * synchronously.
+   * 
+   * @param timeout
+   * @param unit
+   * @throws InterruptedException
+   */
+  public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    flush(timeout, unit);
+    shutdown = true;
+    drainer.interrupt();
+    drainer.join(unit.toMillis(timeout));
+  }
+
+  /**
+   * Must be called while holding the lock.
+   * 
+   * @return True if the events accepted up to the given sequence number were written, or
+   *         discarded.
+   */
+  private boolean isFlushed(long target) {
+    if (writtenSequence >= target) {
+      return true;
+    }
+    // Events are written in sequence order; the rest up to the target were discarded, unless one
+    // is still being written or buffered.
+    long pending = writingSequence > 0 ? writingSequence
+        : (size > 0 ? ring[head].sequence : Long.MAX_VALUE);
+    return pending > target;
+  }
+
+  /**
+   * Must be called while holding the lock and the buffer is full.
+   * 
+   * @return True if a debug message was discarded to make room.
+   */
+  private boolean evictOldestDebug() {
+    for (int i = 0; i < size; i++) {
+      int idx = (head + i) % ring.length;
+      if (ring[idx].level == LogEvent.DEBUG) {
+        // Shift the older events forward by one, overwriting the evicted one.
+        for (int j = i; j > 0; j--) {
+          ring[(head + j) % ring.length] = ring[(head + j - 1) % ring.length];
+        }
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+        droppedCount.incrementAndGet();
+        processed.signalAll();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void drain() {
+    LogEvent[] batch = new LogEvent[batchSize];
+    while (true) {
+      int cnt = 0;
+      long lastSequence;
+      lock.lock();
+      try {
+        while (size == 0) {
+          if (shutdown) {
+            return;
+          }
+          try {
+            notEmpty.await();
+          } catch (InterruptedException e) {
+            if (shutdown && size == 0) {
+              return;
+            }
+          }
+        }
+        cnt = Math.min(size, batchSize);
+        for (int i = 0; i < cnt; i++) {
+          batch[i] = ring[head];
+          ring[head] = null;
+          head = (head + 1) % ring.length;
+        }
+        size -= cnt;
+        writingSequence = batch[0].sequence;
+        lastSequence = batch[cnt - 1].sequence;
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+
+      // Write outside of the lock.
+      for (int i = 0; i < cnt; i++) {
+        try {
+          batch[i].write();
+        } catch (RuntimeException e) {
+          // A failing appender must not stop the drainer.
+        }
+        batch[i] = null;
+      }
+
+      lock.lock();
+      try {
+        writtenSequence = lastSequence;
+        writingSequence = 0;
+        processed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Convenience for loggers: build and dispatch an event.
+   * 
+   * @param log
+   * @param level
+   * @param message
+   * @param t
+   */
+  void dispatch(Log log, int level, Object message, Throwable t) {
+    dispatch(new LogEvent(log, level, message, t));
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.rsicms.rsuite.utils.operation.log;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * A log message waiting to be written by <code>AsyncLogDispatcher</code>.
+ */
+class LogEvent {
+
+  static final int DEBUG = 0;
+  static final int INFO = 1;
+  static final int WARN = 2;
+  static final int ERROR = 3;
+
+  final Log log;
+
+  final int level;
+
+  final Object message;
+
+  final Throwable throwable;
+
+  /**
+   * Assigned by the dispatcher when the event is accepted, in increasing order.
+   */
+  long sequence;
+
+  LogEvent(Log log, int level, Object message, Throwable throwable) {
+    this.log = log;
+    this.level = level;
+    this.message = message;
+    this.throwable = throwable;
+  }
+
+  /**
+   * Write the event to its log.
+   */
+  void write() {
+    switch (level) {
+      case ERROR:
+        log.error(message, throwable);
+        break;
+      case WARN:
+        log.warn(message, throwable);
+        break;
+      case INFO:
+        if (throwable != null) {
+          log.info(message, throwable);
+        } else {
+          log.info(message);
+        }
+        break;
+      default:
+        if (throwable != null) {
+          log.debug(message, throwable);
+        } else {
+          log.debug(message);
+        }
+    }
+  }
+
+}
@@ -0,0 +1,24 @@
+package com.rsicms.rsuite.utils.operation.log;
+
+/**
+ * How an <code>OperationLogger</code> writes messages.
+ */
+public enum LogFormat {
+
+  /**
+   * "[opId] - message", for people.
+   */
+  PLAIN,
+
+  /**
+   * A single line of space-separated key=value pairs; values with spaces, quotes or equal signs
+   * are quoted.
+   */
+  KEY_VALUE,
+
+  /**
+   * A single-line JSON object.
+   */
+  JSON;
+
+}
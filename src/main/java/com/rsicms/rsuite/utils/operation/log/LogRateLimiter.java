@@ -0,0 +1,289 @@
+package com.rsicms.rsuite.utils.operation.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.rsicms.rsuite.utils.operation.aggregate.MessageTemplate;
+
+/**
+ * Limits how often similar messages are logged by an <code>OperationLogger</code>. Messages are
+ * similar when they share a level, label and template (see <code>MessageTemplate</code>).
+ * <p>
+ * For each group of similar messages, the first {@link #setFirstCount(int) K} are logged. After
+ * that, a message is only logged when it's every {@link #setEveryNth(int) Nth} and when no more
+ * than {@link #setMaxPerSecond(int) R} were logged in the current second; either check may be
+ * disabled with zero, and with both disabled nothing more is logged. Suppressed messages are
+ * counted and reported in a "suppressed X similar messages" line, at most once per
+ * {@link #setSummaryIntervalMillis(long) summary interval}, and when the logger is flushed.
+ * <p>
+ * Only logging is limited; operation results still record every message. Thread-safe.
+ */
+public class LogRateLimiter {
+
+  public static final int DEFAULT_FIRST_COUNT = 10;
+
+  public static final int DEFAULT_MAX_PER_SECOND = 1;
+
+  public static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 10000;
+
+  public static final int DEFAULT_MAX_GROUPS = 10000;
+
+  private static final long ONE_SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private volatile int firstCount = DEFAULT_FIRST_COUNT;
+
+  private volatile int everyNth;
+
+  private volatile int maxPerSecond = DEFAULT_MAX_PER_SECOND;
+
+  private volatile long summaryIntervalNanos =
+      TimeUnit.MILLISECONDS.toNanos(DEFAULT_SUMMARY_INTERVAL_MILLIS);
+
+  private volatile boolean groupByTemplate = true;
+
+  private final int maxGroups;
+
+  private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<String, Group>();
+
+  public LogRateLimiter() {
+    this(DEFAULT_MAX_GROUPS);
+  }
+
+  /**
+   * @param maxGroups Once this many groups are tracked, messages that don't belong to one are
+   *        limited as a single group per level.
+   */
+  public LogRateLimiter(int maxGroups) {
+    this.maxGroups = maxGroups;
+  }
+
+  /**
+   * @param firstCount The number of similar messages always logged.
+   */
+  public void setFirstCount(int firstCount) {
+    this.firstCount = firstCount;
+  }
+
+  /**
+   * @param everyNth After the first messages, log only every Nth similar message; zero to disable.
+   */
+  public void setEveryNth(int everyNth) {
+    this.everyNth = everyNth;
+  }
+
+  /**
+   * @param maxPerSecond After the first messages, log at most this many similar messages per
+   *        second; zero to disable.
+   */
+  public void setMaxPerSecond(int maxPerSecond) {
+    this.maxPerSecond = maxPerSecond;
+  }
+
+  /**
+   * @param summaryIntervalMillis The minimum time between summaries of suppressed messages.
+   */
+  public void setSummaryIntervalMillis(long summaryIntervalMillis) {
+    this.summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(summaryIntervalMillis);
+  }
+
+  /**
+   * @param groupByTemplate When false, messages are similar when they share a level and label,
+   *        regardless of their text.
+   */
+  public void setGroupByTemplate(boolean groupByTemplate) {
+    this.groupByTemplate = groupByTemplate;
+  }
+
+  public boolean isGroupByTemplate() {
+    return groupByTemplate;
+  }
+
+  /**
+   * Record an occurrence of a message and decide whether to log it.
+   * 
+   * @param level
+   * @param label May be null.
+   * @param message
+   * @return A decision: bit 0 is set when the message should be logged; the remaining bits hold
+   *         the number of suppressed similar messages to report now, if any.
+   * @see #shouldLog(long)
+   * @see #getSuppressedCountToReport(long)
+   */
+  long acquire(int level, String label, String message) {
+    return acquireTemplate(level, label,
+        groupByTemplate ? MessageTemplate.parse(message).getTemplate() : null);
+  }
+
+  /**
+   * Record an occurrence of a message whose template is already known, such as a parameterized
+   * message's pattern, and decide whether to log it.
+   * 
+   * @param level
+   * @param label May be null.
+   * @param template
+   * @return A decision, as from {@link #acquire(int, String, String)}.
+   */
+  long acquireTemplate(int level, String label, String template) {
+    if (!groupByTemplate) {
+      template = null;
+    }
+    Group group = getOrCreateGroup(level, label, template);
+    long now = System.nanoTime();
+    synchronized (group) {
+      group.count++;
+      boolean log = true;
+      if (group.count > firstCount) {
+        int n = everyNth;
+        int r = maxPerSecond;
+        if (n <= 0 && r <= 0) {
+          log = false;
+        }
+        if (log && n > 0 && (group.count - firstCount) % n != 0) {
+          log = false;
+        }
+        if (log && r > 0) {
+          if (now - group.windowStart >= ONE_SECOND_NANOS) {
+            group.windowStart = now;
+            group.loggedInWindow = 0;
+          }
+          if (group.loggedInWindow >= r) {
+            log = false;
+          }
+        }
+      }
+      if (log) {
+        group.loggedInWindow++;
+      } else {
+        group.suppressed++;
+        group.suppressedTotal++;
+      }
+      long report = 0;
+      if (group.suppressed > 0 && now - group.lastSummary >= summaryIntervalNanos) {
+        report = group.suppressed;
+        group.suppressed = 0;
+        group.lastSummary = now;
+      }
+      return (report << 1) | (log ? 1 : 0);
+    }
+  }
+
+  static boolean shouldLog(long decision) {
+    return (decision & 1) != 0;
+  }
+
+  static long getSuppressedCountToReport(long decision) {
+    return decision >>> 1;
+  }
+
+  /**
+   * Take the summaries of all messages suppressed but not yet reported.
+   * 
+   * @return one summary per group with unreported suppressed messages
+   */
+  List<Summary> drainSummaries() {
+    List<Summary> summaries = new ArrayList<Summary>();
+    long now = System.nanoTime();
+    for (Group group : groups.values()) {
+      synchronized (group) {
+        if (group.suppressed > 0) {
+          summaries.add(new Summary(group.level, group.label, group.template, group.suppressed));
+          group.suppressed = 0;
+          group.lastSummary = now;
+        }
+      }
+    }
+    return summaries;
+  }
+
+  /**
+   * @return the total number of messages suppressed so far, reported or not.
+   */
+  public long getSuppressedCount() {
+    long cnt = 0;
+    for (Group group : groups.values()) {
+      synchronized (group) {
+        cnt += group.suppressedTotal;
+      }
+    }
+    return cnt;
+  }
+
+  private Group getOrCreateGroup(int level, String label, String template) {
+    String key = new StringBuilder().append(level).append('\u0000').append(label).append('\u0000')
+        .append(template).toString();
+    Group group = groups.get(key);
+    if (group == null) {
+      if (groups.size() >= maxGroups) {
+        key = String.valueOf(level);
+        label = null;
+        template = null;
+        group = groups.get(key);
+        if (group != null) {
+          return group;
+        }
+      }
+      Group created = new Group(level, label, template);
+      group = groups.putIfAbsent(key, created);
+      if (group == null) {
+        group = created;
+      }
+    }
+    return group;
+  }
+
+  /**
+   * Similar messages. Guarded by its own monitor.
+   */
+  private static class Group {
+
+    final int level;
+
+    final String label;
+
+    final String template;
+
+    long count;
+
+    long suppressedTotal;
+
+    long suppressed;
+
+    long windowStart = System.nanoTime() - ONE_SECOND_NANOS;
+
+    int loggedInWindow;
+
+    long lastSummary = System.nanoTime();
+
+    Group(int level, String label, String template) {
+      this.level = level;
+      this.label = label;
+      this.template = template;
+    }
+  }
+
+  /**
+   * The number of suppressed messages of one group.
+   */
+  static class Summary {
+
+    final int level;
+
+    final String label;
+
+    final String template;
+
+    final long suppressed;
+
+    Summary(int level, String label, String template, long suppressed) {
+      this.level = level;
+      this.label = label;
+      this.template = template;
+      this.suppressed = suppressed;
+    }
+
+  }
+
+}
@@ -1,14 +1,38 @@
 package com.rsicms.rsuite.utils.operation.log;
 
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageTemplate;
+
 /**
  * Logs operation results in a consistent manner, in order to facilitate grep.
  *
  */
 public class OperationLogger {
 
+  /**
+   * Per-thread buffer for building parameterized messages.
+   */
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(256);
+    }
+  };
+
+  /**
+   * Buffers grown beyond this are not retained.
+   */
+  private static final int MAX_RETAINED_BUFFER_CAPACITY = 8192;
+
   /**
    * The log to write messages to in real-time.
    */
@@ -19,6 +43,41 @@ public class OperationLogger {
    */
   private String opId;
 
+  /**
+   * "[opId] - ", computed when the operation ID is set; null when there is no operation ID.
+   */
+  private String prefix;
+
+  /**
+   * When set, messages are written on the dispatcher's background thread.
+   */
+  private AsyncLogDispatcher dispatcher;
+
+  /**
+   * How messages are written.
+   */
+  private volatile LogFormat format = LogFormat.PLAIN;
+
+  /**
+   * When the operation started, in milliseconds since the epoch; negative when unknown.
+   */
+  private volatile long operationStartMillis = -1;
+
+  /**
+   * Counter increments not yet reported in a structured record. Guarded by itself.
+   */
+  private final Map<String, Integer> counterDeltas = new LinkedHashMap<String, Integer>();
+
+  /**
+   * When set, limits how often similar messages are logged.
+   */
+  private LogRateLimiter rateLimiter;
+
+  /**
+   * Longest {@link #flush()} waits for buffered messages to be written.
+   */
+  private long flushTimeoutMillis = 10000;
+
   /**
    * @param log the Log
    */
@@ -32,7 +91,7 @@ public class OperationLogger {
    */
   public OperationLogger(Log log, String opId) {
     this.log = log;
-    this.opId = opId;
+    setOpId(opId);
   }
 
   public Log getLog() {
@@ -49,6 +108,122 @@ public class OperationLogger {
 
   public void setOpId(String opId) {
     this.opId = opId;
+    this.prefix = StringUtils.isNotBlank(opId)
+        ? new StringBuilder(opId.length() + 5).append("[").append(opId).append("] - ").toString()
+        : null;
+  }
+
+  public AsyncLogDispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  /**
+   * Switch between asynchronous and synchronous logging.
+   * 
+   * @param dispatcher The dispatcher to write messages through, or null to write them
+   *        synchronously.
+   */
+  public void setDispatcher(AsyncLogDispatcher dispatcher) {
+    this.dispatcher = dispatcher;
+  }
+
+  public LogFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * @param format How to write messages. Structured formats write single-line records with the
+   *        operation ID, severity, label, elapsed time, message and counter deltas.
+   */
+  public void setFormat(LogFormat format) {
+    this.format = format == null ? LogFormat.PLAIN : format;
+  }
+
+  /**
+   * @param start When the operation started; null when unknown. Structured records report the
+   *        time elapsed since.
+   */
+  public void setOperationStart(Date start) {
+    this.operationStartMillis = start == null ? -1 : start.getTime();
+  }
+
+  /**
+   * Note a counter increment, to be reported by the next structured record. Does nothing in the
+   * plain format.
+   * 
+   * @param name
+   * @param cnt
+   */
+  public void recordCounterDelta(String name, int cnt) {
+    if (format == LogFormat.PLAIN) {
+      return;
+    }
+    synchronized (counterDeltas) {
+      Integer delta = counterDeltas.get(name);
+      counterDeltas.put(name, delta == null ? cnt : delta + cnt);
+    }
+  }
+
+  public LogRateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  /**
+   * @param rateLimiter The limiter to apply to repetitive messages, or null to log every message.
+   *        May be shared by several loggers.
+   */
+  public void setRateLimiter(LogRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * @param flushTimeoutMillis Longest {@link #flush()} waits for buffered messages to be written.
+   */
+  public void setFlushTimeoutMillis(long flushTimeoutMillis) {
+    this.flushTimeoutMillis = flushTimeoutMillis;
+  }
+
+  /**
+   * When logging asynchronously, wait for the messages logged so far to be written, up to the
+   * flush timeout. Otherwise, does nothing.
+   * 
+   * @return True if all messages logged so far were written or discarded.
+   */
+  public boolean flush() {
+    LogRateLimiter limiter = rateLimiter;
+    if (limiter != null) {
+      for (LogRateLimiter.Summary summary : limiter.drainSummaries()) {
+        if (isEnabled(summary.level)) {
+          writeSummary(summary.level, summary.label, summary.template, summary.suppressed);
+        }
+      }
+    }
+    if (dispatcher != null) {
+      try {
+        return dispatcher.flush(flushTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Logs a message of an operation result at the level matching its type.
+   * 
+   * @param type the message's type; failures are logged as errors, warnings as warnings, info as
+   *        info, and others as debug.
+   * @param label the message's label, used to group similar messages when rate limited. May be
+   *        null.
+   * @param message message to log
+   * @param t Throwable object
+   */
+  public void log(MessageType type, String label, String message, Throwable t) {
+    int level = getLevel(type);
+    if (isEnabled(level) && isAcquired(level, label, message, false)) {
+      emit(level, label, message, t);
+    }
   }
 
   /**
@@ -58,8 +233,50 @@ public class OperationLogger {
    * @param t Exception object
    */
   public void warn(String message, Throwable t) {
-    if (log != null) {
-      log.warn(buildLogMessage(message), t);
+    if (isEnabled(LogEvent.WARN) && isAcquired(LogEvent.WARN, null, message, false)) {
+      emit(LogEvent.WARN, null, message, t);
+    }
+  }
+
+  /**
+   * Logs a warning message built from a pattern, formatting only when warnings are enabled.
+   * 
+   * @param pattern message pattern; "{}" is replaced by the argument.
+   * @param arg argument; a <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void warn(String pattern, Object arg) {
+    if (isEnabled(LogEvent.WARN) && isAcquired(LogEvent.WARN, null, pattern, true)) {
+      write(LogEvent.WARN, pattern, new Object[] {arg});
+    }
+  }
+
+  /**
+   * Logs a warning message built from a pattern, formatting only when warnings are enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2 a <code>Throwable</code> not consumed by the pattern is logged as the message's
+   *        exception.
+   */
+  public void warn(String pattern, Object arg1, Object arg2) {
+    if (isEnabled(LogEvent.WARN) && isAcquired(LogEvent.WARN, null, pattern, true)) {
+      write(LogEvent.WARN, pattern, new Object[] {arg1, arg2});
+    }
+  }
+
+  /**
+   * Logs a warning message built from a pattern, formatting only when warnings are enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2
+   * @param moreArgs a trailing <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void warn(String pattern, Object arg1, Object arg2, Object... moreArgs) {
+    if (isEnabled(LogEvent.WARN) && isAcquired(LogEvent.WARN, null, pattern, true)) {
+      write(LogEvent.WARN, pattern, concat(arg1, arg2, moreArgs));
     }
   }
 
@@ -70,8 +287,50 @@ public class OperationLogger {
    * @param t Exception object
    */
   public void error(String message, Throwable t) {
-    if (log != null) {
-      log.error(buildLogMessage(message), t);
+    if (isEnabled(LogEvent.ERROR) && isAcquired(LogEvent.ERROR, null, message, false)) {
+      emit(LogEvent.ERROR, null, message, t);
+    }
+  }
+
+  /**
+   * Logs an error message built from a pattern, formatting only when errors are enabled.
+   * 
+   * @param pattern message pattern; "{}" is replaced by the argument.
+   * @param arg argument; a <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void error(String pattern, Object arg) {
+    if (isEnabled(LogEvent.ERROR) && isAcquired(LogEvent.ERROR, null, pattern, true)) {
+      write(LogEvent.ERROR, pattern, new Object[] {arg});
+    }
+  }
+
+  /**
+   * Logs an error message built from a pattern, formatting only when errors are enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2 a <code>Throwable</code> not consumed by the pattern is logged as the message's
+   *        exception.
+   */
+  public void error(String pattern, Object arg1, Object arg2) {
+    if (isEnabled(LogEvent.ERROR) && isAcquired(LogEvent.ERROR, null, pattern, true)) {
+      write(LogEvent.ERROR, pattern, new Object[] {arg1, arg2});
+    }
+  }
+
+  /**
+   * Logs an error message built from a pattern, formatting only when errors are enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2
+   * @param moreArgs a trailing <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void error(String pattern, Object arg1, Object arg2, Object... moreArgs) {
+    if (isEnabled(LogEvent.ERROR) && isAcquired(LogEvent.ERROR, null, pattern, true)) {
+      write(LogEvent.ERROR, pattern, concat(arg1, arg2, moreArgs));
     }
   }
 
@@ -82,12 +341,50 @@ public class OperationLogger {
    * @param t Throwable object
    */
   public void info(String message, Throwable t) {
-    if (log != null) {
-      if (t != null) {
-        log.info(buildLogMessage(message), t);
-      } else {
-        log.info(buildLogMessage(message));
-      }
+    if (isEnabled(LogEvent.INFO) && isAcquired(LogEvent.INFO, null, message, false)) {
+      emit(LogEvent.INFO, null, message, t);
+    }
+  }
+
+  /**
+   * Logs an info message built from a pattern, formatting only when info is enabled.
+   * 
+   * @param pattern message pattern; "{}" is replaced by the argument.
+   * @param arg argument; a <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void info(String pattern, Object arg) {
+    if (isEnabled(LogEvent.INFO) && isAcquired(LogEvent.INFO, null, pattern, true)) {
+      write(LogEvent.INFO, pattern, new Object[] {arg});
+    }
+  }
+
+  /**
+   * Logs an info message built from a pattern, formatting only when info is enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2 a <code>Throwable</code> not consumed by the pattern is logged as the message's
+   *        exception.
+   */
+  public void info(String pattern, Object arg1, Object arg2) {
+    if (isEnabled(LogEvent.INFO) && isAcquired(LogEvent.INFO, null, pattern, true)) {
+      write(LogEvent.INFO, pattern, new Object[] {arg1, arg2});
+    }
+  }
+
+  /**
+   * Logs an info message built from a pattern, formatting only when info is enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2
+   * @param moreArgs a trailing <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void info(String pattern, Object arg1, Object arg2, Object... moreArgs) {
+    if (isEnabled(LogEvent.INFO) && isAcquired(LogEvent.INFO, null, pattern, true)) {
+      write(LogEvent.INFO, pattern, concat(arg1, arg2, moreArgs));
     }
   }
 
@@ -98,12 +395,177 @@ public class OperationLogger {
    * @param t Throwable object
    */
   public void debug(String message, Throwable t) {
-    if (log != null && log.isDebugEnabled()) {
-      if (t != null) {
-        log.debug(buildLogMessage(message), t);
-      } else {
-        log.debug(buildLogMessage(message));
+    if (isEnabled(LogEvent.DEBUG) && isAcquired(LogEvent.DEBUG, null, message, false)) {
+      emit(LogEvent.DEBUG, null, message, t);
+    }
+  }
+
+  /**
+   * Logs a debug message built from a pattern, formatting only when debug is enabled.
+   * 
+   * @param pattern message pattern; "{}" is replaced by the argument.
+   * @param arg argument; a <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void debug(String pattern, Object arg) {
+    if (isEnabled(LogEvent.DEBUG) && isAcquired(LogEvent.DEBUG, null, pattern, true)) {
+      write(LogEvent.DEBUG, pattern, new Object[] {arg});
+    }
+  }
+
+  /**
+   * Logs a debug message built from a pattern, formatting only when debug is enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2 a <code>Throwable</code> not consumed by the pattern is logged as the message's
+   *        exception.
+   */
+  public void debug(String pattern, Object arg1, Object arg2) {
+    if (isEnabled(LogEvent.DEBUG) && isAcquired(LogEvent.DEBUG, null, pattern, true)) {
+      write(LogEvent.DEBUG, pattern, new Object[] {arg1, arg2});
+    }
+  }
+
+  /**
+   * Logs a debug message built from a pattern, formatting only when debug is enabled.
+   * 
+   * @param pattern message pattern; each "{}" is replaced by the next argument.
+   * @param arg1
+   * @param arg2
+   * @param moreArgs a trailing <code>Throwable</code> not consumed by the pattern is logged as the
+   *        message's exception.
+   */
+  public void debug(String pattern, Object arg1, Object arg2, Object... moreArgs) {
+    if (isEnabled(LogEvent.DEBUG) && isAcquired(LogEvent.DEBUG, null, pattern, true)) {
+      write(LogEvent.DEBUG, pattern, concat(arg1, arg2, moreArgs));
+    }
+  }
+
+  private boolean isEnabled(int level) {
+    if (log == null) {
+      return false;
+    }
+    switch (level) {
+      case LogEvent.ERROR:
+        return log.isErrorEnabled();
+      case LogEvent.WARN:
+        return log.isWarnEnabled();
+      case LogEvent.INFO:
+        return log.isInfoEnabled();
+      default:
+        return log.isDebugEnabled();
+    }
+  }
+
+  private static int getLevel(MessageType type) {
+    if (type == null) {
+      return LogEvent.DEBUG;
+    }
+    switch (type) {
+      case FAILURE:
+        return LogEvent.ERROR;
+      case WARNING:
+        return LogEvent.WARN;
+      case INFO:
+        return LogEvent.INFO;
+      default:
+        return LogEvent.DEBUG;
+    }
+  }
+
+  /**
+   * Consult the rate limiter, if any, writing a summary of suppressed messages when one is due.
+   * 
+   * @param level
+   * @param label
+   * @param text the message, or a parameterized message's pattern
+   * @param isPattern true when text is a pattern, which is used as is to group similar messages.
+   * @return true when the message should be logged.
+   */
+  private boolean isAcquired(int level, String label, String text, boolean isPattern) {
+    LogRateLimiter limiter = rateLimiter;
+    if (limiter == null) {
+      return true;
+    }
+    long decision = isPattern ? limiter.acquireTemplate(level, label, text)
+        : limiter.acquire(level, label, text);
+    long suppressed = LogRateLimiter.getSuppressedCountToReport(decision);
+    if (suppressed > 0) {
+      String template = null;
+      if (limiter.isGroupByTemplate()) {
+        template = isPattern ? text : MessageTemplate.parse(text).getTemplate();
       }
+      writeSummary(level, label, template, suppressed);
+    }
+    return LogRateLimiter.shouldLog(decision);
+  }
+
+  /**
+   * Write "Suppressed X similar messages" for a group of rate limited messages.
+   */
+  private void writeSummary(int level, String label, String template, long suppressed) {
+    StringBuilder sb = new StringBuilder(128);
+    sb.append("Suppressed ").append(suppressed).append(" similar messages");
+    if (label != null) {
+      sb.append(" labeled '").append(label).append("'");
+    }
+    if (template != null) {
+      sb.append(": ").append(template);
+    }
+    emit(level, label, sb.toString(), null);
+  }
+
+  /**
+   * Format and write a parameterized message.
+   */
+  private void write(int level, String pattern, Object[] args) {
+    if (format == LogFormat.PLAIN) {
+      write(level, buildLogMessage(pattern, args), getThrowable(pattern, args));
+    } else {
+      StringBuilder sb = getBuffer();
+      appendFormatted(sb, pattern, args);
+      Throwable t = getThrowable(pattern, args);
+      emit(level, null, releaseBuffer(sb), t);
+    }
+  }
+
+  /**
+   * Encode and write a message in the current format.
+   * 
+   * @param level
+   * @param label may be null
+   * @param message the message, without the operation ID
+   * @param t may be null
+   */
+  private void emit(int level, String label, String message, Throwable t) {
+    if (format == LogFormat.PLAIN) {
+      write(level, buildLogMessage(message), t);
+    } else {
+      write(level, buildRecord(level, label, message, t), t);
+    }
+  }
+
+  private static Object[] concat(Object arg1, Object arg2, Object[] moreArgs) {
+    int more = moreArgs == null ? 0 : moreArgs.length;
+    Object[] args = new Object[2 + more];
+    args[0] = arg1;
+    args[1] = arg2;
+    if (more > 0) {
+      System.arraycopy(moreArgs, 0, args, 2, more);
+    }
+    return args;
+  }
+
+  /**
+   * Write a built message, either directly or through the dispatcher.
+   */
+  private void write(int level, String message, Throwable t) {
+    LogEvent event = new LogEvent(log, level, message, t);
+    if (dispatcher != null) {
+      dispatcher.dispatch(event);
+    } else {
+      event.write();
     }
   }
 
@@ -114,10 +576,120 @@ public class OperationLogger {
    * @return the log message.
    */
   private String buildLogMessage(String message) {
-    if (StringUtils.isNotBlank(opId)) {
-      return new StringBuilder("[").append(getOpId()).append("] - ").append(message).toString();
+    if (prefix != null) {
+      return prefix.concat(String.valueOf(message));
     }
     return message;
   }
 
+  /**
+   * Builds the log message from a pattern in a reused buffer, prepending the operation Id whenever
+   * applicable.
+   * 
+   * @param pattern
+   * @param args
+   * @return the log message.
+   */
+  private String buildLogMessage(String pattern, Object[] args) {
+    StringBuilder sb = getBuffer();
+    if (prefix != null) {
+      sb.append(prefix);
+    }
+    appendFormatted(sb, pattern, args);
+    return releaseBuffer(sb);
+  }
+
+  /**
+   * Builds a structured record in a reused buffer, reporting and clearing the pending counter
+   * deltas.
+   * 
+   * @param level
+   * @param label
+   * @param message
+   * @param t
+   * @return the record.
+   */
+  private String buildRecord(int level, String label, String message, Throwable t) {
+    Map<String, Integer> deltas = null;
+    synchronized (counterDeltas) {
+      if (!counterDeltas.isEmpty()) {
+        deltas = new LinkedHashMap<String, Integer>(counterDeltas);
+        counterDeltas.clear();
+      }
+    }
+    long start = operationStartMillis;
+    long elapsed = start < 0 ? -1 : System.currentTimeMillis() - start;
+    StringBuilder sb = getBuffer();
+    StructuredLogEncoder.append(sb, format, opId, level, label, elapsed, message, t, deltas);
+    return releaseBuffer(sb);
+  }
+
+  /**
+   * @return this thread's buffer, emptied.
+   */
+  private static StringBuilder getBuffer() {
+    StringBuilder sb = BUFFER.get();
+    sb.setLength(0);
+    return sb;
+  }
+
+  /**
+   * @param sb the buffer from {@link #getBuffer()}
+   * @return the buffer's content; the buffer is dropped when it has grown too large to retain.
+   */
+  private static String releaseBuffer(StringBuilder sb) {
+    String content = sb.toString();
+    if (sb.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+      BUFFER.remove();
+    }
+    return content;
+  }
+
+  /**
+   * Append the pattern to the buffer, replacing each "{}" with the next argument.
+   * 
+   * @param sb
+   * @param pattern
+   * @param args
+   */
+  static void appendFormatted(StringBuilder sb, String pattern, Object[] args) {
+    if (pattern == null) {
+      sb.append((String) null);
+      return;
+    }
+    int argCount = args == null ? 0 : args.length;
+    int argIdx = 0;
+    int copiedTo = 0;
+    int placeholder;
+    while (argIdx < argCount && (placeholder = pattern.indexOf("{}", copiedTo)) >= 0) {
+      sb.append(pattern, copiedTo, placeholder);
+      Object arg = args[argIdx++];
+      if (arg instanceof Object[]) {
+        sb.append(Arrays.deepToString((Object[]) arg));
+      } else {
+        sb.append(arg);
+      }
+      copiedTo = placeholder + 2;
+    }
+    sb.append(pattern, copiedTo, pattern.length());
+  }
+
+  /**
+   * @param pattern
+   * @param args
+   * @return the last argument when it's a throwable not consumed by a placeholder; else null.
+   */
+  static Throwable getThrowable(String pattern, Object[] args) {
+    if (args == null || args.length == 0 || !(args[args.length - 1] instanceof Throwable)) {
+      return null;
+    }
+    int placeholders = 0;
+    if (pattern != null) {
+      for (int i = pattern.indexOf("{}"); i >= 0; i = pattern.indexOf("{}", i + 2)) {
+        placeholders++;
+      }
+    }
+    return placeholders < args.length ? (Throwable) args[args.length - 1] : null;
+  }
+
 }
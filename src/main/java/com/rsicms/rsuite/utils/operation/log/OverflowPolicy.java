@@ -0,0 +1,24 @@
+package com.rsicms.rsuite.utils.operation.log;
+
+/**
+ * What an <code>AsyncLogDispatcher</code> does when its buffer is full.
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Wait for room in the buffer. No message is lost, but the logging thread may wait on log I/O.
+   */
+  BLOCK,
+
+  /**
+   * Make room by discarding the oldest buffered debug message. When there isn't one, the new
+   * message is discarded. Discarded messages are counted.
+   */
+  DROP_DEBUG_FIRST,
+
+  /**
+   * Discard the new message and count it.
+   */
+  COUNT_DROPS;
+
+}
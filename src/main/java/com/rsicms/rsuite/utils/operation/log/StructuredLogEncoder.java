@@ -0,0 +1,179 @@
+package com.rsicms.rsuite.utils.operation.log;
+
+import java.util.Map;
+
+/**
+ * Appends log records in the <code>LogFormat.KEY_VALUE</code> and <code>LogFormat.JSON</code>
+ * formats. Fields are written explicitly, in a fixed order: opId, severity, label, elapsedMs,
+ * msg, exception, then one field per counter delta.
+ */
+final class StructuredLogEncoder {
+
+  private static final String[] SEVERITIES = {"DEBUG", "INFO", "WARN", "ERROR"};
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private StructuredLogEncoder() {}
+
+  /**
+   * @param sb buffer to append to
+   * @param format KEY_VALUE or JSON
+   * @param opId may be null
+   * @param level one of the <code>LogEvent</code> levels
+   * @param label may be null
+   * @param elapsedMillis time since the operation started, or negative when unknown
+   * @param message may be null
+   * @param t may be null
+   * @param counterDeltas counter increments to report; may be null
+   */
+  static void append(StringBuilder sb, LogFormat format, String opId, int level, String label,
+      long elapsedMillis, String message, Throwable t, Map<String, Integer> counterDeltas) {
+    boolean json = format == LogFormat.JSON;
+    if (json) {
+      sb.append('{');
+    }
+    boolean first = true;
+    if (opId != null) {
+      first = appendField(sb, json, first, "opId", opId);
+    }
+    first = appendField(sb, json, first, "severity", SEVERITIES[level]);
+    if (label != null) {
+      first = appendField(sb, json, first, "label", label);
+    }
+    if (elapsedMillis >= 0) {
+      appendName(sb, json, first, "elapsedMs");
+      sb.append(elapsedMillis);
+    }
+    appendField(sb, json, false, "msg", message);
+    if (t != null) {
+      appendField(sb, json, false, "exception", t.getClass().getName());
+    }
+    if (counterDeltas != null && !counterDeltas.isEmpty()) {
+      if (json) {
+        appendName(sb, true, false, "counters");
+        sb.append('{');
+        boolean firstCounter = true;
+        for (Map.Entry<String, Integer> entry : counterDeltas.entrySet()) {
+          appendName(sb, true, firstCounter, entry.getKey());
+          sb.append(entry.getValue());
+          firstCounter = false;
+        }
+        sb.append('}');
+      } else {
+        for (Map.Entry<String, Integer> entry : counterDeltas.entrySet()) {
+          appendName(sb, false, false, "counter." + entry.getKey());
+          sb.append(entry.getValue());
+        }
+      }
+    }
+    if (json) {
+      sb.append('}');
+    }
+  }
+
+  /**
+   * @return false, for the next field's <code>first</code> parameter.
+   */
+  private static boolean appendField(StringBuilder sb, boolean json, boolean first, String name,
+      String value) {
+    appendName(sb, json, first, name);
+    if (json) {
+      appendJsonString(sb, value);
+    } else {
+      appendKeyValueString(sb, value);
+    }
+    return false;
+  }
+
+  private static void appendName(StringBuilder sb, boolean json, boolean first, String name) {
+    if (!first) {
+      sb.append(json ? ',' : ' ');
+    }
+    if (json) {
+      appendJsonString(sb, name);
+      sb.append(':');
+    } else {
+      appendKeyValueName(sb, name);
+      sb.append('=');
+    }
+  }
+
+  static void appendJsonString(StringBuilder sb, String value) {
+    if (value == null) {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            appendUnicodeEscape(sb, c);
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+
+  /**
+   * Values are written as is unless empty or containing whitespace, quotes, equal signs or control
+   * characters, in which case they're quoted and escaped as JSON strings so records stay on one
+   * line.
+   */
+  static void appendKeyValueString(StringBuilder sb, String value) {
+    if (value == null) {
+      sb.append("null");
+      return;
+    }
+    if (value.isEmpty() || needsQuoting(value)) {
+      appendJsonString(sb, value);
+    } else {
+      sb.append(value);
+    }
+  }
+
+  /**
+   * Names (counter names, in particular) have characters that would break parsing replaced by
+   * underscores.
+   */
+  private static void appendKeyValueName(StringBuilder sb, String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      sb.append(c <= ' ' || c == '=' || c == '"' ? '_' : c);
+    }
+  }
+
+  private static boolean needsQuoting(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c <= ' ' || c == '"' || c == '=' || c == '\\') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void appendUnicodeEscape(StringBuilder sb, char c) {
+    sb.append("\\u").append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF])
+        .append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+  }
+
+}
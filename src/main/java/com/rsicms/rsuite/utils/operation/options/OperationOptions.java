@@ -2,10 +2,16 @@ package com.rsicms.rsuite.utils.operation.options;
 
 import org.apache.commons.logging.Log;
 
+import com.rsicms.rsuite.utils.operation.CancellationToken;
+
 public class OperationOptions {
 
   private Log log;
 
+  private CancellationToken cancellationToken;
+
+  private boolean rollbackOnCancellation;
+
   public OperationOptions(Log log) {
     this.log = log;
   }
@@ -22,4 +28,32 @@ public class OperationOptions {
     return (log == null ? defaultLog : log);
   }
 
+  /**
+   * @return the token to check for cancellation, or null.
+   */
+  public CancellationToken getCancellationToken() {
+    return cancellationToken;
+  }
+
+  /**
+   * @param cancellationToken The token operations using these options check for cancellation.
+   */
+  public void setCancellationToken(CancellationToken cancellationToken) {
+    this.cancellationToken = cancellationToken;
+  }
+
+  /**
+   * @return True if the current transaction is to be rolled back when the operation is cancelled.
+   */
+  public boolean isRollbackOnCancellation() {
+    return rollbackOnCancellation;
+  }
+
+  /**
+   * @param rollbackOnCancellation
+   */
+  public void setRollbackOnCancellation(boolean rollbackOnCancellation) {
+    this.rollbackOnCancellation = rollbackOnCancellation;
+  }
+
 }
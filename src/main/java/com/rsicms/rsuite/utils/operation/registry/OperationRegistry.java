@@ -0,0 +1,144 @@
+package com.rsicms.rsuite.utils.operation.registry;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+import com.rsicms.rsuite.utils.operation.status.OperationStatus;
+
+/**
+ * The operations in flight, by operation ID.
+ * <p>
+ * <code>BaseOperationResult</code> registers itself with the default registry when the operation
+ * is marked as started, and unregisters when marked as ended. Results are only weakly referenced,
+ * so a result that is never marked as ended is forgotten once it is garbage collected.
+ * <p>
+ * Queries don't lock and never block the operations; they reflect registrations as of some point
+ * during the query. Results without an operation ID aren't registered.
+ */
+public class OperationRegistry {
+
+  private static final OperationRegistry DEFAULT = new OperationRegistry();
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+  private final ReferenceQueue<OperationResult> collected = new ReferenceQueue<OperationResult>();
+
+  /**
+   * @return The process-wide registry.
+   */
+  public static OperationRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Register an operation, replacing any other registered with the same operation ID.
+   * 
+   * @param result
+   * @return True if registered; false when the result has no operation ID.
+   */
+  public boolean register(OperationResult result) {
+    expungeCollected();
+    String id = result.getOperationId();
+    if (id == null) {
+      return false;
+    }
+    entries.put(id, new Entry(id, result, collected));
+    return true;
+  }
+
+  /**
+   * Unregister an operation. Does nothing when another result is registered with its ID.
+   * 
+   * @param result
+   * @return True if the result was registered.
+   */
+  public boolean unregister(OperationResult result) {
+    expungeCollected();
+    String id = result.getOperationId();
+    if (id == null) {
+      return false;
+    }
+    Entry entry = entries.get(id);
+    return entry != null && entry.get() == result && entries.remove(id, entry);
+  }
+
+  /**
+   * @param operationId
+   * @return The registered operation with the given ID, or null.
+   */
+  public OperationResult get(String operationId) {
+    Entry entry = operationId == null ? null : entries.get(operationId);
+    return entry == null ? null : entry.get();
+  }
+
+  /**
+   * @return The registered operations.
+   */
+  public List<OperationResult> getOperations() {
+    return getOperations((Collection<OperationStatus>) null);
+  }
+
+  /**
+   * @param first
+   * @param rest
+   * @return The registered operations whose status is one of those given.
+   */
+  public List<OperationResult> getOperations(OperationStatus first, OperationStatus... rest) {
+    return getOperations(EnumSet.of(first, rest));
+  }
+
+  /**
+   * @param statuses The statuses to include, or null for all.
+   * @return The registered operations whose status is one of those given.
+   */
+  public List<OperationResult> getOperations(Collection<OperationStatus> statuses) {
+    expungeCollected();
+    List<OperationResult> results = new ArrayList<OperationResult>(entries.size());
+    for (Entry entry : entries.values()) {
+      OperationResult result = entry.get();
+      if (result != null && (statuses == null || statuses.contains(result.getStatus()))) {
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return The number of registered operations, including any collected but not yet forgotten.
+   */
+  public int size() {
+    expungeCollected();
+    return entries.size();
+  }
+
+  /**
+   * Forget the results that were garbage collected.
+   */
+  private void expungeCollected() {
+    Reference<? extends OperationResult> ref;
+    while ((ref = collected.poll()) != null) {
+      Entry entry = (Entry) ref;
+      entries.remove(entry.operationId, entry);
+    }
+  }
+
+  private static class Entry extends WeakReference<OperationResult> {
+
+    final String operationId;
+
+    Entry(String operationId, OperationResult result, ReferenceQueue<OperationResult> queue) {
+      super(result, queue);
+      this.operationId = operationId;
+    }
+
+  }
+
+}
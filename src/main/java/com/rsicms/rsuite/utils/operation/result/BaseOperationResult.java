@@ -1,14 +1,24 @@
 package com.rsicms.rsuite.utils.operation.result;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 
@@ -28,10 +38,22 @@ import com.rsicms.rsuite.helpers.messages.impl.GenericProcessDebugMessage;
 import com.rsicms.rsuite.helpers.messages.impl.GenericProcessFailureMessage;
 import com.rsicms.rsuite.helpers.messages.impl.GenericProcessInfoMessage;
 import com.rsicms.rsuite.helpers.messages.impl.GenericProcessWarningMessage;
-import com.rsicms.rsuite.helpers.messages.impl.ProcessMessageContainerImpl;
+import com.rsicms.rsuite.utils.operation.CancellationToken;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
 import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageAggregator;
+import com.rsicms.rsuite.utils.operation.content.SpillingContent;
 import com.rsicms.rsuite.utils.operation.log.OperationLogger;
+import com.rsicms.rsuite.utils.operation.options.FileRequestOptions;
+import com.rsicms.rsuite.utils.operation.options.OperationOptions;
+import com.rsicms.rsuite.utils.operation.registry.OperationRegistry;
+import com.rsicms.rsuite.utils.operation.status.OperationStatus;
+import com.rsicms.rsuite.utils.operation.visitor.CsvFormattingOperationResultVisitor;
 import com.rsicms.rsuite.utils.operation.visitor.HtmlFormattingOperationResultVisitor;
+import com.rsicms.rsuite.utils.operation.visitor.OperationResultVisitor;
+import com.rsicms.rsuite.utils.operation.visitor.TabularFormat;
+import com.rsicms.rsuite.utils.operation.visitor.XlsxFormattingOperationResultVisitor;
 
 /**
  * Base class for various operations that want to get track of the operation's duration, messages,
@@ -70,9 +92,19 @@ public class BaseOperationResult implements OperationResult {
   private final static String COUNTER_NAME_WORKFLOW_JOBS = "workflowJobs";
 
   /**
-   * The result's message container. Best not for OperationResult to extend this class.
+   * Content type of HTML reports.
    */
-  private ProcessMessageContainerImpl messageContainer;
+  private final static String HTML_REPORT_CONTENT_TYPE = "text/html; charset=UTF-8";
+
+  /**
+   * The result's messages, classified by type as they are added.
+   */
+  private MessageStore messageStore;
+
+  /**
+   * Groups messages as they are added.
+   */
+  private MessageAggregator messageAggregator;
 
   /**
    * The operation ID.
@@ -89,6 +121,21 @@ public class BaseOperationResult implements OperationResult {
    */
   private Date opEnded;
 
+  /**
+   * The operation's status; volatile as other threads list operations by status.
+   */
+  private volatile OperationStatus status = OperationStatus.NONE;
+
+  /**
+   * Checked for cancellation; may be null.
+   */
+  private volatile CancellationToken cancellationToken;
+
+  /**
+   * Expected and completed work.
+   */
+  private final OperationProgress progress = new OperationProgress();
+
   /**
    * A map of stop watches
    */
@@ -139,6 +186,22 @@ public class BaseOperationResult implements OperationResult {
    */
   private String payloadContentType;
 
+  /**
+   * Incremented whenever state that appears in reports changes.
+   */
+  private int modificationCount;
+
+  /**
+   * Compressed HTML reports of the finished operation, indexed by whether messages were
+   * aggregated.
+   */
+  private CompressedReport[] compressedHtmlReports = new CompressedReport[2];
+
+  /**
+   * The report state when the compressed HTML reports were cached.
+   */
+  private long compressedHtmlReportsState;
+
   /**
    * Constructor accepting default message type, object label, an instance of <code>Log</code> and
    * an Operation Id.
@@ -149,14 +212,29 @@ public class BaseOperationResult implements OperationResult {
    *        send null.
    */
   public BaseOperationResult(String id, String defaultLabel, Log log) {
-    this.messageContainer = new ProcessMessageContainerImpl();
+    this(id, defaultLabel, new OperationLogger(log, id));
+  }
+
+  private BaseOperationResult(String id, String defaultLabel, OperationLogger opLogger) {
+    this.messageStore = new MessageStore();
+    this.messageAggregator = new MessageAggregator();
     this.defaultLabel = defaultLabel;
     this.counters = new HashMap<String, Integer>();
     this.transactions = new ArrayList<Transaction>();
-    this.opLogger = new OperationLogger(log);
+    this.opLogger = opLogger;
     this.workflowJobs = new ArrayList<ProcessInstanceSummaryInfo>();
     this.opId = id;
-    this.opLogger.setOpId(id);
+  }
+
+  /**
+   * Create a result to record part of this operation into, such as from another thread, to be
+   * merged back with {@link #mergeSubResult(BaseOperationResult)}. It has this result's operation
+   * ID and logs through this result's logger, which is not to be reconfigured through it.
+   * 
+   * @return a new, empty result
+   */
+  public BaseOperationResult newSubResult() {
+    return new BaseOperationResult(opId, defaultLabel, opLogger);
   }
 
   /*
@@ -190,6 +268,15 @@ public class BaseOperationResult implements OperationResult {
     return this.opLogger.getLog();
   }
 
+  /**
+   * Get the logger this result writes messages through, such as to enable asynchronous logging.
+   * 
+   * @return the operation logger
+   */
+  public OperationLogger getOperationLogger() {
+    return opLogger;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -207,7 +294,9 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void setOperationId(String id) {
+    modificationCount++;
     this.opId = id;
+    this.opLogger.setOpId(id);
   }
 
   /*
@@ -218,6 +307,10 @@ public class BaseOperationResult implements OperationResult {
   @Override
   public void markStartOfOperation() {
     setStartOfOperation(new Date());
+    if (status == OperationStatus.NONE || status == OperationStatus.QUEUED) {
+      status = OperationStatus.IN_PROGRESS;
+    }
+    OperationRegistry.getDefault().register(this);
   }
 
   /*
@@ -228,7 +321,9 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void setStartOfOperation(Date start) {
+    modificationCount++;
     opStarted = start;
+    opLogger.setOperationStart(start);
   }
 
   /*
@@ -249,6 +344,125 @@ public class BaseOperationResult implements OperationResult {
   @Override
   public void markEndOfOperation() {
     setEndOfOperation(new Date());
+    if (status.isOutstanding()) {
+      status = hasFailures() ? OperationStatus.FAILED : OperationStatus.SUCCESSFUL;
+    }
+    OperationRegistry.getDefault().unregister(this);
+    opLogger.flush();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#getStatus()
+   */
+  @Override
+  public OperationStatus getStatus() {
+    return status;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#setStatus(com.rsicms.rsuite.utils.
+   * operation.status.OperationStatus)
+   */
+  @Override
+  public void setStatus(OperationStatus status) {
+    this.status = status == null ? OperationStatus.NONE : status;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#getProgress()
+   */
+  @Override
+  public OperationProgress getProgress() {
+    return progress;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#getCancellationToken()
+   */
+  @Override
+  public CancellationToken getCancellationToken() {
+    return cancellationToken;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#setCancellationToken(com.rsicms.
+   * rsuite.utils.operation.CancellationToken)
+   */
+  @Override
+  public void setCancellationToken(CancellationToken token) {
+    this.cancellationToken = token;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#isCancellationRequested()
+   */
+  @Override
+  public boolean isCancellationRequested() {
+    CancellationToken token = cancellationToken;
+    return token != null && token.isCancellationRequested();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#abortIfCancellationRequested(com.
+   * reallysi.rsuite.api.extensions.ExecutionContext, com.reallysi.rsuite.api.User, boolean)
+   */
+  @Override
+  public boolean abortIfCancellationRequested(ExecutionContext context, User user,
+      boolean rollbackCurrentTransaction) {
+    return abortIfCancellationRequested(context, user, cancellationToken,
+        rollbackCurrentTransaction);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#abortIfCancellationRequested(com.
+   * reallysi.rsuite.api.extensions.ExecutionContext, com.reallysi.rsuite.api.User,
+   * com.rsicms.rsuite.utils.operation.options.OperationOptions)
+   */
+  @Override
+  public boolean abortIfCancellationRequested(ExecutionContext context, User user,
+      OperationOptions options) {
+    if (options == null) {
+      return abortIfCancellationRequested(context, user, false);
+    }
+    CancellationToken token = options.getCancellationToken();
+    if (token == null || !token.isCancellationRequested()) {
+      token = cancellationToken;
+    }
+    return abortIfCancellationRequested(context, user, token,
+        options.isRollbackOnCancellation());
+  }
+
+  private boolean abortIfCancellationRequested(ExecutionContext context, User user,
+      CancellationToken token, boolean rollbackCurrentTransaction) {
+    if (status == OperationStatus.ABORTED) {
+      return true;
+    }
+    if (token == null || !token.isCancellationRequested()) {
+      return false;
+    }
+    status = OperationStatus.ABORTED;
+    addFailure(new RSuiteException(RSuiteException.ERROR_INTERNAL_ERROR,
+        OperationMessageProperties.get("operation.error.aborted", token.getReason())));
+    if (rollbackCurrentTransaction && !transactions.isEmpty()) {
+      rollbackCurrentTransaction(context, user, this);
+    }
+    return true;
   }
 
   /*
@@ -258,6 +472,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void setEndOfOperation(Date start) {
+    modificationCount++;
     opEnded = start;
   }
 
@@ -333,6 +548,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void startTimer(String name) {
+    modificationCount++;
     timers.put(name, new Date());
   }
 
@@ -367,6 +583,26 @@ public class BaseOperationResult implements OperationResult {
     return millis;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#getTimerNames()
+   */
+  @Override
+  public List<String> getTimerNames() {
+    return new ArrayList<String>(timers.keySet());
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#getTimerStart(java.lang.String)
+   */
+  @Override
+  public Date getTimerStart(String name) {
+    return timers.get(name);
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -377,6 +613,7 @@ public class BaseOperationResult implements OperationResult {
   @Override
   public void addWorkflowJob(ProcessInstanceSummaryInfo job) {
     if (job != null) {
+      modificationCount++;
       workflowJobs.add(job);
       incrementWorkflowJobsCount();
     }
@@ -414,11 +651,13 @@ public class BaseOperationResult implements OperationResult {
       t = conditionallyUnwrapThrowable(t);
     }
     String message = t.getMessage();
-    opLogger.error(message, t);
+    opLogger.log(MessageType.FAILURE, label, message, t);
     ProcessFailureMessage msg =
         new GenericProcessFailureMessage(Severity.FAIL.toString(), label, message, t);
     msg.setTimestamp();
-    messageContainer.addFailureMessage(msg);
+    modificationCount++;
+    messageStore.add(msg, MessageType.FAILURE);
+    messageAggregator.add(MessageType.FAILURE, label, message, msg.getTimestamp());
   }
 
   /*
@@ -443,11 +682,13 @@ public class BaseOperationResult implements OperationResult {
       t = conditionallyUnwrapThrowable(t);
     }
     String message = t.getMessage();
-    opLogger.warn(message, t);
+    opLogger.log(MessageType.WARNING, label, message, t);
     ProcessWarningMessage msg =
         new GenericProcessWarningMessage(Severity.WARN.toString(), label, message, t);
     msg.setTimestamp();
-    messageContainer.addWarningMessage(msg);
+    modificationCount++;
+    messageStore.add(msg, MessageType.WARNING);
+    messageAggregator.add(MessageType.WARNING, label, message, msg.getTimestamp());
   }
 
   /*
@@ -493,11 +734,13 @@ public class BaseOperationResult implements OperationResult {
     if (canUnwrapThrowable(t)) {
       t = conditionallyUnwrapThrowable(t);
     }
-    opLogger.info(message, t);
+    opLogger.log(MessageType.INFO, label, message, t);
     ProcessInfoMessage msg =
         new GenericProcessInfoMessage(Severity.INFO.toString(), label, message, t);
     msg.setTimestamp();
-    messageContainer.addInfoMessage(msg);
+    modificationCount++;
+    messageStore.add(msg, MessageType.INFO);
+    messageAggregator.add(MessageType.INFO, label, message, msg.getTimestamp());
   }
 
   /*
@@ -543,11 +786,13 @@ public class BaseOperationResult implements OperationResult {
     if (canUnwrapThrowable(t)) {
       t = conditionallyUnwrapThrowable(t);
     }
-    opLogger.debug(message, t);
+    opLogger.log(MessageType.DEBUG, label, message, t);
     ProcessDebugMessage msg =
         new GenericProcessDebugMessage(Severity.DEBUG.toString(), label, message, t);
     msg.setTimestamp();
-    messageContainer.addDebugMessage(msg);
+    modificationCount++;
+    messageStore.add(msg, MessageType.DEBUG);
+    messageAggregator.add(MessageType.DEBUG, label, message, msg.getTimestamp());
   }
 
   /*
@@ -567,7 +812,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public int getFailureCount() {
-    return getFailureMessages().size();
+    return messageStore.size(MessageType.FAILURE);
   }
 
   /*
@@ -577,7 +822,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public int getWarningCount() {
-    return getWarningMessages().size();
+    return messageStore.size(MessageType.WARNING);
   }
 
   /*
@@ -587,7 +832,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public int getInfoCount() {
-    return getInfoMessages().size();
+    return messageStore.size(MessageType.INFO);
   }
 
   /*
@@ -607,7 +852,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public boolean hasFailures() {
-    return messageContainer.hasFailures();
+    return messageStore.size(MessageType.FAILURE) > 0;
   }
 
   /*
@@ -617,7 +862,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public boolean hasWarnings() {
-    return messageContainer.hasWarnings();
+    return messageStore.size(MessageType.WARNING) > 0;
   }
 
   /*
@@ -627,7 +872,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public List<ProcessFailureMessage> getFailureMessages() {
-    return messageContainer.getFailureMessages();
+    return messageStore.getMessages(MessageType.FAILURE, ProcessFailureMessage.class);
   }
 
   /*
@@ -637,7 +882,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public List<ProcessWarningMessage> getWarningMessages() {
-    return messageContainer.getWarningMessages();
+    return messageStore.getMessages(MessageType.WARNING, ProcessWarningMessage.class);
   }
 
   /*
@@ -647,7 +892,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public List<ProcessInfoMessage> getInfoMessages() {
-    return messageContainer.getInfoMessages();
+    return messageStore.getMessages(MessageType.INFO, ProcessInfoMessage.class);
   }
 
   /*
@@ -657,7 +902,37 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public List<ProcessMessage> getAllMessages() {
-    return messageContainer.getAllMessages();
+    return messageStore.getAllMessages();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.rsicms.rsuite.utils.operation.result.OperationResult#getMessages(com.rsicms.rsuite.utils.
+   * operation.MessageType)
+   */
+  @Override
+  public List<ProcessMessage> getMessages(MessageType type) {
+    return messageStore.getMessages(type);
+  }
+
+  /**
+   * @return the message store, for subclasses that need in-order access to messages and their
+   *         types.
+   */
+  protected MessageStore getMessageStore() {
+    return messageStore;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#getMessageAggregator()
+   */
+  @Override
+  public MessageAggregator getMessageAggregator() {
+    return messageAggregator;
   }
 
   private int getOrInitializeCount(String name) {
@@ -695,8 +970,20 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void incrementCount(String name, int cnt) {
+    incrementCount(name, cnt, true);
+  }
+
+  /**
+   * @param recordDelta False when the increment was already reported to this result's logger,
+   *        such as by a sub-result sharing it.
+   */
+  private void incrementCount(String name, int cnt, boolean recordDelta) {
     if (StringUtils.isNotBlank(name)) {
+      modificationCount++;
       counters.put(name, getOrInitializeCount(name) + cnt);
+      if (recordDelta) {
+        opLogger.recordCounterDelta(name, cnt);
+      }
     }
   }
 
@@ -848,6 +1135,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public int startTransaction() {
+    modificationCount++;
     Transaction t = new Transaction();
     transactions.add(t);
     return transactions.size() - 1;
@@ -874,6 +1162,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void addNewAsset(String moId, String assetName) {
+    modificationCount++;
     getCurrentTransaction().addAsset(moId);
     incrementManagedObjectCreatedCount();
   }
@@ -886,6 +1175,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void addUpdatedAsset(String moId, String assetName) {
+    modificationCount++;
     getCurrentTransaction().addUpdatedAsset(moId, assetName);
     incrementManagedObjectUpdatedCount();
   }
@@ -900,6 +1190,7 @@ public class BaseOperationResult implements OperationResult {
   @Override
   public void rollbackCurrentTransaction(ExecutionContext context, User user,
       OperationResult result) {
+    modificationCount++;
     getCurrentTransaction().rollback(context, user, result);
   }
 
@@ -965,6 +1256,7 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public void setPayload(String payload, String contentType) {
+    modificationCount++;
     this.payload = payload;
     this.payloadContentType = contentType;
   }
@@ -1009,8 +1301,30 @@ public class BaseOperationResult implements OperationResult {
   @Override
   public void addSubResult(BaseOperationResult subResult) {
     if (subResult != null) {
+      modificationCount++;
       // At present we're only bringing over the messages.
-      messageContainer.addAll(subResult.messageContainer);
+      messageStore.addAll(subResult.messageStore);
+      messageAggregator.addAll(subResult.messageAggregator);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.rsicms.rsuite.utils.operation.result.OperationResult#mergeSubResult(com.rsicms.rsuite.utils.
+   * operation.result.BaseOperationResult)
+   */
+  @Override
+  public void mergeSubResult(BaseOperationResult subResult) {
+    if (subResult != null) {
+      addSubResult(subResult);
+      boolean sharedLogger = subResult.opLogger == opLogger;
+      for (Map.Entry<String, Integer> entry : subResult.counters.entrySet()) {
+        incrementCount(entry.getKey(), entry.getValue(), !sharedLogger);
+      }
+      transactions.addAll(subResult.transactions);
+      workflowJobs.addAll(subResult.workflowJobs);
     }
   }
 
@@ -1037,16 +1351,213 @@ public class BaseOperationResult implements OperationResult {
    */
   @Override
   public String getHtmlFormattedMessages() {
+    return getHtmlFormattedMessages(false);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.rsicms.rsuite.utils.operation.result.OperationResult#getHtmlFormattedMessages(boolean)
+   */
+  @Override
+  public String getHtmlFormattedMessages(boolean aggregateMessages) {
     StringWriter stringWriter = new StringWriter();
-    PrintWriter writer = new PrintWriter(stringWriter);
+    writeHtmlFormattedMessages(stringWriter, aggregateMessages);
+    return stringWriter.toString();
+  }
+
+  /**
+   * Render the HTML-formatted report to the given writer, which is flushed but not closed.
+   * 
+   * @param out
+   * @param aggregateMessages When true, the report lists message groups rather than every message.
+   */
+  public void writeHtmlFormattedMessages(Writer out, boolean aggregateMessages) {
+    writeHtmlFormattedMessages(new PrintWriter(out), aggregateMessages);
+  }
+
+  private void writeHtmlFormattedMessages(PrintWriter writer, boolean aggregateMessages) {
     HtmlFormattingOperationResultVisitor visitor = new HtmlFormattingOperationResultVisitor(writer);
+    visitor.setAggregateMessages(aggregateMessages);
     try {
       visitor.visit(this);
     } catch (Exception e) {
       writer.println("Unexpected exception formatting message report: " + e.getMessage());
       e.printStackTrace(writer);
     }
-    return stringWriter.toString();
+    writer.flush();
+  }
+
+  /**
+   * Render the HTML-formatted report directly into a gzip stream written to the given stream,
+   * which is not closed. Use when the report is too large to hold uncompressed.
+   * 
+   * @param out
+   * @param aggregateMessages When true, the report lists message groups rather than every message.
+   * @return the number of uncompressed bytes written.
+   * @throws IOException Thrown if the stream can't be written to, in which case the report is
+   *         incomplete.
+   */
+  public long writeCompressedHtmlReport(OutputStream out, boolean aggregateMessages)
+      throws IOException {
+    CountingOutputStream uncompressed =
+        new CountingOutputStream(new GZIPOutputStream(new CloseShieldOutputStream(out), 8192));
+    PrintWriter writer = new PrintWriter(
+        new BufferedWriter(new OutputStreamWriter(uncompressed, "UTF-8"), 8192));
+    writeHtmlFormattedMessages(writer, aggregateMessages);
+    // The writer reports, rather than throws, a failure to write or close.
+    writer.close();
+    if (writer.checkError()) {
+      throw new IOException(
+          OperationMessageProperties.get("file.result.error.unable.to.write.report", "HTML"));
+    }
+    return uncompressed.getByteCount();
+  }
+
+  /**
+   * Get the HTML-formatted report as gzip-compressed bytes, with its length and encoding.
+   * <p>
+   * Once the operation has ended, the compressed report is cached such that repeated downloads
+   * don't re-render it. The cache is discarded if the result is subsequently modified, including
+   * through the methods of its transactions.
+   * 
+   * @param aggregateMessages When true, the report lists message groups rather than every message.
+   * @return the compressed report.
+   * @throws IOException
+   */
+  public CompressedReport getCompressedHtmlReport(boolean aggregateMessages) throws IOException {
+    int idx = aggregateMessages ? 1 : 0;
+    long stateAtStart = getReportState();
+    if (compressedHtmlReportsState != stateAtStart) {
+      compressedHtmlReports = new CompressedReport[2];
+    }
+    CompressedReport report = compressedHtmlReports[idx];
+    if (report == null) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+      long uncompressedLength = writeCompressedHtmlReport(bytes, aggregateMessages);
+      report = new CompressedReport(bytes.toByteArray(), HTML_REPORT_CONTENT_TYPE,
+          uncompressedLength);
+      if (opEnded != null && stateAtStart == getReportState()) {
+        compressedHtmlReports[idx] = report;
+        compressedHtmlReportsState = stateAtStart;
+      }
+    }
+    return report;
+  }
+
+  /**
+   * Get a count of the changes to state appearing in reports, which only ever grows. Transactions
+   * are mutable, and may be changed without this result knowing, so their own counts are included.
+   * 
+   * @return the state.
+   */
+  private long getReportState() {
+    long state = modificationCount;
+    for (Transaction t : transactions) {
+      state += t.getModificationCount();
+    }
+    return state;
+  }
+
+  /**
+   * Export the counters, timers, transactions and messages as a table, for download. Rows are
+   * streamed into the content, which is moved to a temporary file once large, so the export
+   * doesn't hold a copy of the messages in memory.
+   * 
+   * @param format
+   * @param options Gives the suggested file name and, for a workbook, the sheet name. OK to send
+   *        null for defaults.
+   * @param aggregateMessages When true, there's a row per message group rather than per message.
+   * @return a result offering the export for download; close it once served.
+   * @throws IOException Thrown if the export can't be written.
+   */
+  public FileOperationResult getTabularReport(TabularFormat format, FileRequestOptions options,
+      boolean aggregateMessages) throws IOException {
+    String fileName = options == null ? null : options.getSuggestedFileName();
+    if (StringUtils.isBlank(fileName)) {
+      fileName = StringUtils.isEmpty(getOperationId()) ? "operation-result" : getOperationId();
+    }
+    if (!fileName.toLowerCase().endsWith(format.getFileExtension())) {
+      fileName = fileName + format.getFileExtension();
+    }
+
+    SpillingContent content = new SpillingContent();
+    boolean written = false;
+    try {
+      OutputStream out = content.getOutputStream();
+      boolean error;
+      if (format == TabularFormat.XLSX) {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 8192);
+        XlsxFormattingOperationResultVisitor visitor = new XlsxFormattingOperationResultVisitor(
+            buffered, options == null ? null : options.getTabName());
+        visitor.setAggregateMessages(aggregateMessages);
+        visitor.visit(this);
+        error = visitor.checkError();
+        buffered.flush();
+      } else {
+        PrintWriter writer = new PrintWriter(
+            new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 8192));
+        CsvFormattingOperationResultVisitor visitor =
+            new CsvFormattingOperationResultVisitor(writer);
+        visitor.setAggregateMessages(aggregateMessages);
+        visitor.visit(this);
+        error = writer.checkError();
+      }
+      out.close();
+      if (error) {
+        throw new IOException(OperationMessageProperties
+            .get("file.result.error.unable.to.write.report", format.name()));
+      }
+      written = true;
+    } finally {
+      if (!written) {
+        content.close();
+      }
+    }
+
+    FileOperationResult fileResult =
+        new FileOperationResult(getOperationId(), getDefaultLabel(), getLog());
+    fileResult.prepareFileForDownload(content, format.getContentType(), fileName);
+    return fileResult;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.rsicms.rsuite.utils.operation.result.OperationResult#accept(com.rsicms.rsuite.utils.
+   * operation.visitor.OperationResultVisitor)
+   */
+  @Override
+  public void accept(OperationResultVisitor visitor) {
+    accept(visitor, false);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.rsicms.rsuite.utils.operation.result.OperationResult#accept(com.rsicms.rsuite.utils.
+   * operation.visitor.OperationResultVisitor, boolean)
+   */
+  @Override
+  public void accept(OperationResultVisitor visitor, boolean aggregateMessages) {
+    visitor.visitStart(this);
+    visitor.visitOverview(this);
+    visitor.visitCounters(this, getCounterNames());
+    visitor.visitTimers(this, getTimerNames());
+    visitor.visitTransactions(this, getTransactions());
+    if (aggregateMessages) {
+      visitor.visitMessageGroups(this, messageAggregator.getGroupsByCount());
+    } else {
+      visitor.startMessages(this);
+      int cnt = messageStore.size();
+      for (int i = 0; i < cnt; i++) {
+        visitor.visitMessage(messageStore.get(i), messageStore.getType(i));
+      }
+      visitor.endMessages(this);
+    }
+    visitor.visitEnd(this);
   }
 
   /*
@@ -0,0 +1,82 @@
+package com.rsicms.rsuite.utils.operation.result;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A report rendered directly into gzip-compressed bytes, along with what's needed to deliver it:
+ * the content length, content encoding, and the content type of the uncompressed report.
+ * 
+ * @see BaseOperationResult#getCompressedHtmlReport(boolean)
+ */
+public class CompressedReport {
+
+  /**
+   * The content encoding of all compressed reports.
+   */
+  public static final String CONTENT_ENCODING = "gzip";
+
+  /**
+   * The content type to use when the report is delivered as a file, rather than with a
+   * <code>Content-Encoding</code> header.
+   */
+  public static final String GZIP_CONTENT_TYPE = "application/gzip";
+
+  private final byte[] content;
+
+  private final String contentType;
+
+  private final long uncompressedLength;
+
+  CompressedReport(byte[] content, String contentType, long uncompressedLength) {
+    this.content = content;
+    this.contentType = contentType;
+    this.uncompressedLength = uncompressedLength;
+  }
+
+  /**
+   * @return the compressed bytes. Not copied; do not modify.
+   */
+  public byte[] getContent() {
+    return content;
+  }
+
+  /**
+   * @return the length of the compressed content, in bytes.
+   */
+  public int getContentLength() {
+    return content.length;
+  }
+
+  /**
+   * @return the length of the uncompressed report, in bytes.
+   */
+  public long getUncompressedLength() {
+    return uncompressedLength;
+  }
+
+  /**
+   * @return {@value #CONTENT_ENCODING}
+   */
+  public String getContentEncoding() {
+    return CONTENT_ENCODING;
+  }
+
+  /**
+   * @return the content type of the uncompressed report.
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Write the compressed bytes to the given stream, which is not closed.
+   * 
+   * @param out
+   * @throws IOException
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(content);
+  }
+
+}
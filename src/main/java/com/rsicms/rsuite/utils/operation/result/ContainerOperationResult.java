@@ -1,34 +1,155 @@
 package com.rsicms.rsuite.utils.operation.result;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+
 import org.apache.commons.logging.Log;
 
 import com.reallysi.rsuite.api.ContentAssemblyNodeContainer;
+import com.reallysi.rsuite.api.RSuiteException;
+import com.reallysi.rsuite.api.User;
+import com.reallysi.rsuite.api.extensions.ExecutionContext;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.container.ContainerCache;
 
 /**
  * A container operation result.
+ * <p>
+ * A container set on the result is held as is. When the result was given an execution context
+ * and user, by {@link #setResolutionContext(ExecutionContext, User)}, the container is only
+ * softly referenced, and resolved anew once dropped; so is a container given by ID alone. Results
+ * are thereby cheap to retain and pass around. Resolution may go through a
+ * <code>ContainerCache</code>, when the result is given one.
  */
 public class ContainerOperationResult extends BaseOperationResult {
 
+  private String containerId;
+
+  /**
+   * The container set on the result, when it can't be resolved again.
+   */
   private ContentAssemblyNodeContainer container;
 
+  private Reference<ContentAssemblyNodeContainer> containerRef;
+
+  private ExecutionContext context;
+
+  private User user;
+
+  private ContainerCache containerCache;
+
   public ContainerOperationResult(String opId, String defaultLabel, Log log) {
     super(opId, defaultLabel, log);
   }
 
   /**
-   * @return the container
+   * @return the container, or null when there is none, or it can't be resolved.
+   * @see #resolveContainer()
    */
   public ContentAssemblyNodeContainer getContainer() {
-    return container;
+    try {
+      return resolveContainer();
+    } catch (RSuiteException e) {
+      return null;
+    }
   }
 
   /**
-   * @param container the container to set
+   * Get the container, resolving it when need be.
+   * 
+   * @return the container, or null when there is none.
+   * @throws RSuiteException Thrown if the container can't be retrieved, or there's no execution
+   *         context to retrieve it with.
+   */
+  public ContentAssemblyNodeContainer resolveContainer() throws RSuiteException {
+    if (container != null) {
+      return container;
+    }
+    if (containerId == null) {
+      return null;
+    }
+    ContentAssemblyNodeContainer resolved = containerRef == null ? null : containerRef.get();
+    if (resolved != null) {
+      return resolved;
+    }
+    if (context == null) {
+      throw new RSuiteException(RSuiteException.ERROR_INTERNAL_ERROR, OperationMessageProperties
+          .get("container.result.error.no.resolution.context", containerId));
+    }
+    resolved = containerCache != null ? containerCache.get(context, user, containerId)
+        : context.getContentAssemblyService().getContentAssemblyNodeContainer(user, containerId);
+    if (resolved != null) {
+      containerRef = new SoftReference<ContentAssemblyNodeContainer>(resolved);
+    }
+    return resolved;
+  }
+
+  /**
+   * @param container the container to set. It's held as is unless the result has an execution
+   *        context to resolve it again with.
    */
   public void setContainer(ContentAssemblyNodeContainer container) {
-    this.container = container;
+    if (container == null) {
+      this.containerId = null;
+      this.container = null;
+      this.containerRef = null;
+      return;
+    }
+    this.containerId = container.getId();
+    if (context == null) {
+      this.container = container;
+      this.containerRef = null;
+    } else {
+      this.container = null;
+      this.containerRef = new SoftReference<ContentAssemblyNodeContainer>(container);
+    }
+  }
+
+  /**
+   * @return the container's ID, which doesn't require resolving the container.
+   */
+  public String getContainerId() {
+    return containerId;
+  }
+
+  /**
+   * @param containerId the ID of the container, to be resolved when needed.
+   */
+  public void setContainerId(String containerId) {
+    this.containerId = containerId;
+    this.container = null;
+    this.containerRef = null;
   }
 
+  /**
+   * @param context The execution context to resolve the container with.
+   * @param user The user to resolve the container as.
+   */
+  public void setResolutionContext(ExecutionContext context, User user) {
+    this.context = context;
+    this.user = user;
+  }
 
+  /**
+   * @param containerCache The cache to resolve the container through, such as the process-wide
+   *        one; null, the default, for none.
+   */
+  public void setContainerCache(ContainerCache containerCache) {
+    this.containerCache = containerCache;
+  }
+
+  /**
+   * Drop the resolved container, and the cache's, such as once this operation has changed it, so
+   * that it is resolved anew. A container that can't be resolved again is kept.
+   */
+  public void invalidateContainer() {
+    if (context != null) {
+      container = null;
+    }
+    containerRef = null;
+    if (containerId != null && containerCache != null) {
+      containerCache.invalidate(containerId);
+    }
+  }
 
 }
@@ -0,0 +1,258 @@
+package com.rsicms.rsuite.utils.operation.result;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.content.ByteRange;
+import com.rsicms.rsuite.utils.operation.content.DownloadableContent;
+
+/**
+ * The HTTP response delivering a download result's content, honoring a byte-range request so that
+ * an interrupted client can resume where it stopped. The status and headers are worked out when
+ * created; the caller sets them on its response and then writes the body.
+ * <p>
+ * Ranges are only offered and served when the content has an entity tag, by which a client
+ * resuming a download can tell whether the content changed meanwhile; content without one, such
+ * as an export generated anew for each request, is always served whole. A single range is served
+ * as 206 Partial Content. A request for several ranges that don't merge into one is served the
+ * whole content, as HTTP permits. A range is only served if the request's <code>If-Range</code>,
+ * when present, matches the entity tag; otherwise the content changed, and the whole of it is
+ * served.
+ * <p>
+ * The body is written in chunks, flushing after each, so that it's streamed to the client rather
+ * than buffered; when the content's length is unknown, no <code>Content-Length</code> is set and
+ * the container is to use chunked transfer encoding.
+ */
+public class DownloadResponse {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  public static final int SC_OK = 200;
+
+  public static final int SC_PARTIAL_CONTENT = 206;
+
+  public static final int SC_RANGE_NOT_SATISFIABLE = 416;
+
+  public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+  private final DownloadableContent content;
+
+  private final int status;
+
+  private final ByteRange range;
+
+  /**
+   * The length of the content when the headers were worked out, or -1 if unknown.
+   */
+  private final long length;
+
+  private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  /**
+   * @param content
+   * @param contentType May be null.
+   * @param contentEncoding May be null.
+   * @param suggestedFileName May be null.
+   * @param entityTag The content's strong entity tag, quoted; null when it has none, in which case
+   *        ranges aren't served.
+   * @param rangeHeader The request's <code>Range</code> header; may be null.
+   * @param ifRangeHeader The request's <code>If-Range</code> header; may be null.
+   */
+  public DownloadResponse(DownloadableContent content, String contentType,
+      String contentEncoding, String suggestedFileName, String entityTag, String rangeHeader,
+      String ifRangeHeader) {
+    this.content = content;
+    this.length = content.getLength();
+    boolean rangesAccepted = entityTag != null && length >= 0;
+    List<ByteRange> ranges = null;
+    if (rangesAccepted
+        && (ifRangeHeader == null || entityTag.equals(ifRangeHeader.trim()))) {
+      ranges = ByteRange.parse(rangeHeader, length);
+    }
+    if (ranges != null && ranges.isEmpty()) {
+      status = SC_RANGE_NOT_SATISFIABLE;
+      range = null;
+      headers.put("Content-Range", "bytes */" + length);
+      headers.put("Content-Length", "0");
+      return;
+    }
+    if (ranges != null && ranges.size() == 1) {
+      status = SC_PARTIAL_CONTENT;
+      range = ranges.get(0);
+    } else {
+      status = SC_OK;
+      range = null;
+    }
+    if (contentType != null) {
+      headers.put("Content-Type", contentType);
+    }
+    if (contentEncoding != null) {
+      headers.put("Content-Encoding", contentEncoding);
+    }
+    if (suggestedFileName != null) {
+      headers.put("Content-Disposition", toContentDisposition(suggestedFileName));
+    }
+    if (entityTag != null) {
+      headers.put("ETag", entityTag);
+    }
+    if (rangesAccepted) {
+      headers.put("Accept-Ranges", "bytes");
+    }
+    if (range != null) {
+      headers.put("Content-Range", range.toContentRange(length));
+      headers.put("Content-Length", String.valueOf(range.getLength()));
+    } else if (length >= 0) {
+      headers.put("Content-Length", String.valueOf(length));
+    }
+  }
+
+  /**
+   * Work out a <code>Content-Disposition</code> header for an attachment, per RFC 6266: the name
+   * without control characters, both as a quoted ASCII fallback and, per RFC 5987, in UTF-8.
+   * 
+   * @param fileName
+   * @return the header value.
+   */
+  static String toContentDisposition(String fileName) {
+    StringBuilder cleaned = new StringBuilder(fileName.length());
+    StringBuilder ascii = new StringBuilder(fileName.length());
+    for (int i = 0; i < fileName.length(); i++) {
+      char c = fileName.charAt(i);
+      if (Character.isISOControl(c)) {
+        continue;
+      }
+      cleaned.append(c);
+      if (c == '"' || c == '\\') {
+        ascii.append('\\').append(c);
+      } else if (c < 0x80) {
+        ascii.append(c);
+      } else if (!Character.isLowSurrogate(c)) {
+        ascii.append('_');
+      }
+    }
+    StringBuilder header = new StringBuilder("attachment; filename=\"").append(ascii).append('"');
+    byte[] bytes = cleaned.toString().getBytes(UTF_8);
+    if (bytes.length != cleaned.length()) {
+      header.append("; filename*=UTF-8''");
+      for (byte b : bytes) {
+        int c = b & 0xFF;
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+            || "!#$&+-.^_`|~".indexOf(c) >= 0) {
+          header.append((char) c);
+        } else {
+          header.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+              .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+        }
+      }
+    }
+    return header.toString();
+  }
+
+  /**
+   * @param chunkSize The number of bytes written between flushes.
+   */
+  public void setChunkSize(int chunkSize) {
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * @return the HTTP status: 200, 206 or 416.
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * @return the response headers, by name.
+   */
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+
+  /**
+   * @return the range served, or null when the whole content is, or none.
+   */
+  public ByteRange getRange() {
+    return range;
+  }
+
+  /**
+   * @return the number of bytes in the body, or -1 if unknown.
+   */
+  public long getBodyLength() {
+    if (status == SC_RANGE_NOT_SATISFIABLE) {
+      return 0;
+    }
+    return range != null ? range.getLength() : length;
+  }
+
+  /**
+   * Write the body to the given stream, flushing after each chunk.
+   * 
+   * @param out Left open.
+   * @throws IOException
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (status == SC_RANGE_NOT_SATISFIABLE) {
+      return;
+    }
+    WritableByteChannel target = Channels.newChannel(out);
+    long bodyLength = getBodyLength();
+    long position = range != null ? range.getFirst() : 0;
+    long remaining = bodyLength >= 0 ? bodyLength : Long.MAX_VALUE;
+    while (remaining > 0) {
+      long written = content.transferTo(position, Math.min(chunkSize, remaining), target);
+      if (written <= 0) {
+        if (bodyLength >= 0) {
+          throw truncated(remaining);
+        }
+        break;
+      }
+      out.flush();
+      position += written;
+      remaining -= written;
+    }
+  }
+
+  /**
+   * Deliver the body to a channel, such as a response's. Content held in a file is sent with
+   * <code>FileChannel.transferTo</code>.
+   * 
+   * @param target Left open.
+   * @throws IOException
+   */
+  public void transferTo(WritableByteChannel target) throws IOException {
+    if (status == SC_RANGE_NOT_SATISFIABLE) {
+      return;
+    }
+    long bodyLength = getBodyLength();
+    if (bodyLength < 0) {
+      content.transferTo(target);
+      return;
+    }
+    long transferred =
+        content.transferTo(range != null ? range.getFirst() : 0, bodyLength, target);
+    if (transferred < bodyLength) {
+      throw truncated(bodyLength - transferred);
+    }
+  }
+
+  /**
+   * @return the exception for content shorter than the <code>Content-Length</code> already sent,
+   *         so that the response isn't taken to be complete.
+   */
+  private static IOException truncated(long missing) {
+    return new IOException(OperationMessageProperties.get("content.error.truncated", missing));
+  }
+
+}
@@ -1,19 +1,41 @@
 package com.rsicms.rsuite.utils.operation.result;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 
+import com.reallysi.rsuite.api.RSuiteException;
 import com.reallysi.rsuite.api.remoteapi.RemoteApiResult;
 import com.reallysi.rsuite.api.remoteapi.result.ByteSequenceResult;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.content.ArtifactGenerator;
+import com.rsicms.rsuite.utils.operation.content.ByteArrayContent;
+import com.rsicms.rsuite.utils.operation.content.DownloadArtifactCache;
+import com.rsicms.rsuite.utils.operation.content.DownloadableContent;
+import com.rsicms.rsuite.utils.operation.content.FileContent;
+import com.rsicms.rsuite.utils.operation.content.SpillingContent;
 
-public class FileOperationResult extends BaseOperationResult {
+/**
+ * An operation result that offers a file for download.
+ * <p>
+ * Content may be held in memory, in a temporary file when large, or in a file that already exists.
+ * Close the result once the file was served to release the content deterministically.
+ */
+public class FileOperationResult extends BaseOperationResult implements Closeable {
 
-  private byte[] content;
+  private DownloadableContent content;
+  private int spillThreshold = SpillingContent.DEFAULT_THRESHOLD;
+  private File tempDirectory;
   private String contentType;
   private String suggestedFileName;
+  private String entityTag;
 
   /**
    * Constructor accepting default message type, object label and instance of <code>Log</code>
@@ -28,7 +50,24 @@ public class FileOperationResult extends BaseOperationResult {
   }
 
   /**
-   * Pass in everything that {@link #getFileForDownload()} will need.
+   * @param spillThreshold Streamed content larger than this many bytes is held in a temporary file
+   *        rather than in memory.
+   */
+  public void setSpillThreshold(int spillThreshold) {
+    this.spillThreshold = spillThreshold;
+  }
+
+  /**
+   * @param tempDirectory Where to create temporary files; null for the system default.
+   */
+  public void setTempDirectory(File tempDirectory) {
+    this.tempDirectory = tempDirectory;
+  }
+
+  /**
+   * Pass in everything that {@link #getFileForDownload()} will need. The stream is read now, and
+   * not closed. Content larger than the spill threshold is copied to a temporary file, so it does
+   * not occupy the heap.
    * 
    * @param content
    * @param contentType
@@ -37,12 +76,8 @@ public class FileOperationResult extends BaseOperationResult {
    */
   public void prepareFileForDownload(InputStream content, String contentType,
       String suggestedFileName) throws IOException {
-    /*
-     * IDEA: Stick with input stream such that we don't limit the response size to the JVM's maximum
-     * array size. If RCS-4127 hasn't resulted in streaming support by the time we need this, see if
-     * a streaming RemoteApiResult would be correctly handled by RSuite's REST API.
-     */
-    prepareFileForDownload(IOUtils.toByteArray(content), contentType, suggestedFileName);
+    prepareFileForDownload(SpillingContent.copyOf(content, spillThreshold, tempDirectory),
+        contentType, suggestedFileName);
   }
 
   /**
@@ -53,22 +88,224 @@ public class FileOperationResult extends BaseOperationResult {
    * @param suggestedFileName
    */
   public void prepareFileForDownload(byte[] content, String contentType, String suggestedFileName) {
+    prepareFileForDownload(new ByteArrayContent(content), contentType, suggestedFileName);
+  }
+
+  /**
+   * Pass in a file that already exists for download. The file is not read into memory, and is left
+   * in place when this result is closed. The file's size and time of last modification serve as
+   * its entity tag, so that downloads of it may be resumed.
+   * 
+   * @param file
+   * @param contentType
+   * @param suggestedFileName
+   * @see #transferContentTo(WritableByteChannel)
+   */
+  public void prepareFileForDownload(Path file, String contentType, String suggestedFileName) {
+    prepareFileForDownload(new FileContent(file), contentType, suggestedFileName);
+    try {
+      this.entityTag = "\"" + Long.toHexString(Files.size(file)) + "-"
+          + Long.toHexString(Files.getLastModifiedTime(file).toMillis()) + "\"";
+    } catch (IOException e) {
+      // Without an entity tag, the file is served whole.
+      this.entityTag = null;
+    }
+  }
+
+  /**
+   * Pass in everything that {@link #getFileForDownload()} will need. This result takes ownership
+   * of the content, and closes it when closed or given other content.
+   * 
+   * @param content
+   * @param contentType
+   * @param suggestedFileName
+   */
+  public void prepareFileForDownload(DownloadableContent content, String contentType,
+      String suggestedFileName) {
+    if (this.content != null && this.content != content) {
+      releaseContent();
+    }
     this.content = content;
     this.contentType = contentType;
     this.suggestedFileName = suggestedFileName;
+    this.entityTag = null;
+  }
+
+  /**
+   * Prepare a cached artifact for download, generating and caching it on a miss. The hit or miss is
+   * counted on this result.
+   * 
+   * @param cache
+   * @param contentKey Identifies everything the artifact depends on, such as MO IDs, versions and
+   *        options.
+   * @param generator Generates the artifact on a miss.
+   * @param contentType
+   * @param suggestedFileName
+   * @throws IOException
+   * @throws RSuiteException Thrown by the generator.
+   */
+  public void prepareFileForDownload(DownloadArtifactCache cache, String contentKey,
+      ArtifactGenerator generator, String contentType, String suggestedFileName)
+      throws IOException, RSuiteException {
+    FileContent artifact = cache.get(contentKey, generator, this);
+    prepareFileForDownload(artifact, contentType, suggestedFileName);
+    // Each artifact's file name is unique, so it identifies the content for resumed downloads.
+    this.entityTag = "\"" + artifact.getPath().getFileName() + "\"";
+  }
+
+  /**
+   * Prepare a compressed report for download, as a gzip file: its content type is
+   * {@value CompressedReport#GZIP_CONTENT_TYPE}, and it's not given a content encoding, so that
+   * clients save it compressed. The compressed bytes are used as is; they are not decompressed or
+   * copied.
+   * <p>
+   * Callers writing the response themselves may instead serve the report's bytes with its own
+   * content type and a <code>Content-Encoding</code> of
+   * {@link CompressedReport#getContentEncoding()}.
+   * 
+   * @param report
+   * @param suggestedFileName The ".gz" extension is appended when not already present.
+   */
+  public void prepareFileForDownload(CompressedReport report, String suggestedFileName) {
+    if (suggestedFileName != null && !suggestedFileName.endsWith(".gz")) {
+      suggestedFileName = suggestedFileName + ".gz";
+    }
+    prepareFileForDownload(report.getContent(), CompressedReport.GZIP_CONTENT_TYPE,
+        suggestedFileName);
+  }
+
+  /**
+   * @return the length of the content to download, in bytes, or -1 when there isn't any.
+   */
+  public long getContentLength() {
+    return content == null ? -1 : content.getLength();
+  }
+
+  /**
+   * @return the strong entity tag of the content to download, quoted, or null when it has none.
+   */
+  public String getEntityTag() {
+    return entityTag;
+  }
+
+  /**
+   * @param entityTag A quoted strong entity tag that changes whenever the content does, such as a
+   *        digest of it; allows downloads to be resumed. Without one, content is served whole.
+   */
+  public void setEntityTag(String entityTag) {
+    this.entityTag = entityTag;
+  }
+
+  /**
+   * @return the content to download, or null.
+   */
+  public DownloadableContent getContent() {
+    return content;
+  }
+
+  /**
+   * @return the content type of the content to download.
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * @return the suggested file name of the content to download.
+   */
+  public String getSuggestedFileName() {
+    return suggestedFileName;
+  }
+
+  /**
+   * Stream the content to download, without holding it in memory. Callers able to write the
+   * response themselves should prefer this to {@link #getFileForDownload()}.
+   * 
+   * @param out Left open.
+   * @throws IOException
+   */
+  public void writeContentTo(OutputStream out) throws IOException {
+    if (content != null) {
+      content.writeTo(out);
+    }
+  }
+
+  /**
+   * Deliver the content to download to a channel, such as a response's. Content held in a file is
+   * sent with <code>FileChannel.transferTo</code>, costing no heap.
+   * 
+   * @param target Left open.
+   * @throws IOException
+   */
+  public void transferContentTo(WritableByteChannel target) throws IOException {
+    if (content != null) {
+      content.transferTo(target);
+    }
+  }
+
+  /**
+   * Work out the response delivering the content to download, serving only the requested range of
+   * bytes when a client resumes an interrupted download. Callers able to write the response
+   * themselves should prefer this to {@link #getFileForDownload()}.
+   * 
+   * @param rangeHeader The request's <code>Range</code> header; may be null.
+   * @param ifRangeHeader The request's <code>If-Range</code> header; may be null.
+   * @return the response, whose content remains owned by this result.
+   * @throws IllegalStateException Thrown if there's no content to download.
+   */
+  public DownloadResponse newDownloadResponse(String rangeHeader, String ifRangeHeader) {
+    if (content == null) {
+      throw new IllegalStateException(
+          OperationMessageProperties.get("file.result.error.no.content"));
+    }
+    return new DownloadResponse(content, contentType, null, suggestedFileName,
+        entityTag, rangeHeader, ifRangeHeader);
   }
 
   /**
    * Get the file to download.
+   * <p>
+   * As <code>ByteSequenceResult</code> only accepts a byte array, content held in a temporary file
+   * is read into memory here. For large content, prefer {@link #writeContentTo(OutputStream)}.
    * 
    * @return file to download.
+   * @throws IllegalStateException Thrown if content held in a temporary file can't be read.
    */
   public RemoteApiResult getFileForDownload() {
     ByteSequenceResult resultFile = new ByteSequenceResult();
-    resultFile.setContent(content);
+    try {
+      resultFile.setContent(content == null ? null : content.toByteArray());
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          OperationMessageProperties.get("file.result.error.unable.to.read.content"), e);
+    }
     resultFile.setContentType(contentType);
     resultFile.setSuggestedFileName(suggestedFileName);
     return resultFile;
   }
 
+  /**
+   * Release the content to download, deleting any temporary file.
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (content != null) {
+      DownloadableContent released = content;
+      content = null;
+      released.close();
+    }
+  }
+
+  private void releaseContent() {
+    try {
+      close();
+    } catch (IOException e) {
+      getOperationLogger().warn(
+          OperationMessageProperties.get("file.result.warn.unable.to.release.content",
+              e.getMessage()), e);
+    }
+  }
+
 }
@@ -0,0 +1,164 @@
+package com.rsicms.rsuite.utils.operation.result;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+
+/**
+ * Holds an operation's messages in one segment per <code>MessageType</code>, plus a global order
+ * index. Each message is classified once, when added, such that filtering by type and iterating in
+ * order require no further lookups.
+ * <p>
+ * The order index costs five bytes per message: the message's type and its position within that
+ * type's segment.
+ * <p>
+ * Not thread-safe, in keeping with <code>BaseOperationResult</code>.
+ */
+public class MessageStore {
+
+  private static final MessageType[] TYPES = MessageType.values();
+
+  private final List<List<ProcessMessage>> segments;
+
+  private byte[] orderTypes = new byte[16];
+
+  private int[] orderPositions = new int[16];
+
+  private int size;
+
+  private final List<ProcessMessage> allMessages = new OrderedView();
+
+  public MessageStore() {
+    segments = new ArrayList<List<ProcessMessage>>(TYPES.length);
+    for (int i = 0; i < TYPES.length; i++) {
+      segments.add(new ArrayList<ProcessMessage>());
+    }
+  }
+
+  /**
+   * Add a message, classifying it by its class.
+   * 
+   * @param message
+   */
+  public void add(ProcessMessage message) {
+    add(message, MessageType.get(message));
+  }
+
+  /**
+   * Add a message of a known type.
+   * 
+   * @param message
+   * @param type
+   */
+  public void add(ProcessMessage message, MessageType type) {
+    List<ProcessMessage> segment = segments.get(type.ordinal());
+    if (size == orderTypes.length) {
+      int capacity = size + (size >> 1);
+      orderTypes = Arrays.copyOf(orderTypes, capacity);
+      orderPositions = Arrays.copyOf(orderPositions, capacity);
+    }
+    orderTypes[size] = (byte) type.ordinal();
+    orderPositions[size] = segment.size();
+    size++;
+    segment.add(message);
+  }
+
+  /**
+   * Add all of another store's messages, in order.
+   * 
+   * @param other
+   */
+  public void addAll(MessageStore other) {
+    int cnt = other.size;
+    for (int i = 0; i < cnt; i++) {
+      add(other.get(i), other.getType(i));
+    }
+  }
+
+  /**
+   * @return the total number of messages
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param type
+   * @return the number of messages of the given type
+   */
+  public int size(MessageType type) {
+    return segments.get(type.ordinal()).size();
+  }
+
+  /**
+   * @param index Position among all messages
+   * @return the message at the given position
+   */
+  public ProcessMessage get(int index) {
+    checkIndex(index);
+    return segments.get(orderTypes[index]).get(orderPositions[index]);
+  }
+
+  /**
+   * @param index Position among all messages
+   * @return the type of the message at the given position
+   */
+  public MessageType getType(int index) {
+    checkIndex(index);
+    return TYPES[orderTypes[index]];
+  }
+
+  /**
+   * @param type
+   * @return an unmodifiable view of the messages of the given type, in the order they were added.
+   */
+  public List<ProcessMessage> getMessages(MessageType type) {
+    return Collections.unmodifiableList(segments.get(type.ordinal()));
+  }
+
+  /**
+   * Get the messages of a type whose messages are known to implement the given interface.
+   * 
+   * @param type
+   * @param messageInterface
+   * @return an unmodifiable view of the messages of the given type
+   */
+  @SuppressWarnings("unchecked")
+  <T extends ProcessMessage> List<T> getMessages(MessageType type, Class<T> messageInterface) {
+    return (List<T>) Collections.unmodifiableList(segments.get(type.ordinal()));
+  }
+
+  /**
+   * @return an unmodifiable view of all messages, in the order they were added.
+   */
+  public List<ProcessMessage> getAllMessages() {
+    return allMessages;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private class OrderedView extends AbstractList<ProcessMessage> implements RandomAccess {
+
+    @Override
+    public ProcessMessage get(int index) {
+      return MessageStore.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+  }
+
+}
@@ -0,0 +1,159 @@
+package com.rsicms.rsuite.utils.operation.result;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * How far along an operation is: the expected total units of work, the units completed, an
+ * exponentially weighted moving average (EWMA) of the throughput, and the estimated time
+ * remaining.
+ * <p>
+ * Thread-safe and lock-free: the operation's threads record completed work while other threads,
+ * such as those listing the <code>OperationRegistry</code>, read it.
+ */
+public class OperationProgress {
+
+  /**
+   * Weight of the latest throughput sample in the moving average.
+   */
+  public static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+
+  /**
+   * Minimum time between throughput samples.
+   */
+  public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 1000;
+
+  private final double smoothingFactor;
+
+  private final long sampleIntervalNanos;
+
+  private volatile long expectedTotal;
+
+  private final AtomicLong completed = new AtomicLong();
+
+  /**
+   * The latest throughput sample; replaced as a whole so readers never see a partial update.
+   */
+  private final AtomicReference<Sample> sample;
+
+  public OperationProgress() {
+    this(DEFAULT_SMOOTHING_FACTOR, DEFAULT_SAMPLE_INTERVAL_MILLIS);
+  }
+
+  /**
+   * @param smoothingFactor Weight of the latest throughput sample in the moving average, greater
+   *        than 0 and at most 1.
+   * @param sampleIntervalMillis Minimum time between throughput samples.
+   */
+  public OperationProgress(double smoothingFactor, long sampleIntervalMillis) {
+    if (smoothingFactor <= 0 || smoothingFactor > 1) {
+      throw new IllegalArgumentException("smoothingFactor: " + smoothingFactor);
+    }
+    this.smoothingFactor = smoothingFactor;
+    this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(sampleIntervalMillis);
+    this.sample = new AtomicReference<Sample>(new Sample(System.nanoTime(), 0, -1));
+  }
+
+  /**
+   * @return The expected total units of work; zero when unknown.
+   */
+  public long getExpectedTotal() {
+    return expectedTotal;
+  }
+
+  /**
+   * @param expectedTotal The expected total units of work; zero when unknown.
+   */
+  public void setExpectedTotal(long expectedTotal) {
+    this.expectedTotal = expectedTotal;
+  }
+
+  /**
+   * @return The units of work completed.
+   */
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  /**
+   * Record completed units of work, updating the throughput average when a sample is due.
+   * 
+   * @param units
+   * @return The units of work completed so far.
+   */
+  public long addCompleted(long units) {
+    long total = completed.addAndGet(units);
+    long now = System.nanoTime();
+    Sample last = sample.get();
+    long elapsed = now - last.nanos;
+    if (elapsed >= sampleIntervalNanos) {
+      double rate = (total - last.completed) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+      double average =
+          last.average < 0 ? rate : smoothingFactor * rate + (1 - smoothingFactor) * last.average;
+      // When another thread just took the sample, this one is dropped.
+      sample.compareAndSet(last, new Sample(now, total, average));
+    }
+    return total;
+  }
+
+  /**
+   * @return The moving average of the units of work completed per second, or a negative number
+   *         until a sample was taken.
+   */
+  public double getThroughput() {
+    return sample.get().average;
+  }
+
+  /**
+   * @return The percentage of the expected total completed, or a negative number when the expected
+   *         total is unknown.
+   */
+  public double getPercentComplete() {
+    long total = expectedTotal;
+    if (total <= 0) {
+      return -1;
+    }
+    return Math.min(100.0, completed.get() * 100.0 / total);
+  }
+
+  /**
+   * @return The estimated milliseconds until the expected total is completed, or a negative number
+   *         when the expected total or the throughput is unknown.
+   */
+  public long getEstimatedRemainingMillis() {
+    long total = expectedTotal;
+    double throughput = getThroughput();
+    if (total <= 0 || throughput <= 0) {
+      return -1;
+    }
+    long remaining = Math.max(0, total - completed.get());
+    return (long) (remaining * 1000 / throughput);
+  }
+
+  /**
+   * @return The estimated moment the expected total will be completed, or null when unknown.
+   */
+  public Date getEstimatedCompletion() {
+    long remaining = getEstimatedRemainingMillis();
+    return remaining < 0 ? null : new Date(System.currentTimeMillis() + remaining);
+  }
+
+  private static class Sample {
+
+    final long nanos;
+
+    final long completed;
+
+    final double average;
+
+    Sample(long nanos, long completed, double average) {
+      this.nanos = nanos;
+      this.completed = completed;
+      this.average = average;
+    }
+
+  }
+
+}
@@ -15,7 +15,13 @@ import com.rsicms.rsuite.helpers.messages.ProcessFailureMessage;
 import com.rsicms.rsuite.helpers.messages.ProcessInfoMessage;
 import com.rsicms.rsuite.helpers.messages.ProcessMessage;
 import com.rsicms.rsuite.helpers.messages.ProcessWarningMessage;
+import com.rsicms.rsuite.utils.operation.CancellationToken;
+import com.rsicms.rsuite.utils.operation.MessageType;
 import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageAggregator;
+import com.rsicms.rsuite.utils.operation.options.OperationOptions;
+import com.rsicms.rsuite.utils.operation.status.OperationStatus;
+import com.rsicms.rsuite.utils.operation.visitor.OperationResultVisitor;
 
 
 public interface OperationResult {
@@ -38,6 +44,67 @@ public interface OperationResult {
 
   void markEndOfOperation();
 
+  /**
+   * @return The operation's status.
+   */
+  OperationStatus getStatus();
+
+  /**
+   * @param status The operation's status.
+   */
+  void setStatus(OperationStatus status);
+
+  /**
+   * Get the operation's progress, to record expected and completed work, and estimate the time
+   * remaining.
+   * 
+   * @return the operation's progress.
+   */
+  OperationProgress getProgress();
+
+  /**
+   * @return the token this operation checks for cancellation, or null.
+   */
+  CancellationToken getCancellationToken();
+
+  /**
+   * @param token the token this operation checks for cancellation; may be null.
+   */
+  void setCancellationToken(CancellationToken token);
+
+  /**
+   * Find out if this operation was asked to stop. Cheap enough to call per unit of work.
+   * 
+   * @return True if the cancellation token requests cancellation.
+   */
+  boolean isCancellationRequested();
+
+  /**
+   * When cancellation is requested, mark the operation ABORTED, add a failure giving the reason
+   * and, optionally, roll back the current transaction. Long loops are to call this between units
+   * of work and stop when it returns true.
+   * 
+   * @param context Used to roll back; may be null when not rolling back.
+   * @param user Used to roll back; may be null when not rolling back.
+   * @param rollbackCurrentTransaction
+   * @return True if the operation is aborted.
+   */
+  boolean abortIfCancellationRequested(ExecutionContext context, User user,
+      boolean rollbackCurrentTransaction);
+
+  /**
+   * Abort as {@link #abortIfCancellationRequested(ExecutionContext, User, boolean)} does, when
+   * either this operation's or the options' cancellation token requests cancellation, rolling back
+   * per the options.
+   * 
+   * @param context
+   * @param user
+   * @param options
+   * @return True if the operation is aborted.
+   */
+  boolean abortIfCancellationRequested(ExecutionContext context, User user,
+      OperationOptions options);
+
   void setEndOfOperation(Date start);
 
   Date getEndOfOperation();
@@ -103,6 +170,21 @@ public interface OperationResult {
    */
   long getElapsedTimeInSeconds(String name);
 
+  /**
+   * Get the names of all started timers.
+   * 
+   * @return The names of all started timers, in no particular order.
+   */
+  List<String> getTimerNames();
+
+  /**
+   * Get the moment a named timer was started.
+   * 
+   * @param name Name of timer.
+   * @return The moment the timer was started or null when timer wasn't started.
+   */
+  Date getTimerStart(String name);
+
   void addWorkflowJob(ProcessInstanceSummaryInfo job);
 
   List<ProcessInstanceSummaryInfo> getWorkflowJobs();
@@ -180,8 +262,26 @@ public interface OperationResult {
 
   List<ProcessInfoMessage> getInfoMessages();
 
+  /**
+   * @return All messages, in the order they were added.
+   */
   List<ProcessMessage> getAllMessages();
 
+  /**
+   * Get the messages of one type, without inspecting each message.
+   * 
+   * @param type
+   * @return The messages of the given type, in the order they were added.
+   */
+  List<ProcessMessage> getMessages(MessageType type);
+
+  /**
+   * Get the messages grouped by type, label and template, as maintained while messages are added.
+   * 
+   * @return the message aggregator
+   */
+  MessageAggregator getMessageAggregator();
+
   int getCount(String name);
 
   void incrementCount(String name);
@@ -315,6 +415,14 @@ public interface OperationResult {
    */
   void addSubResult(BaseOperationResult subResult);
 
+  /**
+   * Add a sub-result's messages, counters, transactions and workflow jobs to this result, such as
+   * when the sub-result recorded part of this operation's work on another thread.
+   * 
+   * @param subResult The sub-result to merge into this result.
+   */
+  void mergeSubResult(BaseOperationResult subResult);
+
   /**
    * @return An "executive summary" of the operation which was introduced as part of email subjects.
    */
@@ -325,6 +433,32 @@ public interface OperationResult {
    */
   String getHtmlFormattedMessages();
 
+  /**
+   * @param aggregateMessages When true, the report lists message groups rather than every message.
+   * @return The messages as an HTML-formatted report.
+   * @see #getMessageAggregator()
+   */
+  String getHtmlFormattedMessages(boolean aggregateMessages);
+
+  /**
+   * Walk this result once, calling back the given visitor for the overview, counters, timers,
+   * transactions and each message.
+   * 
+   * @param visitor
+   */
+  void accept(OperationResultVisitor visitor);
+
+  /**
+   * Walk this result once, as {@link #accept(OperationResultVisitor)} does, optionally visiting the
+   * message groups instead of each message.
+   * 
+   * @param visitor
+   * @param aggregateMessages When true, the visitor receives
+   *        {@link OperationResultVisitor#visitMessageGroups(OperationResult, List)} instead of a
+   *        callback per message.
+   */
+  void accept(OperationResultVisitor visitor, boolean aggregateMessages);
+
   /**
    * Find out if {@link #conditionallyUnwrapThrowable(Throwable)} can upwrap the provided throwable.
    * 
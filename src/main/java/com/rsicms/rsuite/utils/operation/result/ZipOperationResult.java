@@ -1,12 +1,21 @@
 package com.rsicms.rsuite.utils.operation.result;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipEntry;
 
 import org.apache.commons.logging.Log;
 
+import com.reallysi.rsuite.api.RSuiteException;
+import com.rsicms.rsuite.utils.operation.content.ArtifactGenerator;
+import com.rsicms.rsuite.utils.operation.content.DownloadArtifactCache;
+import com.rsicms.rsuite.utils.operation.content.FileContent;
+import com.rsicms.rsuite.utils.operation.zip.ParallelZipBuilder;
+import com.rsicms.rsuite.utils.operation.zip.ZipManifest;
+
 public class ZipOperationResult extends BaseOperationResult {
 
   private final static String COUNTER_NAME_MOS_CREATED = "mosCreated";
@@ -15,7 +24,7 @@ public class ZipOperationResult extends BaseOperationResult {
 
   private File zipFile;
 
-  private List<String> zipFileManifest = new ArrayList<String>();
+  private final ZipManifest manifest = new ZipManifest();
 
   public ZipOperationResult(String operationId, String defaultLabel, Log log) {
     super(operationId, defaultLabel, log);
@@ -78,10 +87,102 @@ public class ZipOperationResult extends BaseOperationResult {
   }
 
   /**
-   * @return the zipFileManifest
+   * @return the names of the zip's entries, as a read-only view of the manifest.
    */
   public List<String> getZipFileManifest() {
-    return zipFileManifest;
+    return manifest.getNames();
+  }
+
+  /**
+   * @return the zip manifest, with each entry's sizes, CRC and source MO.
+   */
+  public ZipManifest getManifest() {
+    return manifest;
+  }
+
+  /**
+   * Start building the zip file, compressing entries in parallel. The file becomes this result's
+   * zip file, and entries are added to the manifest as they are written.
+   * 
+   * @param zipFile
+   * @param executor Compresses entries; null to compress on the calling thread.
+   * @return a builder, to be finished or closed.
+   * @throws IOException
+   */
+  public ParallelZipBuilder newZipBuilder(File zipFile, ExecutorService executor)
+      throws IOException {
+    ParallelZipBuilder builder = ParallelZipBuilder.create(zipFile, executor, this);
+    setZipFile(zipFile);
+    return builder;
+  }
+
+  /**
+   * Start building a zip written to the given stream, compressing entries in parallel. Entries are
+   * added to the manifest as they are written.
+   * 
+   * @param out Left open.
+   * @param executor Compresses entries; null to compress on the calling thread.
+   * @return a builder, to be finished or closed.
+   */
+  public ParallelZipBuilder newZipBuilder(OutputStream out, ExecutorService executor) {
+    return new ParallelZipBuilder(out, false, executor, this);
+  }
+
+  /**
+   * Start or resume building the zip file, as {@link #newResumableZipBuilder(File, File,
+   * ExecutorService)} does, with the checkpoint file next to the zip file.
+   * 
+   * @param zipFile
+   * @param executor Compresses entries; null to compress on the calling thread.
+   * @return a builder, to be finished or aborted.
+   * @throws IOException
+   */
+  public ParallelZipBuilder newResumableZipBuilder(File zipFile, ExecutorService executor)
+      throws IOException {
+    return newResumableZipBuilder(zipFile, new File(zipFile.getPath() + ".checkpoint"),
+        executor);
+  }
+
+  /**
+   * Start or resume building the zip file, checkpointing it as it's written. When a previous
+   * attempt left a checkpoint, the entries it records are added to the manifest, and only the
+   * entries not yet written are written when added again. The file becomes this result's zip
+   * file.
+   * 
+   * @param zipFile
+   * @param checkpointFile Deleted once the zip is finished.
+   * @param executor Compresses entries; null to compress on the calling thread.
+   * @return a builder, to be finished or aborted.
+   * @throws IOException
+   * @see ParallelZipBuilder#resume(File, File, ExecutorService, ZipOperationResult)
+   */
+  public ParallelZipBuilder newResumableZipBuilder(File zipFile, File checkpointFile,
+      ExecutorService executor) throws IOException {
+    ParallelZipBuilder builder =
+        ParallelZipBuilder.resume(zipFile, checkpointFile, executor, this);
+    setZipFile(zipFile);
+    return builder;
+  }
+
+  /**
+   * Use a cached zip file, generating and caching it on a miss. The zip file becomes this result's
+   * zip file, and the hit or miss is counted on this result. On a hit, the manifest is not
+   * populated.
+   * 
+   * @param cache
+   * @param contentKey Identifies everything the zip depends on, such as MO IDs, versions and
+   *        options.
+   * @param generator Writes the zip to the given file on a miss, such as through
+   *        {@link #newZipBuilder(File, ExecutorService)}.
+   * @return the zip file's content, which keeps the file in the cache until closed.
+   * @throws IOException
+   * @throws RSuiteException Thrown by the generator.
+   */
+  public FileContent useCachedZipFile(DownloadArtifactCache cache, String contentKey,
+      ArtifactGenerator generator) throws IOException, RSuiteException {
+    FileContent content = cache.get(contentKey, generator, this);
+    setZipFile(content.getPath().toFile());
+    return content;
   }
 
   /**
@@ -90,7 +191,17 @@ public class ZipOperationResult extends BaseOperationResult {
    * @param ze
    */
   public void addToZipFileManifest(ZipEntry ze) {
-    zipFileManifest.add(ze.getName());
+    addToZipFileManifest(ze, null);
+  }
+
+  /**
+   * Add an entry to the zip manifest
+   * 
+   * @param ze Once closed, so its sizes and CRC are known.
+   * @param moId The ID of the MO the entry's content came from; may be null.
+   */
+  public void addToZipFileManifest(ZipEntry ze, String moId) {
+    manifest.add(ze, moId);
   }
 
 }
@@ -0,0 +1,481 @@
+package com.rsicms.rsuite.utils.operation.schedule;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.reallysi.rsuite.api.RSuiteException;
+import com.rsicms.rsuite.utils.operation.CancellationToken;
+import com.rsicms.rsuite.utils.operation.OperationContext;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.registry.OperationRegistry;
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+import com.rsicms.rsuite.utils.operation.status.OperationStatus;
+import com.rsicms.rsuite.utils.operation.status.OperationStatusTracker;
+
+/**
+ * Runs operations with a limit on how many of each type run at once.
+ * <p>
+ * Submitted operations are QUEUED, in a queue per operation type ordered by priority, then by
+ * submission. When fewer operations of its type are running than the type's limit, the next one
+ * is handed to the executor: it becomes IN_PROGRESS, its result's start is marked, and its task
+ * runs with an <code>OperationContext</code> bound. Once the task returns, the result's end is
+ * marked, leaving the operation SUCCESSFUL, FAILED or ABORTED. Operations may be cancelled with
+ * {@link #cancel(String, String)}. Queued operations are listed by the
+ * <code>OperationRegistry</code> as well as running ones.
+ * <p>
+ * The executor should have at least as many threads as the sum of the limits; the scheduler, not
+ * the executor, keeps operations waiting. Queue depth and wait time are kept per operation type.
+ * Thread-safe.
+ */
+public class OperationScheduler {
+
+  public static final int DEFAULT_CONCURRENCY_LIMIT = 2;
+
+  public static final int DEFAULT_PRIORITY = 0;
+
+  private final Executor executor;
+
+  private final OperationStatusTracker<String> tracker = new OperationStatusTracker<String>();
+
+  /**
+   * Queues and metrics by operation type. Guarded by this.
+   */
+  private final Map<String, TypeQueue> queues = new HashMap<String, TypeQueue>();
+
+  /**
+   * Guarded by this.
+   */
+  private int defaultConcurrencyLimit = DEFAULT_CONCURRENCY_LIMIT;
+
+  /**
+   * Queued and running operations, by operation ID. Guarded by this.
+   */
+  private final Map<String, ScheduledOperation> operations =
+      new HashMap<String, ScheduledOperation>();
+
+  /**
+   * Orders operations of equal priority by submission. Guarded by this.
+   */
+  private long sequence;
+
+  /**
+   * Guarded by this.
+   */
+  private boolean shutdown;
+
+  /**
+   * @param executor Runs the operations.
+   */
+  public OperationScheduler(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @param limit The concurrency limit of operation types without their own.
+   */
+  public synchronized void setDefaultConcurrencyLimit(int limit) {
+    this.defaultConcurrencyLimit = limit;
+    for (String type : queues.keySet()) {
+      dispatch(type);
+    }
+  }
+
+  /**
+   * @param type
+   * @param limit How many operations of the given type may run at once.
+   */
+  public synchronized void setConcurrencyLimit(String type, int limit) {
+    getQueue(type).limit = limit;
+    dispatch(type);
+  }
+
+  /**
+   * Queue an operation with the default priority.
+   * 
+   * @param type
+   * @param opResult
+   * @param task
+   * @return The operation's future result.
+   * @throws RSuiteException
+   * @see #submit(String, int, BaseOperationResult, OperationTask)
+   */
+  public Future<OperationResult> submit(String type, BaseOperationResult opResult,
+      OperationTask task) throws RSuiteException {
+    return submit(type, DEFAULT_PRIORITY, opResult, task);
+  }
+
+  /**
+   * Queue an operation.
+   * 
+   * @param type The operation type, whose concurrency limit applies.
+   * @param priority Higher priority operations of the same type run first.
+   * @param opResult The result to record into. Its operation ID must be set and not be in use by
+   *        another queued or running operation.
+   * @param task The work to do.
+   * @return The operation's future result. Cancelling it before the operation starts aborts it, as
+   *         does the executor rejecting the operation.
+   * @throws RSuiteException Thrown if the operation ID is missing or in use, or the scheduler was
+   *         shut down.
+   */
+  public Future<OperationResult> submit(String type, int priority, BaseOperationResult opResult,
+      OperationTask task) throws RSuiteException {
+    String opId = opResult.getOperationId();
+    if (opId == null) {
+      throw new RSuiteException(RSuiteException.ERROR_PARAM_INVALID,
+          OperationMessageProperties.get("operation.scheduler.error.no.operation.id"));
+    }
+    synchronized (this) {
+      if (shutdown) {
+        throw new RSuiteException(RSuiteException.ERROR_INTERNAL_ERROR,
+            OperationMessageProperties.get("operation.scheduler.error.shut.down", opId));
+      }
+      if (!tracker.add(opId, OperationStatus.QUEUED)) {
+        throw new RSuiteException(RSuiteException.ERROR_PARAM_INVALID,
+            OperationMessageProperties.get("operation.scheduler.error.duplicate.operation", opId));
+      }
+      opResult.setStatus(OperationStatus.QUEUED);
+      OperationRegistry.getDefault().register(opResult);
+      ScheduledOperation op = new ScheduledOperation(type, priority, sequence++, opResult, task);
+      operations.put(opId, op);
+      getQueue(type).queue.add(op);
+      dispatch(type);
+      return op.future;
+    }
+  }
+
+  /**
+   * Cancel an operation. A queued operation is aborted without running. A running operation is
+   * asked to stop through its result's cancellation token, which its task is to check; see
+   * <code>OperationResult.abortIfCancellationRequested</code>.
+   * 
+   * @param opId
+   * @param reason Why; may be null.
+   * @return True if the operation was queued or running.
+   */
+  public boolean cancel(String opId, String reason) {
+    ScheduledOperation op;
+    synchronized (this) {
+      op = operations.get(opId);
+    }
+    if (op == null) {
+      return false;
+    }
+    BaseOperationResult opResult = op.opResult;
+    synchronized (opResult) {
+      if (opResult.getCancellationToken() == null) {
+        opResult.setCancellationToken(new CancellationToken());
+      }
+    }
+    opResult.getCancellationToken().cancel(reason);
+    if (!op.claimed.get()) {
+      op.future.cancel(false);
+    }
+    return true;
+  }
+
+  /**
+   * Stop accepting operations, and abort those still queued. Running operations continue.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      shutdown = true;
+    }
+    for (ScheduledOperation op : drainQueued()) {
+      op.future.cancel(false);
+    }
+  }
+
+  /**
+   * @return The status of each queued and running operation, by operation ID.
+   */
+  public OperationStatusTracker<String> getTracker() {
+    return tracker;
+  }
+
+  /**
+   * @return The number of operations waiting to run, of all types.
+   */
+  public int getQueueDepth() {
+    return tracker.getCount(OperationStatus.QUEUED);
+  }
+
+  /**
+   * @param type
+   * @return The number of operations of the given type waiting to run.
+   */
+  public synchronized int getQueueDepth(String type) {
+    TypeQueue q = queues.get(type);
+    return q == null ? 0 : q.queue.size();
+  }
+
+  /**
+   * @param type
+   * @return The number of operations of the given type running.
+   */
+  public synchronized int getRunningCount(String type) {
+    TypeQueue q = queues.get(type);
+    return q == null ? 0 : q.running;
+  }
+
+  /**
+   * @param type
+   * @return The number of operations of the given type started so far.
+   */
+  public synchronized long getStartedCount(String type) {
+    TypeQueue q = queues.get(type);
+    return q == null ? 0 : q.started;
+  }
+
+  /**
+   * @param type
+   * @return The average time operations of the given type waited in the queue, in milliseconds.
+   */
+  public synchronized long getAverageWaitMillis(String type) {
+    TypeQueue q = queues.get(type);
+    if (q == null || q.started == 0) {
+      return 0;
+    }
+    return TimeUnit.NANOSECONDS.toMillis(q.totalWaitNanos / q.started);
+  }
+
+  /**
+   * @param type
+   * @return The longest time an operation of the given type waited in the queue, in milliseconds.
+   */
+  public synchronized long getMaxWaitMillis(String type) {
+    TypeQueue q = queues.get(type);
+    return q == null ? 0 : TimeUnit.NANOSECONDS.toMillis(q.maxWaitNanos);
+  }
+
+  /**
+   * @param type
+   * @return How long the next operation of the given type has been waiting, in milliseconds.
+   */
+  public synchronized long getOldestWaitMillis(String type) {
+    TypeQueue q = queues.get(type);
+    ScheduledOperation next = q == null ? null : q.queue.peek();
+    return next == null ? 0
+        : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - next.submittedNanos);
+  }
+
+  private synchronized ScheduledOperation[] drainQueued() {
+    int cnt = 0;
+    for (TypeQueue q : queues.values()) {
+      cnt += q.queue.size();
+    }
+    ScheduledOperation[] ops = new ScheduledOperation[cnt];
+    int i = 0;
+    for (TypeQueue q : queues.values()) {
+      ScheduledOperation op;
+      while ((op = q.queue.poll()) != null) {
+        ops[i++] = op;
+      }
+    }
+    return ops;
+  }
+
+  /**
+   * Must hold this.
+   */
+  private TypeQueue getQueue(String type) {
+    TypeQueue q = queues.get(type);
+    if (q == null) {
+      q = new TypeQueue();
+      queues.put(type, q);
+    }
+    return q;
+  }
+
+  /**
+   * Hand queued operations of the given type to the executor while under the type's limit. Must
+   * hold this.
+   */
+  private void dispatch(String type) {
+    TypeQueue q = getQueue(type);
+    int limit = q.limit > 0 ? q.limit : defaultConcurrencyLimit;
+    while (q.running < limit && !q.queue.isEmpty()) {
+      ScheduledOperation op = q.queue.poll();
+      long wait = System.nanoTime() - op.submittedNanos;
+      q.running++;
+      q.started++;
+      q.totalWaitNanos += wait;
+      q.maxWaitNanos = Math.max(q.maxWaitNanos, wait);
+      try {
+        executor.execute(op);
+      } catch (RejectedExecutionException e) {
+        q.running--;
+        op.future.cancel(false);
+      }
+    }
+  }
+
+  private synchronized void finished(String type) {
+    getQueue(type).running--;
+    dispatch(type);
+  }
+
+  /**
+   * Remove an operation cancelled before it started from its queue, and abort it.
+   */
+  private void cancelled(ScheduledOperation op) {
+    synchronized (this) {
+      TypeQueue q = queues.get(op.type);
+      if (q != null) {
+        q.queue.remove(op);
+      }
+    }
+    op.opResult.setStatus(OperationStatus.ABORTED);
+    forget(op);
+    OperationRegistry.getDefault().unregister(op.opResult);
+  }
+
+  /**
+   * Run the task of a dispatched operation.
+   */
+  private OperationResult run(ScheduledOperation op) throws RSuiteException {
+    BaseOperationResult opResult = op.opResult;
+    String opId = opResult.getOperationId();
+    try {
+      tracker.transition(opId, OperationStatus.IN_PROGRESS);
+      opResult.markStartOfOperation();
+      try (OperationContext.Scope scope = OperationContext.of(opResult).bind()) {
+        // Cancellation may have been requested while queued, e.g., by a deadline.
+        if (!opResult.abortIfCancellationRequested(null, null, false)) {
+          op.task.execute(opResult);
+        }
+      } catch (Exception e) {
+        opResult.addFailure(e);
+      } finally {
+        opResult.markEndOfOperation();
+      }
+      OperationStatus status = opResult.getStatus();
+      if (OperationStatus.IN_PROGRESS.canTransitionTo(status)) {
+        tracker.transition(opId, OperationStatus.IN_PROGRESS, status);
+      }
+      return opResult;
+    } finally {
+      forget(op);
+      finished(op.type);
+    }
+  }
+
+  private void forget(ScheduledOperation op) {
+    String opId = op.opResult.getOperationId();
+    synchronized (this) {
+      if (operations.get(opId) == op) {
+        operations.remove(opId);
+      }
+    }
+    tracker.remove(opId);
+  }
+
+  /**
+   * The queue and metrics of an operation type.
+   */
+  private static class TypeQueue {
+
+    final PriorityQueue<ScheduledOperation> queue = new PriorityQueue<ScheduledOperation>();
+
+    /**
+     * Zero to use the default limit.
+     */
+    int limit;
+
+    int running;
+
+    long started;
+
+    long totalWaitNanos;
+
+    long maxWaitNanos;
+
+  }
+
+  /**
+   * A submitted operation, and its future result.
+   */
+  private class ScheduledOperation implements Runnable, Comparable<ScheduledOperation> {
+
+    final String type;
+
+    final int priority;
+
+    final long seq;
+
+    final long submittedNanos = System.nanoTime();
+
+    final BaseOperationResult opResult;
+
+    final OperationTask task;
+
+    final FutureTask<OperationResult> future;
+
+    /**
+     * Claimed by whichever comes first: the executor running the operation, or its cancellation
+     * before it started. Only the claimant aborts or runs it.
+     */
+    final AtomicBoolean claimed = new AtomicBoolean();
+
+    /**
+     * Set once the task starts; only read by the thread running it.
+     */
+    boolean ran;
+
+    ScheduledOperation(String type, int priority, long seq, BaseOperationResult opResult,
+        OperationTask task) {
+      this.type = type;
+      this.priority = priority;
+      this.seq = seq;
+      this.opResult = opResult;
+      this.task = task;
+      this.future = new FutureTask<OperationResult>(new Callable<OperationResult>() {
+        @Override
+        public OperationResult call() throws Exception {
+          ran = true;
+          return OperationScheduler.this.run(ScheduledOperation.this);
+        }
+      }) {
+        @Override
+        protected void done() {
+          if (isCancelled() && claimed.compareAndSet(false, true)) {
+            cancelled(ScheduledOperation.this);
+          }
+        }
+      };
+    }
+
+    @Override
+    public void run() {
+      if (!claimed.compareAndSet(false, true)) {
+        // Cancelled after being dispatched, and aborted already.
+        finished(type);
+        return;
+      }
+      future.run();
+      if (!ran) {
+        // Cancelled after being claimed but before the task started.
+        cancelled(this);
+        finished(type);
+      }
+    }
+
+    @Override
+    public int compareTo(ScheduledOperation other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+    }
+
+  }
+
+}
@@ -0,0 +1,20 @@
+package com.rsicms.rsuite.utils.operation.schedule;
+
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+
+/**
+ * The work of an operation run by an <code>OperationScheduler</code>.
+ */
+public interface OperationTask {
+
+  /**
+   * Perform the operation, recording into the given result. The scheduler marks the result's start
+   * and end, and binds an <code>OperationContext</code> for it. An exception thrown is added to the
+   * result as a failure.
+   * 
+   * @param opResult
+   * @throws Exception
+   */
+  void execute(BaseOperationResult opResult) throws Exception;
+
+}
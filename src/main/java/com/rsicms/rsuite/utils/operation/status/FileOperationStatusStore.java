@@ -0,0 +1,451 @@
+package com.rsicms.rsuite.utils.operation.status;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+
+import com.reallysi.rsuite.api.RSuiteException;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+
+/**
+ * A local store of the statuses of operations or work items, keyed by ID, that survives restarts.
+ * Only statuses that {@link OperationStatus#allowSet() may be persisted} are accepted.
+ * <p>
+ * The file is an append-only log: each change is a record of its length, its CRC-32 and the ID
+ * and status name. Opening the store replays the log into memory, so all outstanding items are
+ * known at once; a record cut short by a crash, and anything after it, is discarded. A record of a
+ * status this version doesn't know, such as one written by a later version, is skipped. Changes are
+ * buffered and written, with a single sync to disk, when {@link #flush()} is called or the buffer
+ * holds {@link #setMaxBufferedRecords(int) enough records}. When superseded records outnumber
+ * current ones, the log is compacted into a new file that atomically replaces the old one.
+ * <p>
+ * Reads are served from memory and don't lock. Writes are synchronized.
+ */
+public class FileOperationStatusStore implements Closeable {
+
+  private static final int MAGIC = 0x4F505354; // "OPST"
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int HEADER_LENGTH = 8;
+
+  /**
+   * Records longer than this are treated as corrupt.
+   */
+  private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+  /**
+   * The status name of a record that removes an ID.
+   */
+  private static final String REMOVED = "";
+
+  public static final int DEFAULT_MAX_BUFFERED_RECORDS = 10000;
+
+  public static final int DEFAULT_MIN_COMPACTION_RECORDS = 10000;
+
+  private final Path path;
+
+  private final ConcurrentMap<String, OperationStatus> statuses =
+      new ConcurrentHashMap<String, OperationStatus>();
+
+  private FileChannel channel;
+
+  /**
+   * Records not yet written.
+   */
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+
+  private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+
+  private final ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+
+  private final DataOutputStream payloadOut = new DataOutputStream(payload);
+
+  private final CRC32 crc = new CRC32();
+
+  private int bufferedRecords;
+
+  /**
+   * The number of records in the file and buffer, including superseded ones.
+   */
+  private long recordCount;
+
+  private int maxBufferedRecords = DEFAULT_MAX_BUFFERED_RECORDS;
+
+  private int minCompactionRecords = DEFAULT_MIN_COMPACTION_RECORDS;
+
+  /**
+   * Open the store, creating the file if need be, and recover its statuses.
+   * 
+   * @param file
+   * @throws IOException Thrown if the file can't be read or written, or isn't a status store.
+   */
+  public FileOperationStatusStore(File file) throws IOException {
+    this.path = file.toPath();
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    boolean opened = false;
+    try {
+      recover();
+      opened = true;
+    } finally {
+      if (!opened) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * @param maxBufferedRecords Changes are written once this many are buffered.
+   */
+  public synchronized void setMaxBufferedRecords(int maxBufferedRecords) {
+    this.maxBufferedRecords = maxBufferedRecords;
+  }
+
+  /**
+   * @param minCompactionRecords The log isn't compacted before it has this many records.
+   */
+  public synchronized void setMinCompactionRecords(int minCompactionRecords) {
+    this.minCompactionRecords = minCompactionRecords;
+  }
+
+  /**
+   * @param id
+   * @return The item's status, or null if unknown.
+   */
+  public OperationStatus getStatus(String id) {
+    return statuses.get(id);
+  }
+
+  /**
+   * @return The IDs of the items whose status is outstanding, such as queued or in progress.
+   * @see OperationStatus#isOutstanding()
+   */
+  public List<String> getOutstanding() {
+    List<String> ids = new ArrayList<String>();
+    for (Map.Entry<String, OperationStatus> entry : statuses.entrySet()) {
+      if (entry.getValue().isOutstanding()) {
+        ids.add(entry.getKey());
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * @return All items' statuses, by ID.
+   */
+  public Map<String, OperationStatus> getStatuses() {
+    return Collections.unmodifiableMap(new HashMap<String, OperationStatus>(statuses));
+  }
+
+  /**
+   * @return The number of items stored.
+   */
+  public int size() {
+    return statuses.size();
+  }
+
+  /**
+   * Set an item's status. The change is buffered; see {@link #flush()}.
+   * 
+   * @param id
+   * @param status
+   * @throws RSuiteException Thrown if the status may not be persisted.
+   * @throws IOException
+   */
+  public synchronized void put(String id, OperationStatus status)
+      throws RSuiteException, IOException {
+    checkPersistable(status);
+    append(id, status.name());
+    statuses.put(id, status);
+    flushIfFull();
+  }
+
+  /**
+   * Set many items' statuses, with a single write and sync.
+   * 
+   * @param changes statuses by ID
+   * @throws RSuiteException Thrown if one of the statuses may not be persisted; none are set.
+   * @throws IOException
+   */
+  public synchronized void putAll(Map<String, OperationStatus> changes)
+      throws RSuiteException, IOException {
+    for (OperationStatus status : changes.values()) {
+      checkPersistable(status);
+    }
+    for (Map.Entry<String, OperationStatus> entry : changes.entrySet()) {
+      append(entry.getKey(), entry.getValue().name());
+      statuses.put(entry.getKey(), entry.getValue());
+    }
+    flush();
+  }
+
+  /**
+   * Forget an item. The change is buffered; see {@link #flush()}.
+   * 
+   * @param id
+   * @throws IOException
+   */
+  public synchronized void remove(String id) throws IOException {
+    if (statuses.remove(id) != null) {
+      append(id, REMOVED);
+      flushIfFull();
+    }
+  }
+
+  /**
+   * Write the buffered changes and sync them to disk, compacting the log when worthwhile.
+   * 
+   * @throws IOException
+   */
+  public synchronized void flush() throws IOException {
+    checkOpen();
+    if (bufferedRecords > 0) {
+      writeBuffer();
+      channel.force(false);
+    }
+    if (recordCount >= minCompactionRecords && recordCount > 2L * statuses.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrite the log with only the current statuses, replacing the file atomically.
+   * 
+   * @throws IOException
+   */
+  public synchronized void compact() throws IOException {
+    checkOpen();
+    // Should the compaction fail, the buffered changes are still in the log.
+    writeBuffer();
+    long logRecordCount = recordCount;
+    recordCount = 0;
+    Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(),
+        path.getFileName().toString(), ".tmp");
+    boolean replaced = false;
+    try {
+      FileChannel tmpChannel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+      try {
+        writeHeader(tmpChannel);
+        for (Map.Entry<String, OperationStatus> entry : statuses.entrySet()) {
+          append(entry.getKey(), entry.getValue().name());
+          if (buffer.size() >= 64 * 1024) {
+            writeFully(tmpChannel, ByteBuffer.wrap(buffer.toByteArray()));
+            buffer.reset();
+          }
+        }
+        writeFully(tmpChannel, ByteBuffer.wrap(buffer.toByteArray()));
+        buffer.reset();
+        bufferedRecords = 0;
+        tmpChannel.force(true);
+      } finally {
+        tmpChannel.close();
+      }
+      channel.close();
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      replaced = true;
+    } finally {
+      if (!replaced) {
+        buffer.reset();
+        bufferedRecords = 0;
+        recordCount = logRecordCount;
+        Files.deleteIfExists(tmp);
+      }
+      if (!channel.isOpen()) {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+    }
+  }
+
+  /**
+   * Flush the buffered changes and close the file.
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel.isOpen()) {
+      try {
+        flush();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Replay the log into memory, truncating it at the first incomplete or corrupt record.
+   */
+  private void recover() throws IOException {
+    if (channel.size() == 0) {
+      writeHeader(channel);
+      channel.force(true);
+      return;
+    }
+    if (channel.size() < HEADER_LENGTH) {
+      throw new IOException(
+          OperationMessageProperties.get("operation.status.store.error.not.a.status.store", path));
+    }
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+    long validLength;
+    try {
+      channel.position(0);
+      if (in.readInt() != MAGIC) {
+        throw new IOException(OperationMessageProperties
+            .get("operation.status.store.error.not.a.status.store", path));
+      }
+      int version = in.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException(OperationMessageProperties
+            .get("operation.status.store.error.unsupported.version", path, version));
+      }
+      validLength = HEADER_LENGTH;
+      byte[] bytes = new byte[256];
+      while (true) {
+        int length;
+        int checksum;
+        try {
+          length = in.readInt();
+          checksum = in.readInt();
+          if (length <= 0 || length > MAX_RECORD_LENGTH) {
+            break;
+          }
+          if (bytes.length < length) {
+            bytes = new byte[length];
+          }
+          in.readFully(bytes, 0, length);
+        } catch (EOFException e) {
+          break;
+        }
+        crc.reset();
+        crc.update(bytes, 0, length);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        apply(bytes, length);
+        validLength += 8 + length;
+        recordCount++;
+      }
+    } catch (EOFException e) {
+      throw new IOException(
+          OperationMessageProperties.get("operation.status.store.error.not.a.status.store", path),
+          e);
+    }
+    // The stream isn't closed, as that would close the channel.
+    if (channel.size() > validLength) {
+      channel.truncate(validLength);
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Apply a record read from the log, whose checksum matched. A record this version can't read,
+   * such as one of an unknown status, is skipped.
+   */
+  private void apply(byte[] bytes, int length) {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+    try {
+      String id = in.readUTF();
+      String name = in.readUTF();
+      if (REMOVED.equals(name)) {
+        statuses.remove(id);
+        return;
+      }
+      OperationStatus status = OperationStatus.get(name, false);
+      if (status != null) {
+        statuses.put(id, status);
+      }
+    } catch (IOException e) {
+      // Skipped.
+    } catch (RSuiteException e) {
+      // Skipped.
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  private void append(String id, String statusName) throws IOException {
+    payload.reset();
+    payloadOut.writeUTF(id);
+    payloadOut.writeUTF(statusName);
+    payloadOut.flush();
+    crc.reset();
+    crc.update(payload.toByteArray(), 0, payload.size());
+    bufferOut.writeInt(payload.size());
+    bufferOut.writeInt((int) crc.getValue());
+    payload.writeTo(bufferOut);
+    bufferOut.flush();
+    bufferedRecords++;
+    recordCount++;
+  }
+
+  /**
+   * Append the buffered records to the file, without syncing.
+   */
+  private void writeBuffer() throws IOException {
+    if (bufferedRecords > 0) {
+      channel.position(channel.size());
+      writeFully(channel, ByteBuffer.wrap(buffer.toByteArray()));
+      buffer.reset();
+      bufferedRecords = 0;
+    }
+  }
+
+  private void flushIfFull() throws IOException {
+    if (bufferedRecords >= maxBufferedRecords) {
+      flush();
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if (!channel.isOpen()) {
+      throw new IOException(
+          OperationMessageProperties.get("operation.status.store.error.closed", path));
+    }
+  }
+
+  private static void checkPersistable(OperationStatus status) throws RSuiteException {
+    if (status == null || !status.allowSet()) {
+      throw new RSuiteException(RSuiteException.ERROR_PARAM_INVALID, OperationMessageProperties
+          .get("operation.status.store.error.not.persistable", status));
+    }
+  }
+
+  private static void writeHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+    channel.position(0);
+    writeFully(channel, header);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+  }
+
+}
@@ -1,7 +1,14 @@
 package com.rsicms.rsuite.utils.operation.status;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -19,6 +26,47 @@ public enum OperationStatus {
           "failed", "Failed"), ABORTED(true, false, "aborted", "Aborted"), SKIPPED(false, false,
               "skipped", "Skipped"), EXCLUDED(true, false, "excluded", "Excluded");
 
+  /**
+   * Enum values by upper-case name.
+   */
+  private static final Map<String, OperationStatus> VALUES_BY_NAME;
+
+  /**
+   * The enum values that may be persisted, in declaration order.
+   */
+  private static final List<OperationStatus> PERSISTABLE_VALUES;
+
+  /**
+   * The statuses each status may change to.
+   */
+  private static final Map<OperationStatus, Set<OperationStatus>> TRANSITIONS;
+
+  static {
+    Map<String, OperationStatus> byName = new HashMap<String, OperationStatus>();
+    List<OperationStatus> persistable = new ArrayList<OperationStatus>();
+    for (OperationStatus val : values()) {
+      byName.put(val.name().toUpperCase(Locale.ENGLISH), val);
+      if (val.allowSet()) {
+        persistable.add(val);
+      }
+    }
+    VALUES_BY_NAME = byName;
+    PERSISTABLE_VALUES = Collections.unmodifiableList(persistable);
+
+    Map<OperationStatus, Set<OperationStatus>> transitions =
+        new EnumMap<OperationStatus, Set<OperationStatus>>(OperationStatus.class);
+    transitions.put(NONE, EnumSet.of(QUEUED, IN_PROGRESS, SKIPPED, EXCLUDED));
+    transitions.put(QUEUED, EnumSet.of(IN_PROGRESS, ABORTED, SKIPPED, EXCLUDED));
+    transitions.put(IN_PROGRESS, EnumSet.of(SUCCESSFUL, FAILED, ABORTED));
+    transitions.put(SUCCESSFUL, EnumSet.noneOf(OperationStatus.class));
+    // Failed and aborted work may be retried.
+    transitions.put(FAILED, EnumSet.of(QUEUED));
+    transitions.put(ABORTED, EnumSet.of(QUEUED));
+    transitions.put(SKIPPED, EnumSet.noneOf(OperationStatus.class));
+    transitions.put(EXCLUDED, EnumSet.noneOf(OperationStatus.class));
+    TRANSITIONS = transitions;
+  }
+
   private boolean allowSet;
   private boolean outstanding;
   private String counterName;
@@ -67,16 +115,21 @@ public enum OperationStatus {
   }
 
   /**
-   * @return All of the operation statuses that may be persisted in the data layer.
+   * Find out if a work item with this status may change to the given status.
+   * 
+   * @param status
+   * @return True if the change is valid.
+   */
+  public boolean canTransitionTo(OperationStatus status) {
+    return status != null && TRANSITIONS.get(this).contains(status);
+  }
+
+  /**
+   * @return All of the operation statuses that may be persisted in the data layer. The list is
+   *         shared and may not be modified.
    */
   public static List<OperationStatus> getPersistableValues() {
-    List<OperationStatus> vals = new ArrayList<OperationStatus>();
-    for (OperationStatus val : OperationStatus.values()) {
-      if (val.allowSet()) {
-        vals.add(val);
-      }
-    }
-    return vals;
+    return PERSISTABLE_VALUES;
   }
 
   /**
@@ -91,10 +144,9 @@ public enum OperationStatus {
    */
   public static OperationStatus get(String name, boolean throwIfInvalid) throws RSuiteException {
     if (StringUtils.isNotBlank(name)) {
-      for (OperationStatus val : OperationStatus.values()) {
-        if (val.name().equalsIgnoreCase(name)) {
-          return val;
-        }
+      OperationStatus val = VALUES_BY_NAME.get(name.toUpperCase(Locale.ENGLISH));
+      if (val != null) {
+        return val;
       }
     }
     if (throwIfInvalid) {
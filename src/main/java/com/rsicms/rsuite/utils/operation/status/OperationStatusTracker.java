@@ -0,0 +1,203 @@
+package com.rsicms.rsuite.utils.operation.status;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.reallysi.rsuite.api.RSuiteException;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.result.OperationStatusOperationResult;
+
+/**
+ * Tracks the status of many work items, such as the articles of a migration or delivery.
+ * <p>
+ * Status changes are atomic and validated by
+ * {@link OperationStatus#canTransitionTo(OperationStatus)}, e.g., QUEUED to IN_PROGRESS to
+ * SUCCESSFUL, FAILED or ABORTED. The number of items in each status is maintained as items change,
+ * so counts don't require a scan. Thread-safe.
+ * 
+ * @param <K> The type of work item identifiers.
+ */
+public class OperationStatusTracker<K> {
+
+  private final ConcurrentMap<K, OperationStatus> statuses =
+      new ConcurrentHashMap<K, OperationStatus>();
+
+  /**
+   * Number of items per status, indexed by ordinal.
+   */
+  private final AtomicIntegerArray counts =
+      new AtomicIntegerArray(OperationStatus.values().length);
+
+  /**
+   * Start tracking a work item.
+   * 
+   * @param item
+   * @param status The item's initial status.
+   * @return True if the item was added; false if it was already tracked.
+   */
+  public boolean add(K item, OperationStatus status) {
+    if (statuses.putIfAbsent(item, status) == null) {
+      counts.incrementAndGet(status.ordinal());
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Start tracking a work item as queued.
+   * 
+   * @param item
+   * @return True if the item was added; false if it was already tracked.
+   */
+  public boolean add(K item) {
+    return add(item, OperationStatus.QUEUED);
+  }
+
+  /**
+   * Stop tracking a work item.
+   * 
+   * @param item
+   * @return The item's last status, or null if it wasn't tracked.
+   */
+  public OperationStatus remove(K item) {
+    OperationStatus status = statuses.remove(item);
+    if (status != null) {
+      counts.decrementAndGet(status.ordinal());
+    }
+    return status;
+  }
+
+  /**
+   * @param item
+   * @return The item's status, or null if it isn't tracked.
+   */
+  public OperationStatus getStatus(K item) {
+    return statuses.get(item);
+  }
+
+  /**
+   * Change a work item's status, if it currently has the expected status.
+   * 
+   * @param item
+   * @param expected
+   * @param status
+   * @return True if changed; false if the item's status isn't the expected one.
+   * @throws RSuiteException Thrown if the expected status may not change to the given status.
+   */
+  public boolean transition(K item, OperationStatus expected, OperationStatus status)
+      throws RSuiteException {
+    if (!expected.canTransitionTo(status)) {
+      throw newInvalidTransitionException(item, expected, status);
+    }
+    if (statuses.replace(item, expected, status)) {
+      counts.decrementAndGet(expected.ordinal());
+      counts.incrementAndGet(status.ordinal());
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Change a work item's status from whatever it currently is.
+   * 
+   * @param item
+   * @param status
+   * @return The item's previous status.
+   * @throws RSuiteException Thrown if the item isn't tracked, or its current status may not change
+   *         to the given status.
+   */
+  public OperationStatus transition(K item, OperationStatus status) throws RSuiteException {
+    while (true) {
+      OperationStatus current = statuses.get(item);
+      if (current == null) {
+        throw new RSuiteException(RSuiteException.ERROR_PARAM_INVALID,
+            OperationMessageProperties.get("operation.status.error.unknown.item", item));
+      }
+      if (transition(item, current, status)) {
+        return current;
+      }
+    }
+  }
+
+  /**
+   * @param status
+   * @return The number of items with the given status.
+   */
+  public int getCount(OperationStatus status) {
+    return counts.get(status.ordinal());
+  }
+
+  /**
+   * @return The number of items queued or in progress.
+   */
+  public int getOutstandingCount() {
+    int cnt = 0;
+    for (OperationStatus status : OperationStatus.values()) {
+      if (status.isOutstanding()) {
+        cnt += counts.get(status.ordinal());
+      }
+    }
+    return cnt;
+  }
+
+  /**
+   * @return The number of items per status, keyed by the status' counter name, in declaration
+   *         order.
+   * @see OperationStatus#getCounterName()
+   */
+  public Map<String, Integer> getCountsByCounterName() {
+    Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+    for (OperationStatus status : OperationStatus.values()) {
+      map.put(status.getCounterName(), counts.get(status.ordinal()));
+    }
+    return map;
+  }
+
+  /**
+   * Add the number of items per status to an operation result's status counters.
+   * 
+   * @param opResult
+   */
+  public void addCountsTo(OperationStatusOperationResult opResult) {
+    for (OperationStatus status : OperationStatus.values()) {
+      int cnt = counts.get(status.ordinal());
+      if (cnt > 0) {
+        opResult.incrementCount(status, cnt);
+      }
+    }
+  }
+
+  /**
+   * @param status
+   * @return The items with the given status, as of some point during the call.
+   */
+  public List<K> getItems(OperationStatus status) {
+    List<K> items = new ArrayList<K>();
+    for (Map.Entry<K, OperationStatus> entry : statuses.entrySet()) {
+      if (entry.getValue() == status) {
+        items.add(entry.getKey());
+      }
+    }
+    return items;
+  }
+
+  /**
+   * @return The number of items tracked.
+   */
+  public int size() {
+    return statuses.size();
+  }
+
+  private RSuiteException newInvalidTransitionException(K item, OperationStatus from,
+      OperationStatus to) {
+    return new RSuiteException(RSuiteException.ERROR_PARAM_INVALID,
+        OperationMessageProperties.get("operation.status.error.invalid.transition", item,
+            from == null ? null : from.getDisplayName(), to == null ? null : to.getDisplayName()));
+  }
+
+}
@@ -0,0 +1,30 @@
+package com.rsicms.rsuite.utils.operation.traversal;
+
+import com.reallysi.rsuite.api.ContentAssemblyItem;
+import com.reallysi.rsuite.api.ContentAssemblyNodeContainer;
+import com.reallysi.rsuite.api.RSuiteException;
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+
+/**
+ * Processes the items of a content assembly tree, for a <code>ContainerTraversal</code>.
+ * <p>
+ * Called concurrently, for different items, by the threads of a fork/join pool; implementations
+ * are to be thread-safe. Each call is given the result of the task it runs in, which no other
+ * thread uses meanwhile; record counts, messages and assets there. The operation's
+ * <code>OperationContext</code> is bound during each call.
+ */
+public interface ContainerItemProcessor {
+
+  /**
+   * Process an item, such as a managed object reference or a container.
+   * 
+   * @param item
+   * @param parent The container the item is in; null for the root.
+   * @param result The result to record into.
+   * @return True to descend into the item, when it's a container or a reference to one.
+   * @throws RSuiteException Recorded as a failure against the item, which is not descended into.
+   */
+  boolean process(ContentAssemblyItem item, ContentAssemblyNodeContainer parent,
+      BaseOperationResult result) throws RSuiteException;
+
+}
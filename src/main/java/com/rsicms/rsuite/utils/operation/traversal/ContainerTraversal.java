@@ -0,0 +1,306 @@
+package com.rsicms.rsuite.utils.operation.traversal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+import com.reallysi.rsuite.api.ContentAssemblyItem;
+import com.reallysi.rsuite.api.ContentAssemblyNodeContainer;
+import com.reallysi.rsuite.api.ContentAssemblyReference;
+import com.reallysi.rsuite.api.RSuiteException;
+import com.reallysi.rsuite.api.User;
+import com.reallysi.rsuite.api.extensions.ExecutionContext;
+import com.rsicms.rsuite.utils.operation.OperationContext;
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+import com.rsicms.rsuite.utils.operation.result.ContainerOperationResult;
+
+/**
+ * Walks the content assembly tree of a <code>ContainerOperationResult</code>'s container,
+ * processing each item in parallel on a fork/join pool.
+ * <p>
+ * Each container's children are split into batches, and each container descended into is a task
+ * of its own, so sub-trees are spread across the pool's threads. Every batch records into its own
+ * sub-result of the operation's result, logging through the operation's logger; the threads never
+ * share a result. The sub-results are merged into the operation's result once the traversal
+ * completes. The processor runs with the operation's context bound. Calls to the repository,
+ * being the processor's and the retrieval of children, are limited to a maximum number at a time.
+ * <p>
+ * A container reached more than once, such as through two references, is only descended into the
+ * first time. The traversal stops early when the operation's cancellation is requested.
+ */
+public class ContainerTraversal {
+
+  /**
+   * Containers with more children than this are split into batches, by default.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 32;
+
+  private final ForkJoinPool pool;
+
+  private final Semaphore repositoryCalls;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * @param pool The pool to run the traversal on.
+   * @param maxRepositoryCalls The most calls to the repository at a time.
+   */
+  public ContainerTraversal(ForkJoinPool pool, int maxRepositoryCalls) {
+    this.pool = pool;
+    this.repositoryCalls = new Semaphore(Math.max(1, maxRepositoryCalls));
+  }
+
+  /**
+   * @param batchSize The most children processed by one task.
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Process the result's container and, where the processor asks to, descend into its items,
+   * recording into the result. Waits for the traversal to complete.
+   * 
+   * @param context
+   * @param user
+   * @param opResult Whose container is the root of the traversal.
+   * @param processor
+   * @throws RSuiteException Thrown if the result's container can't be resolved.
+   */
+  public void traverse(ExecutionContext context, User user, ContainerOperationResult opResult,
+      ContainerItemProcessor processor) throws RSuiteException {
+    ContentAssemblyNodeContainer root = opResult.resolveContainer();
+    if (root == null) {
+      throw new RSuiteException(RSuiteException.ERROR_PARAM_INVALID,
+          OperationMessageProperties.get("traversal.error.no.container"));
+    }
+    Traversal traversal = new Traversal(context, user, opResult, processor);
+    try {
+      pool.invoke(traversal.new RootTask(root));
+    } finally {
+      // Keep what was recorded, should the traversal have failed.
+      for (BaseOperationResult result : traversal.results) {
+        opResult.mergeSubResult(result);
+      }
+    }
+  }
+
+  /**
+   * The state of one traversal, shared by its tasks.
+   */
+  private class Traversal {
+
+    final ExecutionContext context;
+
+    final User user;
+
+    final ContainerOperationResult opResult;
+
+    final ContainerItemProcessor processor;
+
+    final OperationContext operationContext;
+
+    /**
+     * The results recorded into by the tasks, to be merged into the operation's.
+     */
+    final Queue<BaseOperationResult> results = new ConcurrentLinkedQueue<BaseOperationResult>();
+
+    /**
+     * The IDs of the containers descended into.
+     */
+    final Set<String> visited =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    Traversal(ExecutionContext context, User user, ContainerOperationResult opResult,
+        ContainerItemProcessor processor) {
+      this.context = context;
+      this.user = user;
+      this.opResult = opResult;
+      this.processor = processor;
+      this.operationContext = OperationContext.of(opResult);
+    }
+
+    BaseOperationResult newResult() {
+      BaseOperationResult result = opResult.newSubResult();
+      results.add(result);
+      return result;
+    }
+
+    /**
+     * Process an item, recording a failure against it, including an unexpected exception.
+     * 
+     * @return True to descend into the item.
+     */
+    boolean process(ContentAssemblyItem item, ContentAssemblyNodeContainer parent,
+        BaseOperationResult result) {
+      repositoryCalls.acquireUninterruptibly();
+      try (OperationContext.Scope scope = operationContext.bind()) {
+        return processor.process(item, parent, result);
+      } catch (RSuiteException e) {
+        result.addFailure(item.getId(), e);
+        return false;
+      } catch (RuntimeException e) {
+        result.addFailure(item.getId(), e);
+        return false;
+      } finally {
+        repositoryCalls.release();
+      }
+    }
+
+    /**
+     * Get the container to descend into for an item, retrieving a referenced one.
+     * 
+     * @return The container, or null if it's none or was already descended into.
+     */
+    ContentAssemblyNodeContainer toContainer(ContentAssemblyItem item, BaseOperationResult result) {
+      ContentAssemblyNodeContainer container = null;
+      if (item instanceof ContentAssemblyNodeContainer) {
+        container = (ContentAssemblyNodeContainer) item;
+      } else if (item instanceof ContentAssemblyReference) {
+        repositoryCalls.acquireUninterruptibly();
+        try {
+          container = context.getContentAssemblyService().getContentAssemblyNodeContainer(user,
+              ((ContentAssemblyReference) item).getTargetId());
+        } catch (RSuiteException e) {
+          result.addFailure(item.getId(), e);
+        } catch (RuntimeException e) {
+          result.addFailure(item.getId(), e);
+        } finally {
+          repositoryCalls.release();
+        }
+      }
+      return container != null && visited.add(container.getId()) ? container : null;
+    }
+
+    /**
+     * @return The container's children, or null if they can't be retrieved.
+     */
+    List<? extends ContentAssemblyItem> getChildren(ContentAssemblyNodeContainer container,
+        BaseOperationResult result) {
+      repositoryCalls.acquireUninterruptibly();
+      try {
+        return container.getChildrenObjects();
+      } catch (RSuiteException e) {
+        result.addFailure(container.getId(), e);
+        return null;
+      } catch (RuntimeException e) {
+        result.addFailure(container.getId(), e);
+        return null;
+      } finally {
+        repositoryCalls.release();
+      }
+    }
+
+    /**
+     * Processes the root, then descends into it.
+     */
+    class RootTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final ContentAssemblyNodeContainer root;
+
+      RootTask(ContentAssemblyNodeContainer root) {
+        this.root = root;
+      }
+
+      @Override
+      protected void compute() {
+        visited.add(root.getId());
+        if (process(root, null, newResult()) && !opResult.isCancellationRequested()) {
+          new ContainerTask(root).compute();
+        }
+      }
+
+    }
+
+    /**
+     * Processes a container's children.
+     */
+    class ContainerTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final ContentAssemblyNodeContainer container;
+
+      ContainerTask(ContentAssemblyNodeContainer container) {
+        this.container = container;
+      }
+
+      @Override
+      protected void compute() {
+        BaseOperationResult result = opResult.newSubResult();
+        List<? extends ContentAssemblyItem> children = getChildren(container, result);
+        if (children == null) {
+          results.add(result);
+        } else if (!children.isEmpty()) {
+          new ItemsTask(container, children, 0, children.size()).compute();
+        }
+      }
+
+    }
+
+    /**
+     * Processes a range of a container's children, splitting it when larger than the batch size.
+     */
+    class ItemsTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final ContentAssemblyNodeContainer parent;
+
+      private final List<? extends ContentAssemblyItem> items;
+
+      private final int from;
+
+      private final int to;
+
+      ItemsTask(ContentAssemblyNodeContainer parent, List<? extends ContentAssemblyItem> items,
+          int from, int to) {
+        this.parent = parent;
+        this.items = items;
+        this.from = from;
+        this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+        if (to - from > batchSize) {
+          int middle = (from + to) >>> 1;
+          ItemsTask second = new ItemsTask(parent, items, middle, to);
+          second.fork();
+          new ItemsTask(parent, items, from, middle).compute();
+          second.join();
+          return;
+        }
+        BaseOperationResult result = newResult();
+        List<ContainerTask> subtrees = new ArrayList<ContainerTask>();
+        for (int i = from; i < to && !opResult.isCancellationRequested(); i++) {
+          ContentAssemblyItem item = items.get(i);
+          if (process(item, parent, result)) {
+            ContentAssemblyNodeContainer container = toContainer(item, result);
+            if (container != null) {
+              ContainerTask subtree = new ContainerTask(container);
+              subtree.fork();
+              subtrees.add(subtree);
+            }
+          }
+        }
+        for (ContainerTask subtree : subtrees) {
+          subtree.join();
+        }
+      }
+
+    }
+
+  }
+
+}
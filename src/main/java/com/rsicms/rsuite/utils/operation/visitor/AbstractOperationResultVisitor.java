@@ -0,0 +1,47 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.util.List;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageGroup;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * An <code>OperationResultVisitor</code> that ignores every callback. Extend it and override the
+ * callbacks of interest.
+ */
+public abstract class AbstractOperationResultVisitor implements OperationResultVisitor {
+
+  @Override
+  public void visitStart(OperationResult opResult) {}
+
+  @Override
+  public void visitOverview(OperationResult opResult) {}
+
+  @Override
+  public void visitCounters(OperationResult opResult, List<String> counterNames) {}
+
+  @Override
+  public void visitTimers(OperationResult opResult, List<String> timerNames) {}
+
+  @Override
+  public void visitTransactions(OperationResult opResult, List<Transaction> transactions) {}
+
+  @Override
+  public void startMessages(OperationResult opResult) {}
+
+  @Override
+  public void visitMessage(ProcessMessage message, MessageType messageType) {}
+
+  @Override
+  public void endMessages(OperationResult opResult) {}
+
+  @Override
+  public void visitMessageGroups(OperationResult opResult, List<MessageGroup> groups) {}
+
+  @Override
+  public void visitEnd(OperationResult opResult) {}
+
+}
@@ -0,0 +1,64 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.io.PrintWriter;
+
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Used to generate a CSV representation of an <code>OperationResult</code>. Each row has the
+ * columns Record, Name, Value, Timestamp, Label and Text; rows are written as they are visited.
+ */
+public class CsvFormattingOperationResultVisitor extends TabularFormattingOperationResultVisitor {
+
+  protected PrintWriter writer;
+
+  public CsvFormattingOperationResultVisitor(PrintWriter writer) {
+    this.writer = writer;
+  }
+
+  @Override
+  public void visitEnd(OperationResult opResult) {
+    writer.flush();
+  }
+
+  @Override
+  protected void writeRow(String... values) {
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        writer.append(',');
+      }
+      appendField(values[i]);
+    }
+    writer.append("\r\n");
+  }
+
+  /**
+   * Append a field, quoting it when it contains a delimiter, quote or line break.
+   * 
+   * @param value
+   */
+  protected void appendField(String value) {
+    if (value == null) {
+      return;
+    }
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      writer.append(value);
+      return;
+    }
+    writer.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        writer.append('"');
+      }
+      writer.append(c);
+    }
+    writer.append('"');
+  }
+
+}
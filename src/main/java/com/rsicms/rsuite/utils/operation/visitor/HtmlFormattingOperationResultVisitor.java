@@ -9,12 +9,16 @@ import org.apache.commons.lang.StringUtils;
 
 import com.rsicms.rsuite.helpers.messages.ProcessMessage;
 import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageGroup;
 import com.rsicms.rsuite.utils.operation.result.OperationResult;
 
 /**
  * Used to generate an HTML representation of an <code>OperationResult</code>.
+ * <p>
+ * Either call {@link #visit(OperationResult)}, or include this visitor in a
+ * {@link TeeOperationResultVisitor} to produce the HTML alongside other outputs.
  */
-public class HtmlFormattingOperationResultVisitor {
+public class HtmlFormattingOperationResultVisitor extends AbstractOperationResultVisitor {
 
   protected PrintWriter writer;
 
@@ -28,6 +32,8 @@ public class HtmlFormattingOperationResultVisitor {
 
   protected SimpleDateFormat timestampFormatterDetails = DEFAULT_TIMESTAMP_FORMATTER_DETAILS;
 
+  protected boolean aggregateMessages;
+
   public HtmlFormattingOperationResultVisitor(PrintWriter writer) {
     this.writer = writer;
   }
@@ -40,13 +46,57 @@ public class HtmlFormattingOperationResultVisitor {
     this.timestampFormatterDetails = timestampFormatter;
   }
 
+  /**
+   * @param aggregateMessages When true, {@link #visit(OperationResult)} renders the message groups
+   *        rather than every message.
+   */
+  public void setAggregateMessages(boolean aggregateMessages) {
+    this.aggregateMessages = aggregateMessages;
+  }
+
   public void visit(OperationResult opResult) {
+    opResult.accept(this, aggregateMessages);
+  }
+
+  @Override
+  public void visitStart(OperationResult opResult) {
     writer.append("<html>");
     addHead(opResult, writer);
     writer.append("<body>");
+  }
+
+  @Override
+  public void visitOverview(OperationResult opResult) {
     addOverview(opResult, writer, timestampFormatterOverview);
+  }
+
+  @Override
+  public void visitCounters(OperationResult opResult, List<String> counterNames) {
     addCounters(opResult, writer);
-    addDetails(opResult, writer, timestampFormatterDetails);
+  }
+
+  @Override
+  public void startMessages(OperationResult opResult) {
+    startDetails(writer);
+  }
+
+  @Override
+  public void visitMessage(ProcessMessage message, MessageType messageType) {
+    addDetail(message, messageType, writer, timestampFormatterDetails);
+  }
+
+  @Override
+  public void endMessages(OperationResult opResult) {
+    endDetails(writer);
+  }
+
+  @Override
+  public void visitMessageGroups(OperationResult opResult, List<MessageGroup> groups) {
+    addSummary(groups, writer, timestampFormatterDetails);
+  }
+
+  @Override
+  public void visitEnd(OperationResult opResult) {
     writer.append("</body></html>");
   }
 
@@ -100,19 +150,58 @@ public class HtmlFormattingOperationResultVisitor {
 
   protected static void addDetails(OperationResult opResult, PrintWriter writer,
       SimpleDateFormat timestampFormatter) {
+    startDetails(writer);
+    for (ProcessMessage message : opResult.getAllMessages()) {
+      addDetail(message, MessageType.get(message.getClass()), writer, timestampFormatter);
+    }
+    endDetails(writer);
+  }
+
+  protected static void startDetails(PrintWriter writer) {
     writer.append("<h4>Details</h4>").append("<table>")
         .append(
             "<colgroup><col class='msgCol1'><col class='msgCol2'><col class='msgCol3'></colgroup>")
         .append("<tbody>\n");
-    for (ProcessMessage message : opResult.getAllMessages()) {
-      MessageType messageType = MessageType.get(message.getClass());
-      Date timestamp = message.getTimestamp();
-      writer.append("<tr class='").append(getMessageRowClass(messageType)).append("'>")
-          .append("<td>").append(timestampFormatter.format(timestamp)).append("</td><td>")
-          .append(messageType.getLabel().toUpperCase()).append("</td><td>")
-          .append(message.getMessageText()).append("</td></tr>\n");
-    }
+  }
 
+  protected static void addDetail(ProcessMessage message, MessageType messageType,
+      PrintWriter writer, SimpleDateFormat timestampFormatter) {
+    Date timestamp = message.getTimestamp();
+    writer.append("<tr class='").append(getMessageRowClass(messageType)).append("'>")
+        .append("<td>").append(timestampFormatter.format(timestamp)).append("</td><td>")
+        .append(messageType.getLabel().toUpperCase()).append("</td><td>")
+        .append(message.getMessageText()).append("</td></tr>\n");
+  }
+
+  protected static void endDetails(PrintWriter writer) {
+    writer.append("</tbody></table>");
+  }
+
+  protected static void addSummary(List<MessageGroup> groups, PrintWriter writer,
+      SimpleDateFormat timestampFormatter) {
+    writer.append("<h4>Summary</h4>").append("<table><tbody>\n")
+        .append("<tr><th>Count</th><th>Type</th><th>First</th><th>Last</th><th>Label</th>")
+        .append("<th>Message</th><th>Examples</th></tr>\n");
+    for (MessageGroup group : groups) {
+      writer.append("<tr class='").append(getMessageRowClass(group.getMessageType())).append("'>")
+          .append("<td>").append(String.valueOf(group.getCount())).append("</td><td>")
+          .append(group.getMessageType().getLabel().toUpperCase()).append("</td><td>")
+          .append(group.getFirstOccurrence() == null ? StringUtils.EMPTY
+              : timestampFormatter.format(group.getFirstOccurrence()))
+          .append("</td><td>").append(group.getLastOccurrence() == null ? StringUtils.EMPTY
+              : timestampFormatter.format(group.getLastOccurrence()))
+          .append("</td><td>").append(StringUtils.defaultString(group.getLabel()))
+          .append("</td><td>").append(group.getTemplate()).append("</td><td>");
+      boolean first = true;
+      for (List<String> arguments : group.getSampleArguments()) {
+        if (!first) {
+          writer.append("<br/>");
+        }
+        first = false;
+        writer.append(arguments.toString());
+      }
+      writer.append("</td></tr>\n");
+    }
     writer.append("</tbody></table>");
   }
 
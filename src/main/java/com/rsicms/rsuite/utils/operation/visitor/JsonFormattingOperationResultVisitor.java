@@ -0,0 +1,264 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageGroup;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Used to generate a JSON representation of an <code>OperationResult</code>. Messages are written
+ * as they are visited.
+ */
+public class JsonFormattingOperationResultVisitor extends AbstractOperationResultVisitor {
+
+  protected PrintWriter writer;
+
+  protected SimpleDateFormat timestampFormatter =
+      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+  protected boolean aggregateMessages;
+
+  private boolean firstMessage;
+
+  public JsonFormattingOperationResultVisitor(PrintWriter writer) {
+    this.writer = writer;
+  }
+
+  public void setTimestampFormatter(SimpleDateFormat timestampFormatter) {
+    this.timestampFormatter = timestampFormatter;
+  }
+
+  /**
+   * @param aggregateMessages When true, {@link #visit(OperationResult)} writes the message groups
+   *        rather than every message.
+   */
+  public void setAggregateMessages(boolean aggregateMessages) {
+    this.aggregateMessages = aggregateMessages;
+  }
+
+  public void visit(OperationResult opResult) {
+    opResult.accept(this, aggregateMessages);
+  }
+
+  @Override
+  public void visitStart(OperationResult opResult) {
+    writer.append('{');
+  }
+
+  @Override
+  public void visitOverview(OperationResult opResult) {
+    writer.append("\"operationId\":");
+    appendString(opResult.getOperationId());
+    writer.append(",\"description\":");
+    appendString(opResult.getDefaultLabel());
+    writer.append(",\"start\":");
+    appendDate(opResult.getStartOfOperation());
+    writer.append(",\"end\":");
+    appendDate(opResult.getEndOfOperation());
+    writer.append(",\"durationInSeconds\":")
+        .append(String.valueOf(opResult.getOperationDurationInSecondsQuietly()));
+  }
+
+  @Override
+  public void visitCounters(OperationResult opResult, List<String> counterNames) {
+    writer.append(",\"counters\":{");
+    if (counterNames != null) {
+      boolean first = true;
+      for (String counterName : counterNames) {
+        if (!first) {
+          writer.append(',');
+        }
+        first = false;
+        appendString(counterName);
+        writer.append(':').append(String.valueOf(opResult.getCount(counterName)));
+      }
+    }
+    writer.append('}');
+  }
+
+  @Override
+  public void visitTimers(OperationResult opResult, List<String> timerNames) {
+    writer.append(",\"timersInMilliseconds\":{");
+    boolean first = true;
+    for (String timerName : timerNames) {
+      if (!first) {
+        writer.append(',');
+      }
+      first = false;
+      appendString(timerName);
+      writer.append(':').append(String.valueOf(opResult.getElapsedTimeInMilliseconds(timerName)));
+    }
+    writer.append('}');
+  }
+
+  @Override
+  public void visitTransactions(OperationResult opResult, List<Transaction> transactions) {
+    writer.append(",\"transactions\":[");
+    boolean first = true;
+    for (Transaction transaction : transactions) {
+      if (!first) {
+        writer.append(',');
+      }
+      first = false;
+      writer.append("{\"rollbackRequested\":")
+          .append(String.valueOf(transaction.wasRollbackRequested()));
+      writer.append(",\"newAssets\":");
+      appendMap(transaction.getAssetsLoaded());
+      writer.append(",\"updatedAssets\":");
+      appendMap(transaction.getUpdatedAssets());
+      writer.append(",\"newAssetsRolledBack\":");
+      appendMap(transaction.getNewAssetsRolledBack());
+      writer.append(",\"updatedAssetsRolledBack\":");
+      appendMap(transaction.getUpdatedAssetsRolledBack());
+      writer.append('}');
+    }
+    writer.append(']');
+  }
+
+  @Override
+  public void startMessages(OperationResult opResult) {
+    writer.append(",\"messages\":[");
+    firstMessage = true;
+  }
+
+  @Override
+  public void visitMessage(ProcessMessage message, MessageType messageType) {
+    if (!firstMessage) {
+      writer.append(',');
+    }
+    firstMessage = false;
+    writer.append("\n{\"timestamp\":");
+    appendDate(message.getTimestamp());
+    writer.append(",\"type\":");
+    appendString(messageType.getLabel());
+    writer.append(",\"label\":");
+    appendString(message.getTargetObjectLabel());
+    writer.append(",\"text\":");
+    appendString(message.getMessageText());
+    writer.append('}');
+  }
+
+  @Override
+  public void endMessages(OperationResult opResult) {
+    writer.append(']');
+  }
+
+  @Override
+  public void visitMessageGroups(OperationResult opResult, List<MessageGroup> groups) {
+    writer.append(",\"messageGroups\":[");
+    boolean first = true;
+    for (MessageGroup group : groups) {
+      if (!first) {
+        writer.append(',');
+      }
+      first = false;
+      writer.append("\n{\"count\":").append(String.valueOf(group.getCount()));
+      writer.append(",\"type\":");
+      appendString(group.getMessageType().getLabel());
+      writer.append(",\"label\":");
+      appendString(group.getLabel());
+      writer.append(",\"template\":");
+      appendString(group.getTemplate());
+      writer.append(",\"first\":");
+      appendDate(group.getFirstOccurrence());
+      writer.append(",\"last\":");
+      appendDate(group.getLastOccurrence());
+      writer.append(",\"sampleArguments\":[");
+      boolean firstSample = true;
+      for (List<String> arguments : group.getSampleArguments()) {
+        if (!firstSample) {
+          writer.append(',');
+        }
+        firstSample = false;
+        writer.append('[');
+        for (int i = 0; i < arguments.size(); i++) {
+          if (i > 0) {
+            writer.append(',');
+          }
+          appendString(arguments.get(i));
+        }
+        writer.append(']');
+      }
+      writer.append("]}");
+    }
+    writer.append(']');
+  }
+
+  @Override
+  public void visitEnd(OperationResult opResult) {
+    writer.append("}\n");
+  }
+
+  protected void appendDate(Date date) {
+    if (date == null) {
+      writer.append("null");
+    } else {
+      appendString(timestampFormatter.format(date));
+    }
+  }
+
+  protected void appendMap(Map<String, String> map) {
+    writer.append('{');
+    if (map != null) {
+      boolean first = true;
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        if (!first) {
+          writer.append(',');
+        }
+        first = false;
+        appendString(entry.getKey());
+        writer.append(':');
+        appendString(entry.getValue());
+      }
+    }
+    writer.append('}');
+  }
+
+  /**
+   * Append a quoted and escaped JSON string, or null.
+   * 
+   * @param value
+   */
+  protected void appendString(String value) {
+    if (value == null) {
+      writer.append("null");
+      return;
+    }
+    writer.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          writer.append("\\\"");
+          break;
+        case '\\':
+          writer.append("\\\\");
+          break;
+        case '\n':
+          writer.append("\\n");
+          break;
+        case '\r':
+          writer.append("\\r");
+          break;
+        case '\t':
+          writer.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            writer.append(String.format("\\u%04x", (int) c));
+          } else {
+            writer.append(c);
+          }
+      }
+    }
+    writer.append('"');
+  }
+
+}
@@ -0,0 +1,57 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.log.OperationLogger;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Writes an <code>OperationResult</code> to a log: the overview and counters at info level, and
+ * each message at the level matching its type.
+ */
+public class LoggingOperationResultVisitor extends AbstractOperationResultVisitor {
+
+  protected OperationLogger opLogger;
+
+  public LoggingOperationResultVisitor(Log log) {
+    this.opLogger = new OperationLogger(log);
+  }
+
+  public void visit(OperationResult opResult) {
+    opResult.accept(this);
+  }
+
+  @Override
+  public void visitOverview(OperationResult opResult) {
+    opLogger.setOpId(opResult.getOperationId());
+    opLogger.info("{}: duration in seconds: {}; {}", opResult.getDefaultLabel(),
+        opResult.getOperationDurationInSecondsQuietly(), opResult.getExecutiveSummary());
+  }
+
+  @Override
+  public void visitCounters(OperationResult opResult, List<String> counterNames) {
+    if (counterNames != null) {
+      for (String counterName : counterNames) {
+        opLogger.info("Counter {}: {}", counterName, opResult.getCount(counterName));
+      }
+    }
+  }
+
+  @Override
+  public void visitMessage(ProcessMessage message, MessageType messageType) {
+    if (MessageType.FAILURE == messageType) {
+      opLogger.error(message.getMessageText(), null);
+    } else if (MessageType.WARNING == messageType) {
+      opLogger.warn(message.getMessageText(), null);
+    } else if (MessageType.INFO == messageType) {
+      opLogger.info(message.getMessageText(), null);
+    } else {
+      opLogger.debug(message.getMessageText(), null);
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.util.List;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageGroup;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Receives callbacks while an <code>OperationResult</code> is walked by
+ * {@link OperationResult#accept(OperationResultVisitor)}. The callbacks are made in the order they
+ * are declared, and {@link #visitMessage(ProcessMessage, MessageType)} is called once per message,
+ * in the order the messages were added. When the result is walked with message aggregation, a
+ * single {@link #visitMessageGroups(OperationResult, List)} callback replaces the message
+ * callbacks.
+ * <p>
+ * Use {@link TeeOperationResultVisitor} to produce several outputs in a single pass.
+ */
+public interface OperationResultVisitor {
+
+  void visitStart(OperationResult opResult);
+
+  void visitOverview(OperationResult opResult);
+
+  void visitCounters(OperationResult opResult, List<String> counterNames);
+
+  void visitTimers(OperationResult opResult, List<String> timerNames);
+
+  void visitTransactions(OperationResult opResult, List<Transaction> transactions);
+
+  void startMessages(OperationResult opResult);
+
+  /**
+   * Visit one message.
+   * 
+   * @param message
+   * @param messageType The message's type, determined once for all visitors.
+   */
+  void visitMessage(ProcessMessage message, MessageType messageType);
+
+  void endMessages(OperationResult opResult);
+
+  /**
+   * Visit the message groups, instead of each message.
+   * 
+   * @param opResult
+   * @param groups The message groups, largest first.
+   */
+  void visitMessageGroups(OperationResult opResult, List<MessageGroup> groups);
+
+  void visitEnd(OperationResult opResult);
+
+}
@@ -0,0 +1,34 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+/**
+ * The formats an <code>OperationResult</code> may be exported to as a table.
+ */
+public enum TabularFormat {
+
+  /**
+   * Comma-separated values, per RFC 4180.
+   */
+  CSV("text/csv; charset=UTF-8", ".csv"),
+
+  /**
+   * An Excel workbook.
+   */
+  XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", ".xlsx");
+
+  private String contentType;
+  private String fileExtension;
+
+  private TabularFormat(String contentType, String fileExtension) {
+    this.contentType = contentType;
+    this.fileExtension = fileExtension;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public String getFileExtension() {
+    return fileExtension;
+  }
+
+}
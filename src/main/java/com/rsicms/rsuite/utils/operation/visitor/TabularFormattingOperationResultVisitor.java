@@ -0,0 +1,115 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageGroup;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Used to generate a tabular representation of an <code>OperationResult</code>. Each row has the
+ * columns Record, Name, Value, Timestamp, Label and Text; rows are written as they are visited, so
+ * memory use doesn't grow with the number of messages. Subclasses write the rows in their format.
+ */
+public abstract class TabularFormattingOperationResultVisitor
+    extends AbstractOperationResultVisitor {
+
+  protected SimpleDateFormat timestampFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+  protected boolean aggregateMessages;
+
+  public void setTimestampFormatter(SimpleDateFormat timestampFormatter) {
+    this.timestampFormatter = timestampFormatter;
+  }
+
+  /**
+   * @param aggregateMessages When true, {@link #visit(OperationResult)} writes a row per message
+   *        group rather than per message.
+   */
+  public void setAggregateMessages(boolean aggregateMessages) {
+    this.aggregateMessages = aggregateMessages;
+  }
+
+  public void visit(OperationResult opResult) {
+    opResult.accept(this, aggregateMessages);
+  }
+
+  @Override
+  public void visitStart(OperationResult opResult) {
+    writeRow("Record", "Name", "Value", "Timestamp", "Label", "Text");
+  }
+
+  @Override
+  public void visitOverview(OperationResult opResult) {
+    writeRow("overview", "operationId", opResult.getOperationId(), null, null, null);
+    writeRow("overview", "description", opResult.getDefaultLabel(), null, null, null);
+    writeRow("overview", "start", null, format(opResult.getStartOfOperation()), null, null);
+    writeRow("overview", "end", null, format(opResult.getEndOfOperation()), null, null);
+    writeRow("overview", "durationInSeconds",
+        String.valueOf(opResult.getOperationDurationInSecondsQuietly()), null, null, null);
+  }
+
+  @Override
+  public void visitCounters(OperationResult opResult, List<String> counterNames) {
+    if (counterNames != null) {
+      for (String counterName : counterNames) {
+        writeRow("counter", counterName, String.valueOf(opResult.getCount(counterName)), null,
+            null, null);
+      }
+    }
+  }
+
+  @Override
+  public void visitTimers(OperationResult opResult, List<String> timerNames) {
+    for (String timerName : timerNames) {
+      writeRow("timer", timerName,
+          String.valueOf(opResult.getElapsedTimeInMilliseconds(timerName)),
+          format(opResult.getTimerStart(timerName)), null, null);
+    }
+  }
+
+  @Override
+  public void visitTransactions(OperationResult opResult, List<Transaction> transactions) {
+    for (int i = 0; i < transactions.size(); i++) {
+      Transaction transaction = transactions.get(i);
+      String name = String.valueOf(i);
+      writeRow("transaction", name, String.valueOf(transaction.getAssetsLoaded().size()), null,
+          "newAssets", null);
+      writeRow("transaction", name, String.valueOf(transaction.getUpdatedAssets().size()), null,
+          "updatedAssets", null);
+      writeRow("transaction", name, String.valueOf(transaction.wasRollbackRequested()), null,
+          "rollbackRequested", null);
+    }
+  }
+
+  @Override
+  public void visitMessage(ProcessMessage message, MessageType messageType) {
+    writeRow("message", messageType.getLabel(), null, format(message.getTimestamp()),
+        message.getTargetObjectLabel(), message.getMessageText());
+  }
+
+  @Override
+  public void visitMessageGroups(OperationResult opResult, List<MessageGroup> groups) {
+    for (MessageGroup group : groups) {
+      writeRow("messageGroup", group.getMessageType().getLabel(),
+          String.valueOf(group.getCount()), format(group.getFirstOccurrence()), group.getLabel(),
+          group.getTemplate());
+    }
+  }
+
+  protected String format(Date date) {
+    return date == null ? null : timestampFormatter.format(date);
+  }
+
+  /**
+   * Write a row.
+   * 
+   * @param values The row's values, any of which may be null.
+   */
+  protected abstract void writeRow(String... values);
+
+}
@@ -0,0 +1,99 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.util.List;
+
+import com.rsicms.rsuite.helpers.messages.ProcessMessage;
+import com.rsicms.rsuite.utils.operation.MessageType;
+import com.rsicms.rsuite.utils.operation.Transaction;
+import com.rsicms.rsuite.utils.operation.aggregate.MessageGroup;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Feeds every callback to several visitors, such that multiple outputs (e.g., HTML, JSON, CSV and
+ * a log) are produced in one pass over the operation result's messages.
+ * <p>
+ * Visitors are called in the order given.
+ */
+public class TeeOperationResultVisitor implements OperationResultVisitor {
+
+  private final OperationResultVisitor[] visitors;
+
+  public TeeOperationResultVisitor(OperationResultVisitor... visitors) {
+    this.visitors = visitors.clone();
+  }
+
+  public TeeOperationResultVisitor(List<? extends OperationResultVisitor> visitors) {
+    this.visitors = visitors.toArray(new OperationResultVisitor[visitors.size()]);
+  }
+
+  @Override
+  public void visitStart(OperationResult opResult) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitStart(opResult);
+    }
+  }
+
+  @Override
+  public void visitOverview(OperationResult opResult) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitOverview(opResult);
+    }
+  }
+
+  @Override
+  public void visitCounters(OperationResult opResult, List<String> counterNames) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitCounters(opResult, counterNames);
+    }
+  }
+
+  @Override
+  public void visitTimers(OperationResult opResult, List<String> timerNames) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitTimers(opResult, timerNames);
+    }
+  }
+
+  @Override
+  public void visitTransactions(OperationResult opResult, List<Transaction> transactions) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitTransactions(opResult, transactions);
+    }
+  }
+
+  @Override
+  public void startMessages(OperationResult opResult) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.startMessages(opResult);
+    }
+  }
+
+  @Override
+  public void visitMessage(ProcessMessage message, MessageType messageType) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitMessage(message, messageType);
+    }
+  }
+
+  @Override
+  public void endMessages(OperationResult opResult) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.endMessages(opResult);
+    }
+  }
+
+  @Override
+  public void visitMessageGroups(OperationResult opResult, List<MessageGroup> groups) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitMessageGroups(opResult, groups);
+    }
+  }
+
+  @Override
+  public void visitEnd(OperationResult opResult) {
+    for (OperationResultVisitor visitor : visitors) {
+      visitor.visitEnd(opResult);
+    }
+  }
+
+}
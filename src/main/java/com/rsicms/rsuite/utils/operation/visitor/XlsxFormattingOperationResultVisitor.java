@@ -0,0 +1,321 @@
+package com.rsicms.rsuite.utils.operation.visitor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+
+/**
+ * Used to generate an Excel workbook (XLSX) representation of an <code>OperationResult</code>,
+ * with the same rows as {@link CsvFormattingOperationResultVisitor}.
+ * <p>
+ * The worksheet is written to the zip stream as rows are visited, using inline strings, so memory
+ * use doesn't grow with the number of messages. Should the rows exceed a worksheet's limit, they
+ * continue on another worksheet. The workbook is complete once {@link #visitEnd(OperationResult)}
+ * was called, and flushed to the given stream, which is not closed. Check {@link #checkError()}
+ * afterwards.
+ */
+public class XlsxFormattingOperationResultVisitor extends TabularFormattingOperationResultVisitor {
+
+  /**
+   * The most rows of a worksheet.
+   */
+  public static final int MAX_ROWS_PER_SHEET = 1048576;
+
+  /**
+   * The most characters of a cell; longer values are truncated.
+   */
+  public static final int MAX_CELL_LENGTH = 32767;
+
+  /**
+   * The most characters of a sheet name.
+   */
+  public static final int MAX_SHEET_NAME_LENGTH = 31;
+
+  public static final String DEFAULT_SHEET_NAME = "Operation Result";
+
+  private static final String XML_DECLARATION =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\r\n";
+
+  private static final String SPREADSHEETML_NS =
+      "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+  private static final String RELATIONSHIPS_NS =
+      "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  private static final String PACKAGE_RELATIONSHIPS_NS =
+      "http://schemas.openxmlformats.org/package/2006/relationships";
+
+  private final ZipOutputStream zip;
+
+  private final PrintWriter writer;
+
+  private final String sheetName;
+
+  private final List<String> sheetNames = new ArrayList<String>();
+
+  private int rowCount;
+
+  private boolean inSheet;
+
+  private boolean error;
+
+  /**
+   * @param out The stream to write the workbook to.
+   * @param sheetName The name of the worksheet, such as a request's tab name; adjusted to what
+   *        Excel accepts. Null for a default.
+   */
+  public XlsxFormattingOperationResultVisitor(OutputStream out, String sheetName) {
+    this.zip = new ZipOutputStream(new CloseShieldOutputStream(out));
+    this.writer = new PrintWriter(
+        new BufferedWriter(new OutputStreamWriter(zip, Charset.forName("UTF-8")), 8192));
+    this.sheetName = toSheetName(sheetName);
+  }
+
+  /**
+   * Adjust a name to one Excel accepts as a sheet name: without the characters it disallows, not
+   * blank and not too long.
+   * 
+   * @param name
+   * @return the sheet name.
+   */
+  public static String toSheetName(String name) {
+    if (name == null) {
+      return DEFAULT_SHEET_NAME;
+    }
+    StringBuilder sb = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if ("[]:*?/\\".indexOf(c) < 0 && !Character.isISOControl(c)) {
+        sb.append(c);
+      }
+    }
+    String sanitized = sb.toString().trim();
+    // A leading or trailing apostrophe isn't allowed either.
+    while (sanitized.startsWith("'")) {
+      sanitized = sanitized.substring(1);
+    }
+    while (sanitized.endsWith("'")) {
+      sanitized = sanitized.substring(0, sanitized.length() - 1);
+    }
+    if (sanitized.trim().isEmpty()) {
+      return DEFAULT_SHEET_NAME;
+    }
+    return sanitized.length() > MAX_SHEET_NAME_LENGTH
+        ? sanitized.substring(0, MAX_SHEET_NAME_LENGTH) : sanitized;
+  }
+
+  @Override
+  public void visitStart(OperationResult opResult) {
+    startSheet();
+    super.visitStart(opResult);
+  }
+
+  @Override
+  public void visitEnd(OperationResult opResult) {
+    if (!inSheet) {
+      startSheet();
+    }
+    endSheet();
+    writeWorkbook();
+    try {
+      zip.finish();
+      // Push the central directory through any buffering of the given stream.
+      zip.flush();
+    } catch (IOException e) {
+      error = true;
+    }
+  }
+
+  /**
+   * @return True if writing the workbook failed, in which case it is incomplete.
+   */
+  public boolean checkError() {
+    return writer.checkError() || error;
+  }
+
+  @Override
+  protected void writeRow(String... values) {
+    if (rowCount == MAX_ROWS_PER_SHEET) {
+      endSheet();
+      startSheet();
+    }
+    rowCount++;
+    writer.append("<row r=\"").append(String.valueOf(rowCount)).append("\">");
+    for (int i = 0; i < values.length; i++) {
+      String value = values[i];
+      if (value == null) {
+        continue;
+      }
+      String ref = columnName(i) + rowCount;
+      if (isNumber(value)) {
+        writer.append("<c r=\"").append(ref).append("\"><v>").append(value).append("</v></c>");
+      } else {
+        writer.append("<c r=\"").append(ref)
+            .append("\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+        appendText(truncate(value));
+        writer.append("</t></is></c>");
+      }
+    }
+    writer.append("</row>");
+  }
+
+  private void startSheet() {
+    String name = sheetName;
+    if (!sheetNames.isEmpty()) {
+      String suffix = " (" + (sheetNames.size() + 1) + ")";
+      name = sheetName.substring(0,
+          Math.min(sheetName.length(), MAX_SHEET_NAME_LENGTH - suffix.length())) + suffix;
+    }
+    sheetNames.add(name);
+    putNextEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml");
+    writer.append(XML_DECLARATION);
+    writer.append("<worksheet xmlns=\"").append(SPREADSHEETML_NS).append("\"><sheetData>");
+    rowCount = 0;
+    inSheet = true;
+  }
+
+  private void endSheet() {
+    writer.append("</sheetData></worksheet>");
+    inSheet = false;
+  }
+
+  /**
+   * Write the workbook's other parts, which list the worksheets written.
+   */
+  private void writeWorkbook() {
+    putNextEntry("xl/workbook.xml");
+    writer.append(XML_DECLARATION);
+    writer.append("<workbook xmlns=\"").append(SPREADSHEETML_NS).append("\" xmlns:r=\"")
+        .append(RELATIONSHIPS_NS).append("\"><sheets>");
+    for (int i = 1; i <= sheetNames.size(); i++) {
+      writer.append("<sheet name=\"");
+      appendText(sheetNames.get(i - 1));
+      writer.append("\" sheetId=\"").append(String.valueOf(i)).append("\" r:id=\"rId")
+          .append(String.valueOf(i)).append("\"/>");
+    }
+    writer.append("</sheets></workbook>");
+
+    putNextEntry("xl/_rels/workbook.xml.rels");
+    writer.append(XML_DECLARATION);
+    writer.append("<Relationships xmlns=\"").append(PACKAGE_RELATIONSHIPS_NS).append("\">");
+    for (int i = 1; i <= sheetNames.size(); i++) {
+      writer.append("<Relationship Id=\"rId").append(String.valueOf(i)).append("\" Type=\"")
+          .append(RELATIONSHIPS_NS).append("/worksheet\" Target=\"worksheets/sheet")
+          .append(String.valueOf(i)).append(".xml\"/>");
+    }
+    writer.append("</Relationships>");
+
+    putNextEntry("_rels/.rels");
+    writer.append(XML_DECLARATION);
+    writer.append("<Relationships xmlns=\"").append(PACKAGE_RELATIONSHIPS_NS)
+        .append("\"><Relationship Id=\"rId1\" Type=\"").append(RELATIONSHIPS_NS)
+        .append("/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+
+    putNextEntry("[Content_Types].xml");
+    writer.append(XML_DECLARATION);
+    writer.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+        .append("<Default Extension=\"rels\" ContentType=\"")
+        .append("application/vnd.openxmlformats-package.relationships+xml\"/>")
+        .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+        .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"")
+        .append("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+    for (int i = 1; i <= sheetNames.size(); i++) {
+      writer.append("<Override PartName=\"/xl/worksheets/sheet").append(String.valueOf(i))
+          .append(".xml\" ContentType=\"")
+          .append("application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+    }
+    writer.append("</Types>");
+    writer.flush();
+  }
+
+  private void putNextEntry(String name) {
+    writer.flush();
+    try {
+      zip.putNextEntry(new ZipEntry(name));
+    } catch (IOException e) {
+      error = true;
+    }
+  }
+
+  /**
+   * Append XML-escaped text, dropping the characters XML doesn't allow.
+   * 
+   * @param value
+   */
+  protected void appendText(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '&':
+          writer.append("&amp;");
+          break;
+        case '<':
+          writer.append("&lt;");
+          break;
+        case '>':
+          writer.append("&gt;");
+          break;
+        case '"':
+          writer.append("&quot;");
+          break;
+        default:
+          if (c >= 0x20 ? c < 0xFFFE : c == '\t' || c == '\n' || c == '\r') {
+            writer.append(c);
+          }
+      }
+    }
+  }
+
+  /**
+   * @return the value, truncated to the most characters of a cell without splitting a surrogate
+   *         pair.
+   */
+  private static String truncate(String value) {
+    if (value.length() <= MAX_CELL_LENGTH) {
+      return value;
+    }
+    int end = MAX_CELL_LENGTH;
+    if (Character.isHighSurrogate(value.charAt(end - 1))) {
+      end--;
+    }
+    return value.substring(0, end);
+  }
+
+  /**
+   * @return True for a whole number short enough for Excel to hold exactly.
+   */
+  private static boolean isNumber(String value) {
+    int start = value.startsWith("-") ? 1 : 0;
+    int length = value.length() - start;
+    if (length < 1 || length > 15 || (value.charAt(start) == '0' && length > 1)) {
+      return false;
+    }
+    for (int i = start; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String columnName(int index) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = index + 1; i > 0; i = (i - 1) / 26) {
+      sb.insert(0, (char) ('A' + (i - 1) % 26));
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,17 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Supplies the content of a zip entry when it's time to compress it, possibly on another thread.
+ */
+public interface EntrySource {
+
+  /**
+   * @return A new stream of the entry's content, which the caller closes.
+   * @throws IOException
+   */
+  InputStream open() throws IOException;
+
+}
@@ -0,0 +1,816 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+import com.rsicms.rsuite.utils.operation.content.SpillingContent;
+import com.rsicms.rsuite.utils.operation.result.ZipOperationResult;
+
+/**
+ * Builds a zip, compressing entries in parallel and writing them in the order they were added.
+ * <p>
+ * Each entry is deflated by a task on the executor, into memory or, past the spill threshold, a
+ * temporary file. The thread adding entries writes compressed entries as they complete, in order,
+ * and waits once {@link #setMaxPendingEntries(int) too many} are pending, which bounds the memory
+ * and disk used. As each entry is written, it is added to the manifest: the
+ * <code>ZipOperationResult</code>'s, when given.
+ * <p>
+ * With {@link #setDeduplicate(boolean) deduplication}, an entry whose content is the same as an
+ * earlier entry's is recorded in the manifest as a duplicate of that entry. Content is the same
+ * when the entries were added with the same content key or, lacking one, when their SHA-256
+ * digests, sizes and CRCs match. Every entry is still written to the zip under its own name, so the
+ * zip isn't any smaller; an entry found to be a duplicate by its digest is compressed and written
+ * in full. An entry with the content key of an earlier entry saves compressing instead: it isn't
+ * obtained, its compressed data being copied from the earlier entry's. When writing to a file, the
+ * data is read back from the zip. When writing to a stream, the earlier entry's data is kept in a
+ * temporary file if the duplicate was added before the earlier entry was written; a duplicate
+ * added later is obtained, compressed and written in full.
+ * <p>
+ * A {@link #resume(File, File, ExecutorService, ZipOperationResult) resumable} zip is checkpointed
+ * as it's written: the zip file is synced to disk, then the entries written since the last
+ * checkpoint and the length of the zip are appended to a checkpoint file. Should the export fail,
+ * running it again truncates the zip to the last checkpoint, skips the entries already written and
+ * appends the rest. The checkpoint file is deleted once the zip is finished. Use {@link #abort()}
+ * rather than {@link #close()} when an export fails, so that the zip isn't finished.
+ * <p>
+ * Entries are added, and the zip finished, by a single thread. Without an executor, entries are
+ * compressed by that thread.
+ */
+public class ParallelZipBuilder implements Closeable {
+
+  /**
+   * Compressed entries larger than this are held in temporary files until written.
+   */
+  public static final int DEFAULT_SPILL_THRESHOLD = 8 * 1024 * 1024;
+
+  /**
+   * A resumable zip is checkpointed after this many entries, by default.
+   */
+  public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+  /**
+   * A resumable zip is checkpointed after this many bytes, by default.
+   */
+  public static final long DEFAULT_CHECKPOINT_INTERVAL_BYTES = 64L * 1024 * 1024;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final OutputStream out;
+
+  private final boolean closeOut;
+
+  private final ExecutorService executor;
+
+  private final ZipOperationResult opResult;
+
+  private final ZipManifest manifest;
+
+  private final ZipWriter writer;
+
+  /**
+   * The zip file, when writing to one; copies of entries are read back from it.
+   */
+  private final FileChannel zipChannel;
+
+  /**
+   * Null unless resumable.
+   */
+  private final ZipCheckpoint checkpoint;
+
+  private final Deque<Future<CompressedEntry>> pending = new ArrayDeque<Future<CompressedEntry>>();
+
+  private final Set<String> names = new HashSet<String>();
+
+  /**
+   * The content keys of the entries added, when deduplicating.
+   */
+  private final Set<String> contentKeys = new HashSet<String>();
+
+  /**
+   * The content keys of the entries to keep the data of once written, as copies of them were added
+   * before; when deduplicating a zip written to a stream.
+   */
+  private final Set<String> keysToKeep = new HashSet<String>();
+
+  /**
+   * The manifest index of the entry written for each content key and digest, when deduplicating.
+   */
+  private final Map<String, Integer> written = new HashMap<String, Integer>();
+
+  /**
+   * Holds the compressed data of the entries in {@link #keysToKeep}; created when first needed.
+   */
+  private FileChannel originals;
+
+  /**
+   * The position in the originals file of the data of each entry kept there, by manifest index.
+   */
+  private final Map<Integer, Long> originalPositions = new HashMap<Integer, Long>();
+
+  /**
+   * The names of the entries written before resuming, and not yet added again.
+   */
+  private final Set<String> resumed = new HashSet<String>();
+
+  private int resumedEntryCount;
+
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  private int maxPendingEntries;
+
+  private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+  private File tempDirectory;
+
+  private boolean deduplicate;
+
+  private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+  private long checkpointIntervalBytes = DEFAULT_CHECKPOINT_INTERVAL_BYTES;
+
+  /**
+   * The manifest size and zip length as of the last checkpoint.
+   */
+  private int checkpointedEntries;
+
+  private long checkpointedBytes;
+
+  /**
+   * True while an entry is being written, and after writing one fails.
+   */
+  private boolean writing;
+
+  private boolean finished;
+
+  /**
+   * @param out The stream to write the zip to.
+   * @param closeOut True to close the stream once the zip is finished or abandoned.
+   * @param executor Compresses entries; null to compress on the calling thread.
+   * @param opResult The result whose manifest entries are added to; null for the builder to keep
+   *        its own.
+   */
+  public ParallelZipBuilder(OutputStream out, boolean closeOut, ExecutorService executor,
+      ZipOperationResult opResult) {
+    this(out, closeOut, executor, opResult, manifestOf(opResult));
+  }
+
+  private ParallelZipBuilder(OutputStream out, boolean closeOut, ExecutorService executor,
+      ZipOperationResult opResult, ZipManifest manifest) {
+    this(out, closeOut, executor, opResult, manifest, new ZipWriter(out, manifest), null, null);
+  }
+
+  private ParallelZipBuilder(OutputStream out, boolean closeOut, ExecutorService executor,
+      ZipOperationResult opResult, ZipManifest manifest, ZipWriter writer,
+      FileChannel zipChannel, ZipCheckpoint checkpoint) {
+    this.out = out;
+    this.closeOut = closeOut;
+    this.executor = executor;
+    this.opResult = opResult;
+    this.manifest = manifest;
+    this.writer = writer;
+    this.zipChannel = zipChannel;
+    this.checkpoint = checkpoint;
+    this.maxPendingEntries = 2 * Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Start a zip written to the given file, replacing it.
+   * 
+   * @param zipFile
+   * @param executor Compresses entries; null to compress on the calling thread.
+   * @param opResult The result whose manifest entries are added to; null for the builder to keep
+   *        its own.
+   * @return a builder, to be finished or closed.
+   * @throws IOException Thrown if the file can't be opened.
+   */
+  public static ParallelZipBuilder create(File zipFile, ExecutorService executor,
+      ZipOperationResult opResult) throws IOException {
+    ZipManifest manifest = manifestOf(opResult);
+    // Readable, so that copies of entries are read back from it.
+    FileChannel zipChannel = FileChannel.open(zipFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    OutputStream out = new BufferedOutputStream(Channels.newOutputStream(zipChannel), 65536);
+    return new ParallelZipBuilder(out, true, executor, opResult, manifest,
+        new ZipWriter(out, manifest), zipChannel, null);
+  }
+
+  /**
+   * Start or resume a resumable zip. When the checkpoint file records entries already written to
+   * the zip file, the zip is truncated to the last checkpoint, those entries are added to the
+   * manifest, and adding them again is skipped.
+   * 
+   * @param zipFile
+   * @param checkpointFile
+   * @param executor Compresses entries; null to compress on the calling thread.
+   * @param opResult The result whose manifest entries are added to; null for the builder to keep
+   *        its own.
+   * @return a builder, to be finished or aborted.
+   * @throws IOException Thrown if either file can't be opened, or the checkpoint file isn't one.
+   */
+  public static ParallelZipBuilder resume(File zipFile, File checkpointFile,
+      ExecutorService executor, ZipOperationResult opResult) throws IOException {
+    ZipManifest manifest = manifestOf(opResult);
+    int firstIndex = manifest.size();
+    FileChannel zipChannel = FileChannel.open(zipFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ZipCheckpoint checkpoint = null;
+    boolean opened = false;
+    try {
+      checkpoint = new ZipCheckpoint(checkpointFile.toPath(), firstIndex);
+      long offset = checkpoint.recover(manifest, zipChannel.size());
+      zipChannel.truncate(offset);
+      zipChannel.position(offset);
+      OutputStream out = new BufferedOutputStream(Channels.newOutputStream(zipChannel), 65536);
+      ParallelZipBuilder builder = new ParallelZipBuilder(out, true, executor, opResult, manifest,
+          new ZipWriter(out, manifest, firstIndex, offset), zipChannel, checkpoint);
+      for (int i = firstIndex; i < manifest.size(); i++) {
+        builder.resumed.add(manifest.getName(i));
+        builder.names.add(manifest.getName(i));
+      }
+      builder.resumedEntryCount = manifest.size() - firstIndex;
+      builder.checkpointedEntries = manifest.size();
+      builder.checkpointedBytes = offset;
+      if (opResult != null && builder.resumedEntryCount > 0) {
+        opResult.addInfoMessage(OperationMessageProperties.get("zip.info.resumed", zipFile,
+            builder.resumedEntryCount, offset));
+      }
+      opened = true;
+      return builder;
+    } finally {
+      if (!opened) {
+        zipChannel.close();
+        if (checkpoint != null) {
+          checkpoint.close();
+        }
+      }
+    }
+  }
+
+  private static ZipManifest manifestOf(ZipOperationResult opResult) {
+    return opResult != null ? opResult.getManifest() : new ZipManifest();
+  }
+
+  /**
+   * @param compressionLevel A <code>Deflater</code> level, from 0 to 9.
+   */
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * @param maxPendingEntries The most entries being compressed or waiting to be written; adding
+   *        another waits for the oldest to be written. Defaults to twice the number of processors.
+   */
+  public void setMaxPendingEntries(int maxPendingEntries) {
+    this.maxPendingEntries = Math.max(1, maxPendingEntries);
+  }
+
+  /**
+   * @param spillThreshold Compressed entries larger than this many bytes are held in temporary
+   *        files until written.
+   */
+  public void setSpillThreshold(int spillThreshold) {
+    this.spillThreshold = spillThreshold;
+  }
+
+  /**
+   * @param tempDirectory Where to create temporary files; null for the system default.
+   */
+  public void setTempDirectory(File tempDirectory) {
+    this.tempDirectory = tempDirectory;
+  }
+
+  /**
+   * @param deduplicate True to record entries with the same content as an earlier entry as its
+   *        duplicates, copying its compressed data for entries with its content key. Set before
+   *        adding entries.
+   */
+  public void setDeduplicate(boolean deduplicate) {
+    this.deduplicate = deduplicate;
+  }
+
+  /**
+   * @param checkpointInterval A resumable zip is checkpointed after this many entries.
+   */
+  public void setCheckpointInterval(int checkpointInterval) {
+    this.checkpointInterval = Math.max(1, checkpointInterval);
+  }
+
+  /**
+   * @param checkpointIntervalBytes A resumable zip is checkpointed after this many bytes.
+   */
+  public void setCheckpointIntervalBytes(long checkpointIntervalBytes) {
+    this.checkpointIntervalBytes = checkpointIntervalBytes;
+  }
+
+  /**
+   * Add an entry whose content is read from the given stream, which is closed once read. The
+   * stream may be read on another thread.
+   * 
+   * @param name
+   * @param content
+   * @throws IOException
+   */
+  public void addEntry(String name, final InputStream content) throws IOException {
+    addEntry(name, System.currentTimeMillis(), new EntrySource() {
+      @Override
+      public InputStream open() {
+        return content;
+      }
+    });
+  }
+
+  /**
+   * Add an entry whose content is obtained when it's compressed.
+   * 
+   * @param name
+   * @param source
+   * @throws IOException
+   */
+  public void addEntry(String name, EntrySource source) throws IOException {
+    addEntry(name, System.currentTimeMillis(), source);
+  }
+
+  /**
+   * Add an entry whose content is obtained when it's compressed.
+   * 
+   * @param name
+   * @param lastModified The entry's time, in milliseconds since the epoch.
+   * @param source
+   * @throws IOException Thrown if the name was already added, or an entry added earlier failed.
+   */
+  public void addEntry(String name, long lastModified, EntrySource source) throws IOException {
+    addEntry(name, null, null, lastModified, source);
+  }
+
+  /**
+   * Add an entry whose content is obtained when it's compressed.
+   * 
+   * @param name
+   * @param moId The ID of the MO the content comes from, for the manifest; may be null.
+   * @param contentKey Identifies the content, such as an MO ID and version. When deduplicating, an
+   *        entry with the key of an earlier entry is written with a copy of its compressed data,
+   *        without obtaining the content. May be null.
+   * @param lastModified The entry's time, in milliseconds since the epoch.
+   * @param source
+   * @throws IOException Thrown if the name was already added, or an entry added earlier failed.
+   */
+  public void addEntry(String name, String moId, String contentKey, long lastModified,
+      EntrySource source) throws IOException {
+    checkNotFinished();
+    if (!addName(name)) {
+      return;
+    }
+    if (deduplicate && contentKey != null && !contentKeys.add(contentKey)
+        && isCopyable(contentKey)) {
+      source = null;
+    }
+    FutureTask<CompressedEntry> task = new FutureTask<CompressedEntry>(
+        new CompressionTask(name, moId, contentKey, lastModified, source));
+    pending.add(task);
+    if (executor != null && source != null) {
+      executor.execute(task);
+    } else {
+      task.run();
+    }
+    writeCompleted(maxPendingEntries);
+  }
+
+  /**
+   * Add a directory entry.
+   * 
+   * @param name The name, which is to end with a slash.
+   * @throws IOException
+   */
+  public void addDirectory(String name) throws IOException {
+    checkNotFinished();
+    if (!addName(name)) {
+      return;
+    }
+    FutureTask<CompressedEntry> task = new FutureTask<CompressedEntry>(
+        new CompressionTask(name, null, null, System.currentTimeMillis(), null));
+    pending.add(task);
+    task.run();
+    writeCompleted(maxPendingEntries);
+  }
+
+  /**
+   * Wait for the remaining entries, write them and the central directory. Closes the stream when
+   * requested at construction. The checkpoint file of a resumable zip is deleted.
+   * 
+   * @throws IOException
+   */
+  public void finish() throws IOException {
+    checkNotFinished();
+    boolean completed = false;
+    try {
+      writeCompleted(0);
+      writer.finish();
+      completed = true;
+    } finally {
+      finished = true;
+      if (!completed) {
+        abandonPending();
+      }
+      closeFiles(completed);
+    }
+  }
+
+  /**
+   * Stop without finishing the zip, cancelling the pending entries, and close the stream when
+   * requested at construction. A resumable zip is checkpointed first, so that it's resumed after
+   * the last entry written. Does nothing once finished.
+   * 
+   * @throws IOException
+   */
+  public void abort() throws IOException {
+    if (finished) {
+      return;
+    }
+    abandonPending();
+    try {
+      if (checkpoint != null && !writing) {
+        checkpoint();
+      }
+    } finally {
+      closeFiles(false);
+    }
+  }
+
+  /**
+   * Checkpoint a resumable zip now, rather than waiting for the interval to pass.
+   * 
+   * @throws IOException
+   */
+  public void checkpoint() throws IOException {
+    if (checkpoint == null || manifest.size() == checkpointedEntries) {
+      return;
+    }
+    out.flush();
+    zipChannel.force(false);
+    checkpoint.checkpoint(manifest, writer.getOffset());
+    checkpointedEntries = manifest.size();
+    checkpointedBytes = writer.getOffset();
+  }
+
+  /**
+   * Finish the zip, unless already finished.
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (!finished) {
+      finish();
+    }
+  }
+
+  /**
+   * @return The manifest of the entries written so far.
+   */
+  public ZipManifest getManifest() {
+    return manifest;
+  }
+
+  /**
+   * @return The number of entries already written when the zip was resumed.
+   */
+  public int getResumedEntryCount() {
+    return resumedEntryCount;
+  }
+
+  /**
+   * @return The number of bytes written so far.
+   */
+  public long getBytesWritten() {
+    return writer.getOffset();
+  }
+
+  /**
+   * Write completed entries in order, waiting until no more than the given number are pending.
+   */
+  private void writeCompleted(int maxPending) throws IOException {
+    Future<CompressedEntry> head;
+    while ((head = pending.peek()) != null && (pending.size() > maxPending || head.isDone())) {
+      pending.poll();
+      CompressedEntry entry;
+      try {
+        entry = head.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        abandonPending();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        abandonPending();
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      }
+      write(entry);
+      if (checkpoint != null && (manifest.size() - checkpointedEntries >= checkpointInterval
+          || writer.getOffset() - checkpointedBytes >= checkpointIntervalBytes)) {
+        checkpoint();
+      }
+    }
+  }
+
+  private void write(CompressedEntry entry) throws IOException {
+    ZipEntryRecord record = entry.record;
+    try {
+      Integer original = entry.key != null ? written.get(entry.key) : null;
+      boolean duplicate = original != null && (entry.keyed
+          || (manifest.getSize(original) == record.size
+              && manifest.getCrc(original) == record.crc));
+      writing = true;
+      if (duplicate && entry.data == null) {
+        writeCopy(record, original);
+      } else {
+        int index = writer.writeEntry(record, entry.data);
+        if (duplicate) {
+          manifest.setDuplicateOf(index, original);
+        } else if (entry.key != null) {
+          written.put(entry.key, index);
+          if (entry.keyed && keysToKeep.contains(entry.key)) {
+            keepOriginal(index, entry.data);
+          }
+        }
+      }
+      writing = false;
+    } finally {
+      if (entry.data != null) {
+        entry.data.close();
+      }
+    }
+  }
+
+  /**
+   * Write an entry with a copy of an earlier entry's compressed data: from the zip file when
+   * resumable, or else from the originals file.
+   */
+  private void writeCopy(ZipEntryRecord record, int original) throws IOException {
+    if (zipChannel != null) {
+      // The earlier entry may not have left the buffer yet.
+      out.flush();
+      writer.writeCopy(record.name, record.nameBytes, record.moId, original, zipChannel,
+          writer.getDataOffset(original));
+    } else {
+      writer.writeCopy(record.name, record.nameBytes, record.moId, original, originals,
+          originalPositions.get(original));
+    }
+  }
+
+  /**
+   * Find out whether an entry may be written as a copy of the earlier entry with its content key,
+   * arranging for the earlier entry's data to be kept should it not be written yet.
+   * 
+   * @return False if the earlier entry's data is no longer at hand.
+   */
+  private boolean isCopyable(String contentKey) {
+    if (zipChannel != null) {
+      return true;
+    }
+    Integer original = written.get(contentKey);
+    if (original == null) {
+      keysToKeep.add(contentKey);
+      return true;
+    }
+    return originalPositions.containsKey(original);
+  }
+
+  /**
+   * Keep an entry's compressed data in the originals file, for copies of it.
+   */
+  private void keepOriginal(int index, SpillingContent data) throws IOException {
+    if (originals == null) {
+      File file = File.createTempFile("zip-originals-", ".tmp", tempDirectory);
+      originals = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+    long position = originals.size();
+    originals.position(position);
+    data.transferTo(originals);
+    originalPositions.put(index, position);
+  }
+
+  /**
+   * Cancel the pending entries, and release those already compressed.
+   */
+  private void abandonPending() {
+    finished = true;
+    Future<CompressedEntry> future;
+    while ((future = pending.poll()) != null) {
+      if (!future.cancel(true)) {
+        try {
+          CompressedEntry entry = future.get();
+          if (entry.data != null) {
+            entry.data.close();
+          }
+        } catch (Exception e) {
+          // Nothing to release.
+        }
+      }
+    }
+  }
+
+  /**
+   * @return False if the entry was written before the zip was resumed.
+   * @throws ZipException Thrown if the name was already added.
+   */
+  private boolean addName(String name) throws ZipException {
+    if (resumed.remove(name)) {
+      return false;
+    }
+    if (!names.add(name)) {
+      throw new ZipException(
+          OperationMessageProperties.get("zip.error.duplicate.entry", name));
+    }
+    return true;
+  }
+
+  private void closeFiles(boolean completed) throws IOException {
+    try {
+      if (closeOut) {
+        out.close();
+      }
+    } finally {
+      try {
+        if (originals != null) {
+          // Deleted on close.
+          originals.close();
+        }
+      } catch (IOException e) {
+        // Nothing more to do with it.
+      }
+      originals = null;
+      originalPositions.clear();
+      keysToKeep.clear();
+      if (checkpoint != null) {
+        if (completed) {
+          checkpoint.delete();
+        } else {
+          checkpoint.close();
+        }
+      }
+    }
+  }
+
+  private void checkNotFinished() throws IOException {
+    if (finished) {
+      throw new IOException(OperationMessageProperties.get("zip.error.finished"));
+    }
+  }
+
+  /**
+   * An entry's compressed data and header information.
+   */
+  private static class CompressedEntry {
+
+    final ZipEntryRecord record;
+
+    final SpillingContent data;
+
+    /**
+     * The content key or digest, when deduplicating.
+     */
+    final String key;
+
+    /**
+     * True when the key is the caller's content key, rather than a digest.
+     */
+    final boolean keyed;
+
+    CompressedEntry(ZipEntryRecord record, SpillingContent data, String key, boolean keyed) {
+      this.record = record;
+      this.data = data;
+      this.key = key;
+      this.keyed = keyed;
+    }
+
+  }
+
+  /**
+   * Deflates an entry's content, computing its CRC and sizes and, when deduplicating without a
+   * content key, its digest.
+   */
+  private class CompressionTask implements Callable<CompressedEntry> {
+
+    private final String name;
+
+    private final String moId;
+
+    private final String contentKey;
+
+    private final long lastModified;
+
+    private final EntrySource source;
+
+    CompressionTask(String name, String moId, String contentKey, long lastModified,
+        EntrySource source) {
+      this.name = name;
+      this.moId = moId;
+      this.contentKey = deduplicate ? contentKey : null;
+      this.lastModified = lastModified;
+      this.source = source;
+    }
+
+    @Override
+    public CompressedEntry call() throws IOException {
+      byte[] nameBytes = name.getBytes(UTF_8);
+      long dosTime = ZipWriter.toDosTime(lastModified);
+      if (source == null) {
+        // A directory, or a duplicate by content key.
+        return new CompressedEntry(
+            new ZipEntryRecord(name, nameBytes, moId, ZipEntry.STORED, dosTime, 0, 0, 0), null,
+            contentKey, true);
+      }
+      MessageDigest digest = deduplicate && contentKey == null ? newDigest() : null;
+      SpillingContent data = new SpillingContent(spillThreshold, tempDirectory);
+      Deflater deflater = new Deflater(compressionLevel, true);
+      boolean compressed = false;
+      try {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        DeflaterOutputStream deflaterOut =
+            new DeflaterOutputStream(data.getOutputStream(), deflater, 65536);
+        InputStream in = source.open();
+        try {
+          byte[] buffer = new byte[65536];
+          int read;
+          while ((read = in.read(buffer)) >= 0) {
+            if (Thread.interrupted()) {
+              throw new InterruptedIOException();
+            }
+            crc.update(buffer, 0, read);
+            if (digest != null) {
+              digest.update(buffer, 0, read);
+            }
+            deflaterOut.write(buffer, 0, read);
+            size += read;
+          }
+        } finally {
+          in.close();
+        }
+        deflaterOut.close();
+        compressed = true;
+        String key = digest != null ? toHex(digest.digest()) : contentKey;
+        return new CompressedEntry(new ZipEntryRecord(name, nameBytes, moId, ZipEntry.DEFLATED,
+            dosTime, crc.getValue(), data.getLength(), size), data, key, digest == null);
+      } finally {
+        deflater.end();
+        if (!compressed) {
+          data.close();
+        }
+      }
+    }
+
+    private MessageDigest newDigest() {
+      try {
+        return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        // Every Java platform supports SHA-256.
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private String toHex(byte[] bytes) {
+      StringBuilder sb = new StringBuilder(bytes.length * 2 + 7);
+      sb.append("sha256:");
+      for (byte b : bytes) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    }
+
+  }
+
+}
@@ -0,0 +1,266 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+
+import com.rsicms.rsuite.utils.operation.OperationMessageProperties;
+
+/**
+ * The checkpoints of a zip being written, from which writing the zip may be resumed.
+ * <p>
+ * The file is an append-only log. Each checkpoint is a record of its length, its CRC-32, the
+ * manifest entries written since the previous checkpoint, and the length of the zip once they
+ * were written. Recovering replays the complete checkpoints into a manifest, and discards a
+ * checkpoint cut short by a crash or that refers to more of the zip than exists.
+ */
+class ZipCheckpoint implements Closeable {
+
+  private static final int MAGIC = 0x5A50434B; // "ZPCK"
+
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int HEADER_LENGTH = 8;
+
+  private final Path path;
+
+  private final FileChannel channel;
+
+  /**
+   * The index in the manifest of the zip's first entry.
+   */
+  private final int firstIndex;
+
+  /**
+   * The index in the manifest of the first entry not yet checkpointed.
+   */
+  private int nextIndex;
+
+  private final ByteArrayOutputStream payload = new ByteArrayOutputStream(8192);
+
+  private final DataOutputStream payloadOut = new DataOutputStream(payload);
+
+  private final CRC32 crc = new CRC32();
+
+  /**
+   * Open the checkpoint file, creating it if need be.
+   * 
+   * @param path
+   * @param firstIndex The index in the manifest of the zip's first entry.
+   * @throws IOException
+   */
+  ZipCheckpoint(Path path, int firstIndex) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.firstIndex = firstIndex;
+    this.nextIndex = firstIndex;
+  }
+
+  /**
+   * Add the checkpointed entries to the manifest, truncating the log at the first incomplete or
+   * corrupt checkpoint.
+   * 
+   * @param manifest Holding no entries from the zip.
+   * @param zipLength The length of the zip file.
+   * @return The length of the zip as of the last checkpoint; zero if there is none.
+   * @throws IOException Thrown if the file can't be read, or isn't a zip checkpoint.
+   */
+  long recover(ZipManifest manifest, long zipLength) throws IOException {
+    if (channel.size() < HEADER_LENGTH) {
+      channel.truncate(0);
+      writeHeader();
+      return 0;
+    }
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+    long validLength = HEADER_LENGTH;
+    long checkpointedLength = 0;
+    try {
+      channel.position(0);
+      if (in.readInt() != MAGIC) {
+        throw new IOException(
+            OperationMessageProperties.get("zip.checkpoint.error.not.a.checkpoint", path));
+      }
+      int version = in.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException(OperationMessageProperties
+            .get("zip.checkpoint.error.unsupported.version", path, version));
+      }
+      byte[] bytes = new byte[8192];
+      while (true) {
+        int length;
+        int checksum;
+        try {
+          length = in.readInt();
+          checksum = in.readInt();
+          if (length <= 0 || length > channel.size() - validLength - 8) {
+            break;
+          }
+          if (bytes.length < length) {
+            bytes = new byte[length];
+          }
+          in.readFully(bytes, 0, length);
+        } catch (EOFException e) {
+          break;
+        }
+        crc.reset();
+        crc.update(bytes, 0, length);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        long recoveredLength = apply(manifest, bytes, length, zipLength);
+        if (recoveredLength < 0) {
+          break;
+        }
+        checkpointedLength = recoveredLength;
+        validLength += 8 + length;
+      }
+    } catch (EOFException e) {
+      throw new IOException(
+          OperationMessageProperties.get("zip.checkpoint.error.not.a.checkpoint", path), e);
+    }
+    // The stream isn't closed, as that would close the channel.
+    if (channel.size() > validLength) {
+      channel.truncate(validLength);
+      channel.force(true);
+    }
+    channel.position(validLength);
+    nextIndex = manifest.size();
+    return checkpointedLength;
+  }
+
+  /**
+   * Add the entries of a checkpoint to the manifest.
+   * 
+   * @return The length of the zip as of the checkpoint, or -1 if the checkpoint is invalid, in
+   *         which case the manifest is unchanged.
+   */
+  private long apply(ZipManifest manifest, byte[] bytes, int length, long zipLength) {
+    int size = manifest.size();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+    try {
+      if (in.readInt() != size - firstIndex) {
+        return -1;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        String moId = in.readBoolean() ? in.readUTF() : null;
+        int duplicateOf = in.readInt();
+        int index = manifest.add(name, moId, in.readByte(), in.readInt() & 0xFFFFFFFFL,
+            in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        if (duplicateOf >= 0) {
+          if (firstIndex + duplicateOf >= index) {
+            manifest.truncate(size);
+            return -1;
+          }
+          manifest.setDuplicateOf(index, firstIndex + duplicateOf);
+        }
+      }
+      long checkpointedLength = in.readLong();
+      if (checkpointedLength > zipLength) {
+        manifest.truncate(size);
+        return -1;
+      }
+      return checkpointedLength;
+    } catch (IOException e) {
+      manifest.truncate(size);
+      return -1;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Record the manifest entries added since the last checkpoint, and the length of the zip, which
+   * is to have been synced to disk. The checkpoint is synced to disk.
+   * 
+   * @param manifest
+   * @param zipLength
+   * @throws IOException
+   */
+  void checkpoint(ZipManifest manifest, long zipLength) throws IOException {
+    int size = manifest.size();
+    payload.reset();
+    payloadOut.writeInt(nextIndex - firstIndex);
+    payloadOut.writeInt(size - nextIndex);
+    for (int i = nextIndex; i < size; i++) {
+      payloadOut.writeUTF(manifest.getName(i));
+      String moId = manifest.getMoId(i);
+      payloadOut.writeBoolean(moId != null);
+      if (moId != null) {
+        payloadOut.writeUTF(moId);
+      }
+      payloadOut.writeInt(manifest.isDuplicate(i) ? manifest.getDuplicateOf(i) - firstIndex : -1);
+      payloadOut.writeByte(manifest.getMethod(i));
+      payloadOut.writeInt((int) manifest.getDosTime(i));
+      payloadOut.writeLong(manifest.getCrc(i));
+      payloadOut.writeLong(manifest.getCompressedSize(i));
+      payloadOut.writeLong(manifest.getSize(i));
+      payloadOut.writeLong(manifest.getOffset(i));
+    }
+    payloadOut.writeLong(zipLength);
+    payloadOut.flush();
+    crc.reset();
+    crc.update(payload.toByteArray(), 0, payload.size());
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(payload.size());
+    header.putInt((int) crc.getValue());
+    header.flip();
+    writeFully(header);
+    writeFully(ByteBuffer.wrap(payload.toByteArray()));
+    channel.force(false);
+    nextIndex = size;
+  }
+
+  /**
+   * Close and delete the checkpoint file, once the zip is complete.
+   * 
+   * @throws IOException
+   */
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(path);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void writeHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    header.putInt(MAGIC);
+    header.putInt(FORMAT_VERSION);
+    header.flip();
+    writeFully(header);
+    channel.force(true);
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+}
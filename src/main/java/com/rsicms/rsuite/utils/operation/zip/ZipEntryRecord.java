@@ -0,0 +1,36 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+/**
+ * An entry about to be written to a zip.
+ */
+class ZipEntryRecord {
+
+  final String name;
+
+  final byte[] nameBytes;
+
+  final String moId;
+
+  final int method;
+
+  final long dosTime;
+
+  final long crc;
+
+  final long compressedSize;
+
+  final long size;
+
+  ZipEntryRecord(String name, byte[] nameBytes, String moId, int method, long dosTime, long crc,
+      long compressedSize, long size) {
+    this.name = name;
+    this.nameBytes = nameBytes;
+    this.moId = moId;
+    this.method = method;
+    this.dosTime = dosTime;
+    this.crc = crc;
+    this.compressedSize = compressedSize;
+    this.size = size;
+  }
+
+}
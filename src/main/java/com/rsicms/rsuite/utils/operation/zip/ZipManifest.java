@@ -0,0 +1,273 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * The entries of a zip: name, source MO ID, method, time, CRC, sizes, and offset of the local
+ * header. Entries whose content duplicates an earlier entry's also refer to that entry; they're
+ * written nonetheless, with a copy of its compressed data.
+ * <p>
+ * Each property is kept in its own array, which keeps large manifests compact: no object per
+ * entry, and primitive columns. Not thread-safe.
+ */
+public class ZipManifest {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int count;
+
+  private String[] names = new String[INITIAL_CAPACITY];
+
+  private String[] moIds = new String[INITIAL_CAPACITY];
+
+  private byte[] methods = new byte[INITIAL_CAPACITY];
+
+  private int[] dosTimes = new int[INITIAL_CAPACITY];
+
+  private long[] crcs = new long[INITIAL_CAPACITY];
+
+  private long[] compressedSizes = new long[INITIAL_CAPACITY];
+
+  private long[] sizes = new long[INITIAL_CAPACITY];
+
+  private long[] offsets = new long[INITIAL_CAPACITY];
+
+  /**
+   * Index of the entry with the same content, or -1.
+   */
+  private int[] duplicateOf = new int[INITIAL_CAPACITY];
+
+  /**
+   * Add an entry.
+   * 
+   * @param name
+   * @param moId The ID of the MO the content came from; may be null.
+   * @param method <code>ZipEntry.DEFLATED</code> or <code>ZipEntry.STORED</code>; -1 if unknown.
+   * @param dosTime The MS-DOS date and time.
+   * @param crc The CRC-32 of the uncompressed content; -1 if unknown.
+   * @param compressedSize -1 if unknown.
+   * @param size The uncompressed size; -1 if unknown.
+   * @param offset The offset of the local header in the zip; -1 if unknown.
+   * @return the entry's index.
+   */
+  public int add(String name, String moId, int method, long dosTime, long crc,
+      long compressedSize, long size, long offset) {
+    ensureCapacity(count + 1);
+    int i = count++;
+    names[i] = name;
+    moIds[i] = moId;
+    methods[i] = (byte) method;
+    dosTimes[i] = (int) dosTime;
+    crcs[i] = crc;
+    compressedSizes[i] = compressedSize;
+    sizes[i] = size;
+    offsets[i] = offset;
+    duplicateOf[i] = -1;
+    return i;
+  }
+
+  /**
+   * Add an entry written by something else, such as a <code>ZipOutputStream</code>, whose sizes and
+   * CRC are known once the entry is closed. The offset is unknown.
+   * 
+   * @param ze
+   * @param moId May be null.
+   * @return the entry's index.
+   */
+  public int add(ZipEntry ze, String moId) {
+    long time = ze.getTime();
+    return add(ze.getName(), moId, ze.getMethod(), time == -1 ? 0 : ZipWriter.toDosTime(time),
+        ze.getCrc(), ze.getCompressedSize(), ze.getSize(), -1);
+  }
+
+  /**
+   * Record that an entry's content is that of an earlier entry.
+   * 
+   * @param i
+   * @param original The index of the entry with the same content.
+   */
+  void setDuplicateOf(int i, int original) {
+    checkIndex(i);
+    checkIndex(original);
+    duplicateOf[i] = original;
+  }
+
+  /**
+   * Forget the entries from the given index on.
+   * 
+   * @param newSize
+   */
+  public void truncate(int newSize) {
+    for (int i = newSize; i < count; i++) {
+      names[i] = null;
+      moIds[i] = null;
+    }
+    count = Math.min(count, newSize);
+  }
+
+  /**
+   * @return The number of entries.
+   */
+  public int size() {
+    return count;
+  }
+
+  public String getName(int i) {
+    checkIndex(i);
+    return names[i];
+  }
+
+  public String getMoId(int i) {
+    checkIndex(i);
+    return moIds[i];
+  }
+
+  public int getMethod(int i) {
+    checkIndex(i);
+    return methods[i];
+  }
+
+  public long getDosTime(int i) {
+    checkIndex(i);
+    return dosTimes[i] & 0xFFFFFFFFL;
+  }
+
+  /**
+   * @param i
+   * @return The CRC-32, or -1 if unknown.
+   */
+  public long getCrc(int i) {
+    checkIndex(i);
+    return crcs[i];
+  }
+
+  /**
+   * @param i
+   * @return The compressed size, as written, or -1 if unknown.
+   */
+  public long getCompressedSize(int i) {
+    checkIndex(i);
+    return compressedSizes[i];
+  }
+
+  /**
+   * @param i
+   * @return The uncompressed size, or -1 if unknown.
+   */
+  public long getSize(int i) {
+    checkIndex(i);
+    return sizes[i];
+  }
+
+  /**
+   * @param i
+   * @return The offset of the local header, or -1 if unknown.
+   */
+  public long getOffset(int i) {
+    checkIndex(i);
+    return offsets[i];
+  }
+
+  /**
+   * @param i
+   * @return The index of the earlier entry with the same content, or -1 if there's none.
+   */
+  public int getDuplicateOf(int i) {
+    checkIndex(i);
+    return duplicateOf[i];
+  }
+
+  public boolean isDuplicate(int i) {
+    return getDuplicateOf(i) >= 0;
+  }
+
+  /**
+   * @return The entry names, as a read-only view.
+   */
+  public List<String> getNames() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return getName(index);
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+  /**
+   * @return The total uncompressed size of the entries with a known size, including duplicates.
+   */
+  public long getTotalSize() {
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      if (sizes[i] > 0) {
+        total += sizes[i];
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @return The total compressed size of the entries with a known size, including duplicates.
+   */
+  public long getTotalCompressedSize() {
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      if (compressedSizes[i] > 0) {
+        total += compressedSizes[i];
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @return The number of entries whose content duplicates an earlier entry's.
+   */
+  public int getDuplicateCount() {
+    int cnt = 0;
+    for (int i = 0; i < count; i++) {
+      if (duplicateOf[i] >= 0) {
+        cnt++;
+      }
+    }
+    return cnt;
+  }
+
+  /**
+   * @return The total compressed size divided by the total size, or 1 when there's no content.
+   */
+  public double getCompressionRatio() {
+    long total = getTotalSize();
+    return total == 0 ? 1 : (double) getTotalCompressedSize() / total;
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= count) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= names.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, names.length + (names.length >> 1));
+    names = Arrays.copyOf(names, newCapacity);
+    moIds = Arrays.copyOf(moIds, newCapacity);
+    methods = Arrays.copyOf(methods, newCapacity);
+    dosTimes = Arrays.copyOf(dosTimes, newCapacity);
+    crcs = Arrays.copyOf(crcs, newCapacity);
+    compressedSizes = Arrays.copyOf(compressedSizes, newCapacity);
+    sizes = Arrays.copyOf(sizes, newCapacity);
+    offsets = Arrays.copyOf(offsets, newCapacity);
+    duplicateOf = Arrays.copyOf(duplicateOf, newCapacity);
+  }
+
+}
@@ -0,0 +1,309 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+
+import com.rsicms.rsuite.utils.operation.content.DownloadableContent;
+
+/**
+ * Writes a zip from entries whose data is already compressed, as <code>ZipOutputStream</code>
+ * can't. Sizes and CRCs are known up front, so local headers carry them and no data descriptors
+ * are written. ZIP64 records are used when sizes, offsets or the number of entries require them.
+ * Entry names are encoded in UTF-8. Not thread-safe.
+ */
+class ZipWriter {
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+  private static final int END_SIGNATURE = 0x06054b50;
+
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+
+  private static final int FLAG_UTF8 = 0x0800;
+
+  private static final int VERSION_DEFAULT = 20;
+
+  private static final int VERSION_ZIP64 = 45;
+
+  private static final long MAX_32 = 0xFFFFFFFFL;
+
+  private static final int MAX_16 = 0xFFFF;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final OutputStream out;
+
+  /**
+   * Records the entries written, from which the central directory is written.
+   */
+  private final ZipManifest manifest;
+
+  /**
+   * The index in the manifest of this zip's first entry.
+   */
+  private final int firstIndex;
+
+  private long offset;
+
+  private final ByteBuffer header = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+  /**
+   * @param out The stream to write to, positioned at the start of the zip.
+   * @param manifest The manifest to record entries in; entries already in it are not part of this
+   *        zip.
+   */
+  ZipWriter(OutputStream out, ZipManifest manifest) {
+    this(out, manifest, manifest.size(), 0);
+  }
+
+  /**
+   * Continue a zip whose first entries were already written.
+   * 
+   * @param out The stream to write to, positioned after the entries already written.
+   * @param manifest The manifest, with the entries already written.
+   * @param firstIndex The index in the manifest of the zip's first entry.
+   * @param offset The number of bytes already written.
+   */
+  ZipWriter(OutputStream out, ZipManifest manifest, int firstIndex, long offset) {
+    this.out = out;
+    this.manifest = manifest;
+    this.firstIndex = firstIndex;
+    this.offset = offset;
+  }
+
+  /**
+   * @return The number of bytes written so far.
+   */
+  long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Write an entry's local header and data, and add it to the manifest.
+   * 
+   * @param record The entry.
+   * @param data The compressed data, of the record's compressed size; null when empty.
+   * @return The entry's index in the manifest.
+   * @throws IOException
+   */
+  int writeEntry(ZipEntryRecord record, DownloadableContent data) throws IOException {
+    long entryOffset = offset;
+    writeLocalHeader(record);
+    if (data != null) {
+      data.writeTo(out);
+    }
+    offset += record.compressedSize;
+    return manifest.add(record.name, record.moId, record.method, record.dosTime, record.crc,
+        record.compressedSize, record.size, entryOffset);
+  }
+
+  /**
+   * Write an entry with the content of an earlier entry, copying its compressed data rather than
+   * compressing it again. The method, time, CRC and sizes are the earlier entry's. The entry is
+   * added to the manifest as a duplicate of the earlier one.
+   * 
+   * @param name
+   * @param nameBytes The name, in UTF-8.
+   * @param moId May be null.
+   * @param original The manifest index of the earlier entry.
+   * @param source Holds the earlier entry's compressed data.
+   * @param position The position of the compressed data in the source.
+   * @return The entry's index in the manifest.
+   * @throws IOException
+   */
+  int writeCopy(String name, byte[] nameBytes, String moId, int original, FileChannel source,
+      long position) throws IOException {
+    ZipEntryRecord record = new ZipEntryRecord(name, nameBytes, moId,
+        manifest.getMethod(original), manifest.getDosTime(original), manifest.getCrc(original),
+        manifest.getCompressedSize(original), manifest.getSize(original));
+    long entryOffset = offset;
+    writeLocalHeader(record);
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(65536, record.compressedSize));
+    long remaining = record.compressedSize;
+    while (remaining > 0) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), remaining));
+      int read = source.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      out.write(buffer.array(), 0, read);
+      position += read;
+      remaining -= read;
+    }
+    offset += record.compressedSize;
+    int index = manifest.add(record.name, record.moId, record.method, record.dosTime, record.crc,
+        record.compressedSize, record.size, entryOffset);
+    manifest.setDuplicateOf(index, original);
+    return index;
+  }
+
+  /**
+   * @param i The index of an entry written to this zip.
+   * @return The offset in the zip of the entry's compressed data, following its local header.
+   */
+  long getDataOffset(int i) {
+    boolean zip64 = manifest.getSize(i) >= MAX_32 || manifest.getCompressedSize(i) >= MAX_32;
+    return manifest.getOffset(i) + 30 + manifest.getName(i).getBytes(UTF_8).length
+        + (zip64 ? 20 : 0);
+  }
+
+  private void writeLocalHeader(ZipEntryRecord record) throws IOException {
+    boolean zip64 = record.size >= MAX_32 || record.compressedSize >= MAX_32;
+    ByteBuffer h = header(30 + record.nameBytes.length + (zip64 ? 20 : 0));
+    h.putInt(LOCAL_HEADER_SIGNATURE);
+    h.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+    h.putShort((short) FLAG_UTF8);
+    h.putShort((short) record.method);
+    h.putInt((int) record.dosTime);
+    h.putInt((int) record.crc);
+    h.putInt((int) (zip64 ? MAX_32 : record.compressedSize));
+    h.putInt((int) (zip64 ? MAX_32 : record.size));
+    h.putShort((short) record.nameBytes.length);
+    h.putShort((short) (zip64 ? 20 : 0));
+    h.put(record.nameBytes);
+    if (zip64) {
+      h.putShort((short) ZIP64_EXTRA_ID);
+      h.putShort((short) 16);
+      h.putLong(record.size);
+      h.putLong(record.compressedSize);
+    }
+    write(h);
+  }
+
+  /**
+   * Write the central directory and end records. The stream is flushed, not closed.
+   * 
+   * @throws IOException
+   */
+  void finish() throws IOException {
+    long centralStart = offset;
+    int count = manifest.size() - firstIndex;
+    for (int i = firstIndex; i < manifest.size(); i++) {
+      writeCentralHeader(i);
+    }
+    long centralSize = offset - centralStart;
+    boolean zip64 = count >= MAX_16 || centralStart >= MAX_32 || centralSize >= MAX_32;
+    if (zip64) {
+      long zip64EndOffset = offset;
+      ByteBuffer h = header(56 + 20);
+      h.putInt(ZIP64_END_SIGNATURE);
+      h.putLong(44);
+      h.putShort((short) VERSION_ZIP64);
+      h.putShort((short) VERSION_ZIP64);
+      h.putInt(0);
+      h.putInt(0);
+      h.putLong(count);
+      h.putLong(count);
+      h.putLong(centralSize);
+      h.putLong(centralStart);
+      h.putInt(ZIP64_LOCATOR_SIGNATURE);
+      h.putInt(0);
+      h.putLong(zip64EndOffset);
+      h.putInt(1);
+      write(h);
+    }
+    ByteBuffer h = header(22);
+    h.putInt(END_SIGNATURE);
+    h.putShort((short) 0);
+    h.putShort((short) 0);
+    h.putShort((short) (zip64 ? MAX_16 : count));
+    h.putShort((short) (zip64 ? MAX_16 : count));
+    h.putInt((int) (zip64 ? MAX_32 : centralSize));
+    h.putInt((int) (zip64 ? MAX_32 : centralStart));
+    h.putShort((short) 0);
+    write(h);
+    out.flush();
+  }
+
+  private void writeCentralHeader(int i) throws IOException {
+    byte[] nameBytes = manifest.getName(i).getBytes(UTF_8);
+    long size = manifest.getSize(i);
+    long compressedSize = manifest.getCompressedSize(i);
+    long entryOffset = manifest.getOffset(i);
+    boolean sizeOverflow = size >= MAX_32;
+    boolean compressedOverflow = compressedSize >= MAX_32;
+    boolean offsetOverflow = entryOffset >= MAX_32;
+    int extraLength = (sizeOverflow ? 8 : 0) + (compressedOverflow ? 8 : 0)
+        + (offsetOverflow ? 8 : 0);
+    if (extraLength > 0) {
+      extraLength += 4;
+    }
+    boolean zip64 = extraLength > 0;
+    ByteBuffer h = header(46 + nameBytes.length + extraLength);
+    h.putInt(CENTRAL_HEADER_SIGNATURE);
+    h.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+    h.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+    h.putShort((short) FLAG_UTF8);
+    h.putShort((short) manifest.getMethod(i));
+    h.putInt((int) manifest.getDosTime(i));
+    h.putInt((int) manifest.getCrc(i));
+    h.putInt((int) (compressedOverflow ? MAX_32 : compressedSize));
+    h.putInt((int) (sizeOverflow ? MAX_32 : size));
+    h.putShort((short) nameBytes.length);
+    h.putShort((short) extraLength);
+    h.putShort((short) 0); // comment length
+    h.putShort((short) 0); // disk number
+    h.putShort((short) 0); // internal attributes
+    h.putInt(0); // external attributes
+    h.putInt((int) (offsetOverflow ? MAX_32 : entryOffset));
+    h.put(nameBytes);
+    if (zip64) {
+      h.putShort((short) ZIP64_EXTRA_ID);
+      h.putShort((short) (extraLength - 4));
+      if (sizeOverflow) {
+        h.putLong(size);
+      }
+      if (compressedOverflow) {
+        h.putLong(compressedSize);
+      }
+      if (offsetOverflow) {
+        h.putLong(entryOffset);
+      }
+    }
+    write(h);
+  }
+
+  private ByteBuffer header(int length) {
+    ByteBuffer h = length <= header.capacity() ? header
+        : ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    h.clear();
+    return h;
+  }
+
+  private void write(ByteBuffer h) throws IOException {
+    out.write(h.array(), 0, h.position());
+    offset += h.position();
+  }
+
+  /**
+   * Convert a time to the MS-DOS format of zip headers.
+   * 
+   * @param millis
+   * @return the MS-DOS date and time.
+   */
+  static long toDosTime(long millis) {
+    Calendar cal = Calendar.getInstance();
+    cal.setTimeInMillis(millis);
+    int year = cal.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return ((year - 1980) << 25) | ((cal.get(Calendar.MONTH) + 1) << 21)
+        | (cal.get(Calendar.DAY_OF_MONTH) << 16) | (cal.get(Calendar.HOUR_OF_DAY) << 11)
+        | (cal.get(Calendar.MINUTE) << 5) | (cal.get(Calendar.SECOND) >> 1);
+  }
+
+}
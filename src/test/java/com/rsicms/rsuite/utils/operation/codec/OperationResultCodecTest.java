@@ -0,0 +1,107 @@
+package com.rsicms.rsuite.utils.operation.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+
+public class OperationResultCodecTest {
+
+  private final OperationResultCodec codec = new OperationResultCodec();
+
+  private static byte[] encode(OperationResultCodec codec) throws IOException {
+    BaseOperationResult opResult = new BaseOperationResult("op-1", "Export", null);
+    opResult.markStartOfOperation();
+    opResult.incrementCount("exported", 3);
+    opResult.startTimer("export");
+    opResult.startTransaction();
+    opResult.getCurrentTransaction().addAsset("100", "first");
+    opResult.getCurrentTransaction().setProperty("state", "done");
+    opResult.addInfoMessage("label", "Exported 100");
+    opResult.addInfoMessage("label", "Exported 101");
+    opResult.markEndOfOperation();
+    return codec.encode(opResult);
+  }
+
+  /**
+   * The start of an encoding with no ID, label, start nor end, followed by the given bytes.
+   */
+  private static byte[] withHeader(int... rest) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write('O');
+    bytes.write('P');
+    bytes.write('R');
+    bytes.write('S');
+    bytes.write(OperationResultCodec.FORMAT_VERSION);
+    for (int i = 0; i < 4; i++) {
+      bytes.write(0);
+    }
+    for (int b : rest) {
+      bytes.write(b);
+    }
+    return bytes.toByteArray();
+  }
+
+  private void assertCorrupt(byte[] bytes) {
+    try {
+      codec.decode(bytes, false);
+      fail("Decoded corrupt bytes");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void roundTrips() throws IOException {
+    OperationResultSnapshot snapshot = codec.decode(encode(codec), true);
+    assertEquals("op-1", snapshot.getOperationId());
+    assertEquals(Integer.valueOf(3), snapshot.getCounters().get("exported"));
+    assertEquals("first", snapshot.getTransactions().get(0).getNewAssets().get("100"));
+    assertEquals("done", snapshot.getTransactions().get(0).getProperties().get("state"));
+    assertFalse(snapshot.isMessagesDecoded());
+    List<MessageSnapshot> messages = snapshot.getMessages();
+    assertEquals(2, messages.size());
+    assertEquals("Exported 101", messages.get(1).getMessageText());
+  }
+
+  @Test
+  public void rejectsEveryTruncation() throws IOException {
+    byte[] bytes = encode(codec);
+    for (int length = 0; length < bytes.length; length++) {
+      assertCorrupt(Arrays.copyOf(bytes, length));
+    }
+  }
+
+  @Test
+  public void rejectsCountLargerThanTheBytesRemaining() {
+    // No counters nor timers; 2^31 - 1 transactions.
+    assertCorrupt(withHeader(0, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07));
+  }
+
+  @Test
+  public void rejectsNegativeCount() {
+    // No counters nor timers; -1 transactions.
+    assertCorrupt(withHeader(0, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F));
+  }
+
+  @Test
+  public void rejectsNegativeMessageCount() {
+    // No counters, timers nor transactions; -1 messages in a section holding no labels.
+    assertCorrupt(withHeader(0, 0, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F, 1, 0));
+  }
+
+  @Test
+  public void rejectsMessageCountLargerThanItsSection() {
+    // No counters, timers nor transactions; 100 messages in a section of 1 byte.
+    assertCorrupt(withHeader(0, 0, 0, 100, 1, 0));
+  }
+
+}
@@ -0,0 +1,126 @@
+package com.rsicms.rsuite.utils.operation.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncLogDispatcherTest {
+
+  /**
+   * Writing this message blocks until {@link #release} is counted down.
+   */
+  private static final String BLOCKING = "blocking";
+
+  private final List<Object> written = Collections.synchronizedList(new ArrayList<Object>());
+
+  private final CountDownLatch writing = new CountDownLatch(1);
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private final Log log = (Log) Proxy.newProxyInstance(Log.class.getClassLoader(),
+      new Class<?>[] {Log.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if (method.getReturnType() == boolean.class) {
+            return true;
+          }
+          if (args != null && args.length > 0) {
+            if (BLOCKING.equals(args[0])) {
+              writing.countDown();
+              release.await();
+            }
+            written.add(args[0]);
+          }
+          return null;
+        }
+      });
+
+  private AsyncLogDispatcher dispatcher;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    release.countDown();
+    if (dispatcher != null) {
+      dispatcher.shutdown(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void writesMessagesInOrder() throws InterruptedException {
+    dispatcher = new AsyncLogDispatcher(16, 4, OverflowPolicy.BLOCK);
+    List<Object> expected = new ArrayList<Object>();
+    for (int i = 0; i < 100; i++) {
+      dispatcher.dispatch(log, i % 2 == 0 ? LogEvent.INFO : LogEvent.DEBUG, "m" + i, null);
+      expected.add("m" + i);
+    }
+    assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+    assertEquals(expected, written);
+    assertEquals(0, dispatcher.getDroppedCount());
+  }
+
+  @Test
+  public void flushWaitsForTheMessageBeingWrittenDespiteEvictions() throws InterruptedException {
+    dispatcher = new AsyncLogDispatcher(3, 8, OverflowPolicy.DROP_DEBUG_FIRST);
+    dispatcher.dispatch(log, LogEvent.INFO, BLOCKING, null);
+    writing.await();
+    dispatcher.dispatch(log, LogEvent.INFO, "info-1", null);
+    final CountDownLatch flushed = new CountDownLatch(1);
+    Thread flusher = new Thread() {
+      @Override
+      public void run() {
+        try {
+          if (dispatcher.flush(10, TimeUnit.SECONDS)) {
+            flushed.countDown();
+          }
+        } catch (InterruptedException e) {
+          // The test fails.
+        }
+      }
+    };
+    flusher.start();
+    Thread.sleep(50);
+
+    // Accepted after the flush began; the buffer is then full, so the later messages evict them.
+    dispatcher.dispatch(log, LogEvent.DEBUG, "debug-1", null);
+    dispatcher.dispatch(log, LogEvent.DEBUG, "debug-2", null);
+    dispatcher.dispatch(log, LogEvent.INFO, "info-2", null);
+    dispatcher.dispatch(log, LogEvent.WARN, "warn-1", null);
+    assertEquals(2, dispatcher.getDroppedCount());
+    assertFalse(flushed.await(100, TimeUnit.MILLISECONDS));
+    assertFalse(dispatcher.flush(100, TimeUnit.MILLISECONDS));
+
+    release.countDown();
+    assertTrue(flushed.await(5, TimeUnit.SECONDS));
+    assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.<Object> asList(BLOCKING, "info-1", "info-2", "warn-1"), written);
+  }
+
+  @Test
+  public void countsMessagesDroppedWhenFull() throws InterruptedException {
+    dispatcher = new AsyncLogDispatcher(1, 1, OverflowPolicy.COUNT_DROPS);
+    dispatcher.dispatch(log, LogEvent.INFO, BLOCKING, null);
+    writing.await();
+    assertTrue(dispatcher.dispatch(new LogEvent(log, LogEvent.INFO, "buffered", null)));
+    assertFalse(dispatcher.dispatch(new LogEvent(log, LogEvent.ERROR, "dropped", null)));
+    assertEquals(1, dispatcher.getDroppedCount());
+
+    release.countDown();
+    assertTrue(dispatcher.flush(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.<Object> asList(BLOCKING, "buffered"), written);
+  }
+
+}
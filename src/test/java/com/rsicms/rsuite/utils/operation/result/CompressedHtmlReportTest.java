@@ -0,0 +1,46 @@
+package com.rsicms.rsuite.utils.operation.result;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class CompressedHtmlReportTest {
+
+  private static BaseOperationResult newEndedResult() {
+    BaseOperationResult opResult = new BaseOperationResult("op-1", "Report", null);
+    opResult.startTransaction();
+    opResult.getCurrentTransaction().addAsset("100", "first");
+    opResult.markStartOfOperation();
+    opResult.markEndOfOperation();
+    return opResult;
+  }
+
+  @Test
+  public void reportIsCachedOnceEnded() throws IOException {
+    BaseOperationResult opResult = newEndedResult();
+    CompressedReport report = opResult.getCompressedHtmlReport(false);
+    assertSame(report, opResult.getCompressedHtmlReport(false));
+  }
+
+  @Test
+  public void cacheIsDroppedWhenATransactionChangesWithoutGrowing() throws IOException {
+    BaseOperationResult opResult = newEndedResult();
+    CompressedReport report = opResult.getCompressedHtmlReport(false);
+    // Replaces the asset's label; the transaction's sizes are unchanged.
+    opResult.getCurrentTransaction().addAsset("100", "second");
+    assertNotSame(report, opResult.getCompressedHtmlReport(false));
+  }
+
+  @Test
+  public void cacheIsDroppedWhenAPropertyChanges() throws IOException {
+    BaseOperationResult opResult = newEndedResult();
+    opResult.getCurrentTransaction().setProperty("state", "a");
+    CompressedReport report = opResult.getCompressedHtmlReport(false);
+    opResult.getCurrentTransaction().setProperty("state", "b");
+    assertNotSame(report, opResult.getCompressedHtmlReport(false));
+  }
+
+}
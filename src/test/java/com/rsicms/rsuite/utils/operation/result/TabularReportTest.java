@@ -0,0 +1,107 @@
+package com.rsicms.rsuite.utils.operation.result;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.rsicms.rsuite.utils.operation.visitor.TabularFormat;
+import com.rsicms.rsuite.utils.operation.visitor.XlsxFormattingOperationResultVisitor;
+
+public class TabularReportTest {
+
+  private static BaseOperationResult newResult(int messages) {
+    BaseOperationResult opResult = new BaseOperationResult("op-1", "Export", null);
+    opResult.incrementCount("exported", messages);
+    for (int i = 0; i < messages; i++) {
+      opResult.addInfoMessage("label", "Message " + i);
+    }
+    return opResult;
+  }
+
+  /**
+   * Read a workbook, which must end with the zip's central directory; the entries alone are read
+   * by a <code>ZipInputStream</code> even when the central directory is missing.
+   * 
+   * @return the names of the workbook's entries.
+   */
+  private static List<String> readWorkbook(byte[] bytes, StringBuilder sheet) throws IOException {
+    // The end of central directory record, without a comment, is the last 22 bytes.
+    assertTrue(bytes.length > 22);
+    int eocd = bytes.length - 22;
+    assertEquals(0x06054b50, (bytes[eocd] & 0xFF) | (bytes[eocd + 1] & 0xFF) << 8
+        | (bytes[eocd + 2] & 0xFF) << 16 | (bytes[eocd + 3] & 0xFF) << 24);
+
+    List<String> names = new ArrayList<String>();
+    ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes));
+    try {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        names.add(entry.getName());
+        byte[] entryBytes = IOUtils.toByteArray(zip);
+        if ("xl/worksheets/sheet1.xml".equals(entry.getName())) {
+          sheet.append(new String(entryBytes, "UTF-8"));
+        }
+      }
+    } finally {
+      zip.close();
+    }
+    return names;
+  }
+
+  @Test
+  public void xlsxReportIsACompleteZip() throws IOException {
+    FileOperationResult fileResult =
+        newResult(100).getTabularReport(TabularFormat.XLSX, null, false);
+    try {
+      assertEquals("op-1.xlsx", fileResult.getSuggestedFileName());
+      StringBuilder sheet = new StringBuilder();
+      List<String> names = readWorkbook(fileResult.getContent().toByteArray(), sheet);
+      assertTrue(names.contains("xl/workbook.xml"));
+      assertTrue(names.contains("[Content_Types].xml"));
+      assertTrue(sheet.toString().contains("Message 99"));
+      assertTrue(sheet.toString().endsWith("</sheetData></worksheet>"));
+    } finally {
+      fileResult.close();
+    }
+  }
+
+  @Test
+  public void xlsxVisitorFlushesThroughBufferedStream() throws IOException {
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    XlsxFormattingOperationResultVisitor visitor =
+        new XlsxFormattingOperationResultVisitor(new BufferedOutputStream(target, 8192), null);
+    visitor.visit(newResult(10));
+    // Read before checkError(), which flushes as well.
+    StringBuilder sheet = new StringBuilder();
+    List<String> names = readWorkbook(target.toByteArray(), sheet);
+    assertEquals(5, names.size());
+    assertTrue(sheet.toString().contains("Message 9"));
+    assertFalse(visitor.checkError());
+  }
+
+  @Test
+  public void csvReportHasARowPerMessage() throws IOException {
+    FileOperationResult fileResult =
+        newResult(3).getTabularReport(TabularFormat.CSV, null, false);
+    try {
+      String csv = new String(fileResult.getContent().toByteArray(), "UTF-8");
+      assertTrue(csv.startsWith("Record,Name,Value,Timestamp,Label,Text"));
+      assertTrue(csv.contains("Message 2"));
+    } finally {
+      fileResult.close();
+    }
+  }
+
+}
@@ -0,0 +1,211 @@
+package com.rsicms.rsuite.utils.operation.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rsicms.rsuite.utils.operation.result.BaseOperationResult;
+import com.rsicms.rsuite.utils.operation.result.OperationResult;
+import com.rsicms.rsuite.utils.operation.status.OperationStatus;
+
+public class OperationSchedulerTest {
+
+  private static final String TYPE = "export";
+
+  private ExecutorService executor;
+
+  private OperationScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    scheduler = new OperationScheduler(executor);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+    executor.shutdownNow();
+  }
+
+  /**
+   * Wait for every operation to have finished running or been aborted.
+   */
+  private void awaitIdle() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (scheduler.getTracker().getOutstandingCount() > 0
+        || scheduler.getRunningCount(TYPE) > 0) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("Operations still outstanding");
+      }
+      Thread.sleep(5);
+    }
+  }
+
+  @Test
+  public void cancellingAQueuedOperationAbortsItWithoutRunning() throws Exception {
+    scheduler.setConcurrencyLimit(TYPE, 1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger runs = new AtomicInteger();
+    BaseOperationResult first = new BaseOperationResult("op-1", "Export", null);
+    Future<OperationResult> firstFuture = scheduler.submit(TYPE, first, new OperationTask() {
+      @Override
+      public void execute(BaseOperationResult opResult) throws Exception {
+        release.await();
+      }
+    });
+    BaseOperationResult second = new BaseOperationResult("op-2", "Export", null);
+    Future<OperationResult> secondFuture = scheduler.submit(TYPE, second, new OperationTask() {
+      @Override
+      public void execute(BaseOperationResult opResult) {
+        runs.incrementAndGet();
+      }
+    });
+    assertEquals(1, scheduler.getQueueDepth(TYPE));
+
+    assertTrue(scheduler.cancel("op-2", "No longer needed"));
+    assertTrue(secondFuture.isCancelled());
+    assertEquals(OperationStatus.ABORTED, second.getStatus());
+    assertNull(scheduler.getTracker().getStatus("op-2"));
+    assertEquals(0, scheduler.getQueueDepth(TYPE));
+
+    release.countDown();
+    assertEquals(OperationStatus.SUCCESSFUL, firstFuture.get(10, TimeUnit.SECONDS).getStatus());
+    awaitIdle();
+    assertEquals(0, runs.get());
+    assertFalse(scheduler.cancel("op-2", null));
+  }
+
+  @Test
+  public void cancellingADispatchedOperationAbortsItAndDispatchesTheNext() throws Exception {
+    final LinkedList<Runnable> dispatched = new LinkedList<Runnable>();
+    OperationScheduler manual = new OperationScheduler(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        dispatched.add(command);
+      }
+    });
+    manual.setConcurrencyLimit(TYPE, 1);
+    final AtomicInteger runs = new AtomicInteger();
+    OperationTask task = new OperationTask() {
+      @Override
+      public void execute(BaseOperationResult opResult) {
+        runs.incrementAndGet();
+      }
+    };
+    BaseOperationResult first = new BaseOperationResult("op-1", "Export", null);
+    Future<OperationResult> firstFuture = manual.submit(TYPE, first, task);
+    assertEquals(1, dispatched.size());
+
+    assertTrue(manual.cancel("op-1", "Cancelled after dispatch"));
+    assertTrue(firstFuture.isCancelled());
+    assertEquals(OperationStatus.ABORTED, first.getStatus());
+
+    BaseOperationResult second = new BaseOperationResult("op-2", "Export", null);
+    Future<OperationResult> secondFuture = manual.submit(TYPE, second, task);
+    assertEquals(1, manual.getQueueDepth(TYPE));
+
+    // The executor gets to the cancelled operation, which releases its slot to the next.
+    dispatched.poll().run();
+    assertEquals(0, runs.get());
+    assertEquals(1, dispatched.size());
+    dispatched.poll().run();
+    assertEquals(1, runs.get());
+    assertEquals(OperationStatus.SUCCESSFUL, secondFuture.get().getStatus());
+    assertEquals(0, manual.getRunningCount(TYPE));
+    assertEquals(0, manual.getTracker().getOutstandingCount());
+  }
+
+  @Test
+  public void cancellationRacingDispatchAbortsOrRunsEachOperationOnce() throws Exception {
+    scheduler.setConcurrencyLimit(TYPE, 2);
+    final int count = 500;
+    final BaseOperationResult[] results = new BaseOperationResult[count];
+    final AtomicInteger[] runs = new AtomicInteger[count];
+    List<Future<OperationResult>> futures = new ArrayList<Future<OperationResult>>();
+    final AtomicInteger submitted = new AtomicInteger();
+    final List<Throwable> errors = new ArrayList<Throwable>();
+
+    Thread canceller = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < count; i += 2) {
+            while (submitted.get() <= i) {
+              Thread.yield();
+            }
+            scheduler.cancel("op-" + i, "Racing dispatch");
+          }
+        } catch (Throwable e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      }
+    };
+    canceller.start();
+
+    for (int i = 0; i < count; i++) {
+      final AtomicInteger opRuns = new AtomicInteger();
+      runs[i] = opRuns;
+      results[i] = new BaseOperationResult("op-" + i, "Export", null);
+      futures.add(scheduler.submit(TYPE, results[i], new OperationTask() {
+        @Override
+        public void execute(BaseOperationResult opResult) throws Exception {
+          opRuns.incrementAndGet();
+          opResult.abortIfCancellationRequested(null, null, false);
+        }
+      }));
+      submitted.incrementAndGet();
+    }
+    canceller.join(10000);
+    awaitIdle();
+    assertTrue(errors.toString(), errors.isEmpty());
+
+    for (int i = 0; i < count; i++) {
+      Future<OperationResult> future = futures.get(i);
+      assertTrue(future.isDone());
+      try {
+        future.get();
+      } catch (CancellationException e) {
+        assertEquals(0, runs[i].get());
+      } catch (ExecutionException e) {
+        throw new AssertionError(e.getCause());
+      }
+      assertTrue(runs[i].get() <= 1);
+      OperationStatus status = results[i].getStatus();
+      if (i % 2 == 1) {
+        assertEquals("op-" + i, OperationStatus.SUCCESSFUL, status);
+        assertEquals(1, runs[i].get());
+      } else if (runs[i].get() == 0) {
+        assertEquals("op-" + i, OperationStatus.ABORTED, status);
+      } else {
+        // Cancelled once running, or too late to stop it.
+        assertTrue("op-" + i, status == OperationStatus.ABORTED
+            || status == OperationStatus.SUCCESSFUL);
+      }
+    }
+    assertEquals(0, scheduler.getQueueDepth(TYPE));
+    assertEquals(0, scheduler.getRunningCount(TYPE));
+  }
+
+}
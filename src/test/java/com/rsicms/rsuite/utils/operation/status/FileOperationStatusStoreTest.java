@@ -0,0 +1,127 @@
+package com.rsicms.rsuite.utils.operation.status;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.reallysi.rsuite.api.RSuiteException;
+
+public class FileOperationStatusStoreTest {
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("statuses", ".log");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  /**
+   * Append a record as the store writes it.
+   */
+  private void appendRecord(String id, String status) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    DataOutputStream payloadOut = new DataOutputStream(payload);
+    payloadOut.writeUTF(id);
+    payloadOut.writeUTF(status);
+    payloadOut.flush();
+    CRC32 crc = new CRC32();
+    crc.update(payload.toByteArray());
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+      out.writeInt(payload.size());
+      out.writeInt((int) crc.getValue());
+      payload.writeTo(out);
+    }
+  }
+
+  @Test
+  public void statusesSurviveReopening() throws RSuiteException, IOException {
+    FileOperationStatusStore store = new FileOperationStatusStore(file);
+    store.put("a", OperationStatus.QUEUED);
+    store.put("b", OperationStatus.IN_PROGRESS);
+    store.put("c", OperationStatus.QUEUED);
+    store.remove("c");
+    store.close();
+
+    store = new FileOperationStatusStore(file);
+    assertEquals(2, store.size());
+    assertEquals(OperationStatus.QUEUED, store.getStatus("a"));
+    assertEquals(OperationStatus.IN_PROGRESS, store.getStatus("b"));
+    assertNull(store.getStatus("c"));
+    store.close();
+  }
+
+  @Test
+  public void recoversFromATornRecord() throws RSuiteException, IOException {
+    FileOperationStatusStore store = new FileOperationStatusStore(file);
+    store.put("a", OperationStatus.QUEUED);
+    store.put("b", OperationStatus.IN_PROGRESS);
+    store.close();
+
+    // Cut the last record short, as a crash while writing it would.
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+
+    store = new FileOperationStatusStore(file);
+    assertEquals(1, store.size());
+    assertEquals(OperationStatus.QUEUED, store.getStatus("a"));
+    store.put("c", OperationStatus.QUEUED);
+    store.close();
+
+    // The torn record was discarded, so the record after it is read.
+    store = new FileOperationStatusStore(file);
+    assertEquals(2, store.size());
+    assertEquals(OperationStatus.QUEUED, store.getStatus("c"));
+    store.close();
+  }
+
+  @Test
+  public void skipsUnknownStatuses() throws RSuiteException, IOException {
+    FileOperationStatusStore store = new FileOperationStatusStore(file);
+    store.put("a", OperationStatus.QUEUED);
+    store.close();
+    appendRecord("b", "FUTURE_STATUS");
+    appendRecord("c", "IN_PROGRESS");
+    long length = file.length();
+
+    store = new FileOperationStatusStore(file);
+    assertEquals(2, store.size());
+    assertNull(store.getStatus("b"));
+    assertEquals(OperationStatus.IN_PROGRESS, store.getStatus("c"));
+    store.close();
+    assertEquals(length, file.length());
+  }
+
+  @Test
+  public void rejectsAFileShorterThanItsHeader() throws IOException {
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[] {1, 2, 3, 4});
+    }
+    try {
+      new FileOperationStatusStore(file).close();
+      fail("Opened a file that isn't a status store");
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertEquals(4, file.length());
+  }
+
+}
@@ -0,0 +1,148 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelZipBuilderTest {
+
+  private ExecutorService executor;
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    file = File.createTempFile("export", ".zip");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    file.delete();
+  }
+
+  static EntrySource source(final byte[] content) {
+    return new EntrySource() {
+      @Override
+      public InputStream open() {
+        return new ByteArrayInputStream(content);
+      }
+    };
+  }
+
+  static byte[] random(int length, long seed) {
+    byte[] content = new byte[length];
+    new Random(seed).nextBytes(content);
+    return content;
+  }
+
+  static byte[] read(ZipFile zip, String name) throws IOException {
+    ZipEntry entry = zip.getEntry(name);
+    assertTrue("Missing " + name, entry != null);
+    try (InputStream in = zip.getInputStream(entry)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int read;
+      while ((read = in.read(buf)) > 0) {
+        out.write(buf, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  @Test
+  public void roundTripsThroughZipFile() throws IOException {
+    ParallelZipBuilder builder =
+        new ParallelZipBuilder(new FileOutputStream(file), true, executor, null);
+    builder.setSpillThreshold(64 * 1024);
+    builder.addDirectory("docs/");
+    for (int i = 0; i < 20; i++) {
+      builder.addEntry("docs/" + i + ".bin", source(random(1000 * i * i, i)));
+    }
+    builder.finish();
+
+    try (ZipFile zip = new ZipFile(file)) {
+      assertEquals(21, zip.size());
+      for (int i = 0; i < 20; i++) {
+        assertArrayEquals(random(1000 * i * i, i), read(zip, "docs/" + i + ".bin"));
+      }
+    }
+  }
+
+  @Test
+  public void writesZip64WhenThereAreTooManyEntries() throws IOException {
+    int count = 0x10000 + 10;
+    ParallelZipBuilder builder =
+        new ParallelZipBuilder(new FileOutputStream(file), true, executor, null);
+    for (int i = 0; i < count; i++) {
+      builder.addEntry("e" + i, new ByteArrayInputStream(("x" + i).getBytes("UTF-8")));
+    }
+    builder.finish();
+
+    try (ZipFile zip = new ZipFile(file)) {
+      assertEquals(count, zip.size());
+      assertEquals("x0", new String(read(zip, "e0"), "UTF-8"));
+      assertEquals("x" + (count - 1), new String(read(zip, "e" + (count - 1)), "UTF-8"));
+    }
+  }
+
+  @Test
+  public void copiesKeyedDuplicatesWithinAFile() throws IOException {
+    assertKeyedDuplicates(ParallelZipBuilder.create(file, executor, null));
+  }
+
+  @Test
+  public void copiesKeyedDuplicatesWithinAStream() throws IOException {
+    assertKeyedDuplicates(new ParallelZipBuilder(new FileOutputStream(file), true, executor, null));
+  }
+
+  private void assertKeyedDuplicates(ParallelZipBuilder builder) throws IOException {
+    byte[] image = random(200000, 1);
+    builder.setDeduplicate(true);
+    builder.setMaxPendingEntries(2);
+    builder.addEntry("image.bin", "100", "key-1", 0L, source(image));
+    builder.addEntry("image-early.bin", "100", "key-1", 0L, source(image));
+    for (int i = 0; i < 10; i++) {
+      builder.addEntry("f" + i, source(random(100, i)));
+    }
+    builder.addEntry("image-late.bin", "100", "key-1", 0L, source(image));
+    builder.finish();
+
+    ZipManifest manifest = builder.getManifest();
+    int duplicates = 0;
+    for (int i = 0; i < manifest.size(); i++) {
+      if (manifest.getName(i).startsWith("image-")) {
+        assertTrue(manifest.isDuplicate(i));
+        assertEquals("image.bin", manifest.getName(manifest.getDuplicateOf(i)));
+        duplicates++;
+      }
+    }
+    assertEquals(2, duplicates);
+
+    try (ZipFile zip = new ZipFile(file)) {
+      assertEquals(13, zip.size());
+      assertArrayEquals(image, read(zip, "image.bin"));
+      assertArrayEquals(image, read(zip, "image-early.bin"));
+      assertArrayEquals(image, read(zip, "image-late.bin"));
+      assertArrayEquals(random(100, 9), read(zip, "f9"));
+    }
+  }
+
+}
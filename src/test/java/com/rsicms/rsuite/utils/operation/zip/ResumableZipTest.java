@@ -0,0 +1,123 @@
+package com.rsicms.rsuite.utils.operation.zip;
+
+import static com.rsicms.rsuite.utils.operation.zip.ParallelZipBuilderTest.read;
+import static com.rsicms.rsuite.utils.operation.zip.ParallelZipBuilderTest.source;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResumableZipTest {
+
+  private ExecutorService executor;
+
+  private File zipFile;
+
+  private File checkpointFile;
+
+  @Before
+  public void setUp() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    zipFile = File.createTempFile("export", ".zip");
+    checkpointFile = new File(zipFile.getPath() + ".checkpoint");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    zipFile.delete();
+    checkpointFile.delete();
+  }
+
+  private static byte[] content(int i) {
+    byte[] content = new byte[5000 + i * 100];
+    for (int k = 0; k < content.length; k++) {
+      content[k] = (byte) (k * i);
+    }
+    return content;
+  }
+
+  /**
+   * Abort after adding some entries, returning the number written before the pending entries were
+   * cancelled.
+   */
+  private int abortAfter(int entryCount) throws IOException {
+    ParallelZipBuilder builder = resume(entryCount);
+    builder.abort();
+    return builder.getManifest().size();
+  }
+
+  private ParallelZipBuilder resume(int entryCount) throws IOException {
+    ParallelZipBuilder builder = ParallelZipBuilder.resume(zipFile, checkpointFile, executor, null);
+    builder.setCheckpointInterval(10);
+    for (int i = 0; i < entryCount; i++) {
+      builder.addEntry("e" + i, source(content(i)));
+    }
+    return builder;
+  }
+
+  private void assertComplete(int entryCount) throws IOException {
+    assertFalse(checkpointFile.exists());
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      assertEquals(entryCount, zip.size());
+      for (int i = 0; i < entryCount; i++) {
+        assertArrayEquals(content(i), read(zip, "e" + i));
+      }
+    }
+  }
+
+  @Test
+  public void resumeDiscardsAPartialEntry() throws IOException {
+    int written = abortAfter(35);
+    long checkpointedLength = zipFile.length();
+
+    // A local file header and part of its data, written before a crash.
+    try (FileOutputStream out = new FileOutputStream(zipFile, true)) {
+      out.write(new byte[] {'P', 'K', 3, 4, 20, 0, 8, 0});
+      out.write(new byte[777]);
+    }
+    // A checkpoint cut short.
+    try (FileOutputStream out = new FileOutputStream(checkpointFile, true)) {
+      out.write(new byte[] {0, 0, 0, 50, 1, 2});
+    }
+
+    ParallelZipBuilder builder = ParallelZipBuilder.resume(zipFile, checkpointFile, executor, null);
+    assertEquals(written, builder.getResumedEntryCount());
+    assertEquals(checkpointedLength, builder.getBytesWritten());
+    builder.abort();
+
+    resume(50).finish();
+    assertComplete(50);
+  }
+
+  @Test
+  public void resumeFallsBackWhenTheZipIsShorterThanItsLastCheckpoint() throws IOException {
+    int written = abortAfter(35);
+
+    // Lose the end of the last entry checkpointed.
+    try (RandomAccessFile file = new RandomAccessFile(zipFile, "rw")) {
+      file.setLength(file.length() - 100);
+    }
+
+    ParallelZipBuilder builder = ParallelZipBuilder.resume(zipFile, checkpointFile, executor, null);
+    assertTrue(builder.getResumedEntryCount() > 0);
+    assertTrue(builder.getResumedEntryCount() < written);
+    builder.abort();
+
+    resume(50).finish();
+    assertComplete(50);
+  }
+
+}